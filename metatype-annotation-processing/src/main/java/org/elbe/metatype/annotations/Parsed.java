@@ -0,0 +1,46 @@
+/**
+ *
+ */
+package org.elbe.metatype.annotations;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/** Hint for the metatype generator, placed beside <code>@AttributeDefinition</code> on a <code>String</code>
+ * attribute: the generated component holds the attribute's value additionally parsed into the specified type.<br>
+ * The value is parsed once per (re)configuration and exposed through its own getter, e.g.
+ * <code>Pattern getFilterPattern()</code> beside <code>String getFilter()</code>. A value that can't be parsed is
+ * replaced by the parsed default value (<code>null</code> if there is none), the default value itself is checked at
+ * compile time.
+ *
+ * <pre>
+ * &#64;AttributeDefinition(name = "Filter", defaultValue = "[a-z]+")
+ * &#64;Parsed(Parsed.Type.PATTERN)
+ * String filter();
+ * </pre>
+ *
+ * @author lbenno */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.METHOD)
+public @interface Parsed {
+
+    /** The types a <code>String</code> attribute can be parsed into. */
+    enum Type {
+        /** A <code>java.util.regex.Pattern</code>, parsed with <code>Pattern.compile()</code>. */
+        PATTERN,
+        /** A <code>java.net.URI</code>, parsed with <code>URI.create()</code>. */
+        URI,
+        /** A <code>java.time.Duration</code>, parsed with <code>Duration.parse()</code>, e.g. <code>PT30S</code>. */
+        DURATION,
+        /** A <code>java.nio.charset.Charset</code>, parsed with <code>Charset.forName()</code>. */
+        CHARSET;
+    }
+
+    /** @return Type the type to parse the attribute's value into */
+    Type value();
+
+}
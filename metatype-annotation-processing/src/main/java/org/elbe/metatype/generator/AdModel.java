@@ -0,0 +1,380 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.elbe.metatype.annotations.Parsed;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.AttributeType;
+import org.osgi.service.metatype.annotations.Option;
+
+/** The compiled model of an attribute definition (i.e. a method annotated with <code>@AttributeDefinition</code>).<br>
+ * All values the emitters need (id, field name, type kind, the parsed default etc.) are computed once when the model is
+ * created, the model is immutable and can be used from any thread.
+ *
+ * @author lbenno */
+public final class AdModel {
+    private static final Set<String> PRIMITIVES = Set.of("boolean", "byte", "char", "short", "int", "long", "float",
+            "double");
+    private static Map<String, AttributeType> typeMap = Map.ofEntries(
+            new AbstractMap.SimpleEntry<String, AttributeType>(String.class.getName(), AttributeType.STRING),
+            new AbstractMap.SimpleEntry<String, AttributeType>("long", AttributeType.LONG),
+            new AbstractMap.SimpleEntry<String, AttributeType>(Long.class.getName(), AttributeType.LONG),
+            new AbstractMap.SimpleEntry<String, AttributeType>("int", AttributeType.INTEGER),
+            new AbstractMap.SimpleEntry<String, AttributeType>(Integer.class.getName(), AttributeType.INTEGER),
+            new AbstractMap.SimpleEntry<String, AttributeType>("short", AttributeType.SHORT),
+            new AbstractMap.SimpleEntry<String, AttributeType>(Short.class.getName(), AttributeType.SHORT),
+            new AbstractMap.SimpleEntry<String, AttributeType>("char", AttributeType.CHARACTER),
+            new AbstractMap.SimpleEntry<String, AttributeType>(Character.class.getName(), AttributeType.CHARACTER),
+            new AbstractMap.SimpleEntry<String, AttributeType>("byte", AttributeType.BYTE),
+            new AbstractMap.SimpleEntry<String, AttributeType>(Byte.class.getName(), AttributeType.BYTE),
+            new AbstractMap.SimpleEntry<String, AttributeType>("double", AttributeType.DOUBLE),
+            new AbstractMap.SimpleEntry<String, AttributeType>(Double.class.getName(), AttributeType.DOUBLE),
+            new AbstractMap.SimpleEntry<String, AttributeType>("float", AttributeType.FLOAT),
+            new AbstractMap.SimpleEntry<String, AttributeType>(Float.class.getName(), AttributeType.FLOAT),
+            new AbstractMap.SimpleEntry<String, AttributeType>("boolean", AttributeType.BOOLEAN),
+            new AbstractMap.SimpleEntry<String, AttributeType>(Boolean.class.getName(), AttributeType.BOOLEAN));
+    // the primitive types the bounds of the numeric and String (i.e. their length) attributes are compared with
+    private static final Map<String, String> BOUND_TYPES = Map.ofEntries(Map.entry("int", "int"),
+            Map.entry(Integer.class.getName(), "int"), Map.entry("long", "long"),
+            Map.entry(Long.class.getName(), "long"), Map.entry("short", "short"),
+            Map.entry(Short.class.getName(), "short"), Map.entry("byte", "byte"),
+            Map.entry(Byte.class.getName(), "byte"), Map.entry("double", "double"),
+            Map.entry(Double.class.getName(), "double"), Map.entry("float", "float"),
+            Map.entry(Float.class.getName(), "float"), Map.entry(String.class.getName(), "int"));
+
+    /** The kinds of the attributes' Java types. */
+    public enum Kind {
+        /** A primitive, e.g. <code>int</code>. */
+        PRIMITIVE,
+        /** A <code>String</code>. */
+        STRING,
+        /** An array, e.g. <code>int[]</code> or <code>String[]</code>. */
+        ARRAY,
+        /** Any other type, e.g. a <code>Class</code> or an enum. */
+        REFERENCE;
+    }
+
+    private final String methodName;
+    private final String id;
+    private final String fieldName;
+    private final String propertyName;
+    private final String constantName;
+    private final String typeName;
+    private final String normalizedType;
+    private final Kind kind;
+
+    private final String name;
+    private final String description;
+    private final String type;
+    private final String adType;
+    private final int cardinality;
+    private final String min;
+    private final String max;
+    private final boolean required;
+    private final List<String> defaultValues;
+    private final String defaultValue;
+    private final String defaultLiteral;
+    private final String defaultError;
+    private final List<OptionModel> options;
+    private final String boundType;
+    private final String minLiteral;
+    private final String maxLiteral;
+    private final String boundError;
+    private final Parsed.Type parsed;
+    private final String parsedError;
+
+    /** AdModel constructor.
+     *
+     * @param id String the attribute's id (including the prefix)
+     * @param methodName String the name of the annotated method
+     * @param ad {@link AttributeDefinition} the method's annotation
+     * @param typeName String the Java type of the attribute, e.g. <code>String</code> or <code>int[]</code>
+     * @param normalizedType String the fully qualified Java type without array brackets
+     * @param isString boolean <code>true</code> if the type is <code>String</code> */
+    public AdModel(final String id, final String methodName, final AttributeDefinition ad, final String typeName,
+            final String normalizedType, final boolean isString) {
+        this(id, methodName, ad, typeName, normalizedType, isString, null);
+    }
+
+    /** AdModel constructor.
+     *
+     * @param id String the attribute's id (including the prefix)
+     * @param methodName String the name of the annotated method
+     * @param ad {@link AttributeDefinition} the method's annotation
+     * @param typeName String the Java type of the attribute, e.g. <code>String</code> or <code>int[]</code>
+     * @param normalizedType String the fully qualified Java type without array brackets
+     * @param isString boolean <code>true</code> if the type is <code>String</code>
+     * @param parsed {@link Parsed.Type} the type the value is parsed into, <code>null</code> if it isn't parsed */
+    public AdModel(final String id, final String methodName, final AttributeDefinition ad, final String typeName,
+            final String normalizedType, final boolean isString, final Parsed.Type parsed) {
+        this.id = id;
+        this.methodName = methodName;
+        this.fieldName = IdUtil.toFieldName(methodName);
+        this.propertyName = this.fieldName.substring(0, 1).toUpperCase() + this.fieldName.substring(1);
+        this.constantName = "DEFAULT_" + IdUtil.toConstantName(this.fieldName);
+        this.typeName = typeName;
+        this.normalizedType = normalizedType;
+        this.kind = isString ? Kind.STRING
+                : PRIMITIVES.contains(typeName) ? Kind.PRIMITIVE
+                        : DefaultValues.isArray(typeName) ? Kind.ARRAY : Kind.REFERENCE;
+
+        this.name = ad.name();
+        this.description = ad.description();
+        this.adType = ad.type().toString();
+        // the type of a (not String) attribute declared as String is derived from the return type
+        this.type = ad.type() == AttributeType.STRING && !isString
+                ? typeMap.getOrDefault(normalizedType, AttributeType.STRING).toString()
+                : this.adType;
+        this.cardinality = ad.cardinality();
+        this.min = ad.min();
+        this.max = ad.max();
+        this.required = ad.required();
+        final String[] defaults = ad.defaultValue();
+        this.defaultValues = List.of(defaults);
+        this.defaultValue = String.join(", ", defaults);
+        String literal = null;
+        String error = null;
+        try {
+            literal = DefaultValues.toLiteral(typeName, defaults);
+        } catch (final IllegalArgumentException exc) {
+            error = exc.getMessage();
+        }
+        this.defaultLiteral = literal;
+        this.defaultError = error;
+        final List<OptionModel> opts = new ArrayList<>();
+        for (final Option option : ad.options()) {
+            opts.add(new OptionModel(option.label(), option.value()));
+        }
+        this.options = Collections.unmodifiableList(opts);
+
+        this.boundType = BOUND_TYPES.get(normalizedType);
+        String minBound = null;
+        String maxBound = null;
+        String boundErr = null;
+        try {
+            minBound = toBoundLiteral(this.boundType, this.min);
+            maxBound = toBoundLiteral(this.boundType, this.max);
+        } catch (final IllegalArgumentException exc) {
+            minBound = null;
+            maxBound = null;
+            boundErr = exc.getMessage();
+        }
+        this.minLiteral = minBound;
+        this.maxLiteral = maxBound;
+        this.boundError = boundErr;
+        this.parsed = parsed;
+        this.parsedError = checkParsed(parsed);
+    }
+
+    // the default value is parsed at compile time, i.e. the component never falls back to an invalid value
+    private String checkParsed(final Parsed.Type parsedType) {
+        if (parsedType == null) {
+            return null;
+        }
+        final String typeName = DerivedManager.getTypeName(parsedType);
+        if (!isString()) {
+            return String.format("Only a String attribute can be parsed into a %s.", typeName);
+        }
+        if (hasDefault() && !DerivedManager.isParsable(parsedType, this.defaultValues.get(0))) {
+            return String.format("The default value \"%s\" is not a valid %s.", this.defaultValues.get(0), typeName);
+        }
+        return null;
+    }
+
+    private static String toBoundLiteral(final String boundType, final String bound) {
+        if (boundType == null || bound == null || bound.isBlank()) {
+            return null;
+        }
+        return DefaultValues.toBoundLiteral(boundType, bound);
+    }
+
+    /** @return String the name of the annotated method */
+    public String getMethodName() {
+        return this.methodName;
+    }
+
+    /** @return String the attribute's id, including the configuration's prefix */
+    public String getId() {
+        return this.id;
+    }
+
+    /** @return String the name of the generated field, e.g. <code>userPassword</code> */
+    public String getFieldName() {
+        return this.fieldName;
+    }
+
+    /** @return String the capitalized field name, e.g. <code>UserPassword</code> for the getter
+     *         <code>getUserPassword()</code> */
+    public String getPropertyName() {
+        return this.propertyName;
+    }
+
+    /** @return String the name of the generated constant holding the default value, e.g. <code>DEFAULT_PORT</code> */
+    public String getConstantName() {
+        return this.constantName;
+    }
+
+    /** @return String the Java type of the attribute, e.g. <code>String</code> or <code>int[]</code> */
+    public String getTypeName() {
+        return this.typeName;
+    }
+
+    /** @return String the fully qualified Java type without array brackets */
+    public String getNormalizedType() {
+        return this.normalizedType;
+    }
+
+    /** @return {@link Kind} the kind of the attribute's Java type */
+    public Kind getKind() {
+        return this.kind;
+    }
+
+    /** @return boolean <code>true</code> if the attribute's type is a primitive */
+    public boolean isPrimitive() {
+        return this.kind == Kind.PRIMITIVE;
+    }
+
+    /** @return boolean <code>true</code> if the attribute's type is <code>String</code> */
+    public boolean isString() {
+        return this.kind == Kind.STRING;
+    }
+
+    /** @return boolean <code>true</code> if the attribute's type is an array */
+    public boolean isArray() {
+        return this.kind == Kind.ARRAY;
+    }
+
+    /** @return String the attribute's name */
+    public String getName() {
+        return this.name;
+    }
+
+    /** @return String the attribute's description */
+    public String getDescription() {
+        return this.description;
+    }
+
+    /** @return String the attribute's metatype type, derived from the Java type if not specified */
+    public String getType() {
+        return this.type;
+    }
+
+    /** @return String the attribute's type as specified in the annotation */
+    public String getAdType() {
+        return this.adType;
+    }
+
+    /** @return int the attribute's cardinality */
+    public int getCardinality() {
+        return this.cardinality;
+    }
+
+    /** @return String the attribute's minimal value */
+    public String getMin() {
+        return this.min;
+    }
+
+    /** @return String the attribute's maximal value */
+    public String getMax() {
+        return this.max;
+    }
+
+    /** @return boolean <code>true</code> if the attribute is required */
+    public boolean isRequired() {
+        return this.required;
+    }
+
+    /** @return List&lt;String> the default values as specified in the annotation */
+    public List<String> getDefaultValues() {
+        return this.defaultValues;
+    }
+
+    /** @return String the default values as comma separated list, empty if there are no default values */
+    public String getDefaultValue() {
+        return this.defaultValue;
+    }
+
+    /** @return boolean <code>true</code> if the default value has been converted to a Java literal */
+    public boolean hasDefault() {
+        return this.defaultLiteral != null;
+    }
+
+    /** @return String the default value as Java literal of the attribute's type, <code>null</code> if there is no
+     *         default value or it can't be converted */
+    public String getDefaultLiteral() {
+        return this.defaultLiteral;
+    }
+
+    /** @return String the message if the default value doesn't match the attribute's type, else <code>null</code> */
+    public String getDefaultError() {
+        return this.defaultError;
+    }
+
+    /** @return String the primitive type the attribute's bounds are compared with (<code>int</code> for the length of
+     *         a <code>String</code>), <code>null</code> if the attribute's type has no bounds */
+    public String getBoundType() {
+        return this.boundType;
+    }
+
+    /** @return String the minimal value as Java literal of the bound type, <code>null</code> if there is none */
+    public String getMinLiteral() {
+        return this.minLiteral;
+    }
+
+    /** @return String the maximal value as Java literal of the bound type, <code>null</code> if there is none */
+    public String getMaxLiteral() {
+        return this.maxLiteral;
+    }
+
+    /** @return String the message if a bound doesn't match the attribute's type, else <code>null</code> */
+    public String getBoundError() {
+        return this.boundError;
+    }
+
+    /** @return {@link Parsed.Type} the type the value is parsed into, <code>null</code> if it isn't parsed */
+    public Parsed.Type getParsed() {
+        return this.parsed;
+    }
+
+    /** @return String the message if the value can't be parsed as specified, else <code>null</code> */
+    public String getParsedError() {
+        return this.parsedError;
+    }
+
+    /** @return List&lt;OptionModel> the attribute's options */
+    public List<OptionModel> getOptions() {
+        return this.options;
+    }
+
+    // ---
+
+    /** The model of an option of an attribute definition. */
+    public static final class OptionModel {
+        private final String label;
+        private final String value;
+
+        protected OptionModel(final String label, final String value) {
+            this.label = label;
+            this.value = value;
+        }
+
+        /** @return String the option's label */
+        public String getLabel() {
+            return this.label;
+        }
+
+        /** @return String the option's value */
+        public String getValue() {
+            return this.value;
+        }
+    }
+
+}
@@ -3,206 +3,247 @@
  */
 package org.elbe.metatype.generator;
 
-import java.util.AbstractMap;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.TreeMap;
 
+import javax.annotation.processing.Messager;
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.QualifiedNameable;
 import javax.lang.model.element.VariableElement;
 import javax.lang.model.type.TypeMirror;
 import javax.lang.model.util.Types;
+import javax.tools.Diagnostic.Kind;
 
+import org.elbe.metatype.annotations.Parsed;
 import org.osgi.service.metatype.annotations.AttributeDefinition;
-import org.osgi.service.metatype.annotations.AttributeType;
-import org.osgi.service.metatype.annotations.Option;
-import org.w3c.dom.Document;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 
 /** Helper class managing all information about the class (i.e. annotation) annotated with
- * <code>@ObjectClassDefinition</code> and <code>@AttributeDefinition</code>.
+ * <code>@ObjectClassDefinition</code> and <code>@AttributeDefinition</code>.<br>
+ * All information is taken from the <code>Elements</code> API in the constructor and compiled into the immutable
+ * {@link OcdModel} shared by the emitters, therefore, the emitters can run outside of the processor's thread.
  *
  * @author lbenno */
 public class AnnotationManager {
-    private static final String INDENT1 = String.format("%4s", " ");
-    private static final String INDENT3 = String.format("%12s", " ");
     private static final String PREFIX_FLD = "PREFIX_";
-    private static final String GETTER_TMPL = "\r\n    public %s get%s() {\r\n"
-            + "        return %s;\r\n"
-            + "    }";
-    private static Map<String, AttributeType> typeMap = Map.ofEntries(
-            new AbstractMap.SimpleEntry<String, AttributeType>(String.class.getName(), AttributeType.STRING),
-            new AbstractMap.SimpleEntry<String, AttributeType>("long", AttributeType.LONG),
-            new AbstractMap.SimpleEntry<String, AttributeType>(Long.class.getName(), AttributeType.LONG),
-            new AbstractMap.SimpleEntry<String, AttributeType>("int", AttributeType.INTEGER),
-            new AbstractMap.SimpleEntry<String, AttributeType>(Integer.class.getName(), AttributeType.INTEGER),
-            new AbstractMap.SimpleEntry<String, AttributeType>("short", AttributeType.SHORT),
-            new AbstractMap.SimpleEntry<String, AttributeType>(Short.class.getName(), AttributeType.SHORT),
-            new AbstractMap.SimpleEntry<String, AttributeType>("char", AttributeType.CHARACTER),
-            new AbstractMap.SimpleEntry<String, AttributeType>(Character.class.getName(), AttributeType.CHARACTER),
-            new AbstractMap.SimpleEntry<String, AttributeType>("byte", AttributeType.BYTE),
-            new AbstractMap.SimpleEntry<String, AttributeType>(Byte.class.getName(), AttributeType.BYTE),
-            new AbstractMap.SimpleEntry<String, AttributeType>("double", AttributeType.DOUBLE),
-            new AbstractMap.SimpleEntry<String, AttributeType>(Double.class.getName(), AttributeType.DOUBLE),
-            new AbstractMap.SimpleEntry<String, AttributeType>("float", AttributeType.FLOAT),
-            new AbstractMap.SimpleEntry<String, AttributeType>(Float.class.getName(), AttributeType.FLOAT),
-            new AbstractMap.SimpleEntry<String, AttributeType>("boolean", AttributeType.BOOLEAN),
-            new AbstractMap.SimpleEntry<String, AttributeType>(Boolean.class.getName(), AttributeType.BOOLEAN));
-
-    private final String className;
-    private final List<MethodData> methods = new ArrayList<>();
 
+    private final OcdModel model;
+    private final Element element;
     private final Types types;
     private final TypeMirror stringType;
-    private String prefix = "";
+    private boolean valid = true;
 
     /** AnnotationManager constructor.
      *
      * @param annotatedClass {@link Element} the class to process
      * @param processingEnv {@link ProcessingEnvironment} */
     public AnnotationManager(final Element annotatedClass, final ProcessingEnvironment processingEnv) {
+        this(annotatedClass, processingEnv, false);
+    }
+
+    /** AnnotationManager constructor.
+     *
+     * @param annotatedClass {@link Element} the class to process
+     * @param processingEnv {@link ProcessingEnvironment}
+     * @param sorted boolean <code>true</code> if the attributes are sorted by their methods' names, <code>false</code>
+     *            if they keep the order of the compiler's elements (i.e. usually the declaration order) */
+    public AnnotationManager(final Element annotatedClass, final ProcessingEnvironment processingEnv,
+            final boolean sorted) {
+        this.element = annotatedClass;
         this.types = processingEnv.getTypeUtils();
         this.stringType = processingEnv.getElementUtils().getTypeElement(String.class.getCanonicalName()).asType();
-        this.className = annotatedClass.getSimpleName().toString();
+        final String className = annotatedClass.getSimpleName().toString();
+        final String qualifiedName = annotatedClass instanceof QualifiedNameable
+                ? ((QualifiedNameable) annotatedClass).getQualifiedName().toString()
+                : className;
+        final String packageName = processingEnv.getElementUtils().getPackageOf(annotatedClass).getQualifiedName()
+                .toString();
 
-        final List<? extends Element> enclosed = annotatedClass.getEnclosedElements();
-        for (final Element element : enclosed) {
+        String prefix = "";
+        final List<MethodData> methods = new ArrayList<>();
+        final List<Element> methodElements = new ArrayList<>();
+        for (final Element element : annotatedClass.getEnclosedElements()) {
             if (element.getKind().isField() && element.getSimpleName().toString().equals(PREFIX_FLD)) {
-                this.prefix = processPrefix(element);
+                prefix = processPrefix(element);
             } else if (element.getKind() == ElementKind.METHOD) {
-                processMethod(element);
+                final MethodData method = processMethod(element);
+                if (method != null) {
+                    methods.add(method);
+                    methodElements.add(element);
+                }
             }
         }
-    }
+        if (sorted) {
+            sort(methods, methodElements);
+        }
+        this.model = compile(packageName, className, qualifiedName, prefix,
+                annotatedClass.getAnnotation(ObjectClassDefinition.class), methods);
 
-    private boolean isSingleElementAnnotation() {
-        if (this.methods.size() == 1) {
-            return "value".equalsIgnoreCase(this.methods.get(0).name);
+        final Messager messager = processingEnv.getMessager();
+        final List<AdModel> attributes = this.model.getAttributes();
+        for (int i = 0; i < attributes.size(); i++) {
+            for (final String error : new String[] { attributes.get(i).getDefaultError(),
+                    attributes.get(i).getParsedError() }) {
+                if (error != null) {
+                    this.valid = false;
+                    messager.printMessage(Kind.ERROR, error, methodElements.get(i));
+                }
+            }
+            // the outputs are generated, but the bound isn't validated
+            final String boundError = attributes.get(i).getBoundError();
+            if (boundError != null) {
+                messager.printMessage(Kind.WARNING, boundError, methodElements.get(i));
+            }
         }
-        return false;
     }
 
-    /** Process the methods annotated with <code>ttributeDefinition</code>.
+    /** AnnotationManager constructor for an already extracted model, e.g. to benchmark the emitters without a
+     * compiler.
      *
-     * @param doc {@link Document}
-     * @param parent {@link org.w3c.dom.Element} the parent to append the created <code>AD</code> elements */
-    public void processAttributeDefinitions(final Document doc, final org.w3c.dom.Element parent) {
-        for (final MethodData method : this.methods) {
-            final org.w3c.dom.Element ad = doc.createElement("AD");
-            parent.appendChild(ad);
-
-            final String adId = this.prefix +
-                    (isSingleElementAnnotation() ? IdUtil.createId(this.className) : IdUtil.toId(method.name));
-            method.setId(adId);
-            ad.setAttribute("id", adId);
-            setAttributeChecked(ad, "name", method.ad.name());
-            setAttributeChecked(ad, "description", method.ad.description());
-            setAttributeChecked(ad, "default", arrayToString(method.ad.defaultValue()));
-            setAttributeChecked(ad, "min", method.ad.min());
-            setAttributeChecked(ad, "max", method.ad.max());
-            if (!method.ad.required()) {
-                setAttributeChecked(ad, "required", "false");
-            }
-            setAttributeChecked(ad, "cardinality", toString(method.ad.cardinality(), 0));
-            if (isSpecialType(method)) {
-                ad.setAttribute("type",
-                        typeMap.getOrDefault(normalize(method.returnType), AttributeType.STRING).toString());
-            } else {
-                ad.setAttribute("type", method.ad.type().toString());
-            }
-            final Option[] options = method.ad.options();
-            if (options.length > 0) {
-                process(ad, options, doc);
-            }
+     * @param packageName String the name of the annotated class's package
+     * @param className String the simple name of the annotated class
+     * @param prefix String the value of the <code>PREFIX_</code> field
+     * @param ocd {@link ObjectClassDefinition} the annotation of the class
+     * @param methods List&lt;MethodData> the methods annotated with <code>@AttributeDefinition</code> */
+    AnnotationManager(final String packageName, final String className, final String prefix,
+            final ObjectClassDefinition ocd, final List<MethodData> methods) {
+        this.element = null;
+        this.types = null;
+        this.stringType = null;
+        this.model = compile(packageName, className, packageName.isEmpty() ? className : packageName + "." + className,
+                prefix, ocd, methods);
+        for (final AdModel attribute : this.model.getAttributes()) {
+            this.valid &= attribute.getDefaultError() == null && attribute.getParsedError() == null;
         }
     }
 
-    private String normalize(final TypeMirror returnType) {
-        return returnType.toString().replace("[]", "");
+    // sorts the methods (and their elements) by name, the names of an annotation's methods are unique
+    private static void sort(final List<MethodData> methods, final List<Element> elements) {
+        final Map<String, Integer> order = new TreeMap<>();
+        for (int i = 0; i < methods.size(); i++) {
+            order.put(methods.get(i).name, i);
+        }
+        final List<MethodData> sortedMethods = new ArrayList<>(methods.size());
+        final List<Element> sortedElements = new ArrayList<>(elements.size());
+        for (final int i : order.values()) {
+            sortedMethods.add(methods.get(i));
+            sortedElements.add(elements.get(i));
+        }
+        methods.clear();
+        methods.addAll(sortedMethods);
+        elements.clear();
+        elements.addAll(sortedElements);
     }
 
-    private boolean isSpecialType(final MethodData method) {
-        if (method.ad.type() == AttributeType.STRING) {
-            return !isString(method.returnType);
+    // compiles the extracted information in one pass, the ids depend on all methods and on the prefix
+    private static OcdModel compile(final String packageName, final String className, final String qualifiedName,
+            final String prefix, final ObjectClassDefinition ocd, final List<MethodData> methods) {
+        final boolean singleElement = methods.size() == 1 && "value".equalsIgnoreCase(methods.get(0).name);
+        final List<String> names = new ArrayList<>(methods.size());
+        for (final MethodData method : methods) {
+            names.add(method.name);
         }
-        return false;
+        // the ids of the whole attribute list, converted through one buffer
+        final List<String> ids = singleElement ? List.of(IdUtil.createId(className)) : IdUtil.toIds(names);
+        final List<AdModel> attributes = new ArrayList<>(methods.size());
+        for (int i = 0; i < methods.size(); i++) {
+            final MethodData method = methods.get(i);
+            attributes.add(new AdModel(prefix + ids.get(i), method.name, method.ad, method.typeName,
+                    method.normalizedType, method.isString, method.parsed));
+        }
+        return new OcdModel(packageName, className, qualifiedName, prefix, ocd.id(), ocd.name(), ocd.description(),
+                attributes);
     }
 
-    private boolean isString(final TypeMirror type) {
-        return this.types.isSameType(type, this.stringType);
+    /** @return {@link Element} the annotated class, e.g. to report a failure on (processor's thread only),
+     *         <code>null</code> for an already extracted model */
+    public Element getElement() {
+        return this.element;
     }
 
-    private void process(final org.w3c.dom.Element ad, final Option[] options, final Document doc) {
-        for (final Option option : options) {
-            final org.w3c.dom.Element opt = doc.createElement("Option");
-            ad.appendChild(opt);
-            opt.setAttribute("value", option.value());
-            opt.setAttribute("label", option.label());
-        }
+    /** @return {@link OcdModel} the compiled model of the configuration */
+    public OcdModel getModel() {
+        return this.model;
     }
 
-    private void setAttributeChecked(final org.w3c.dom.Element ad, final String name, final String value) {
-        if (value != null && !value.isBlank()) {
-            ad.setAttribute(name, value);
-        }
+    /** @return String the simple name of the annotated class */
+    public String getClassName() {
+        return this.model.getClassName();
     }
 
-    private String arrayToString(final String[] values) {
-        return Arrays.stream(values).collect(Collectors.joining(", "));
+    /** @return String the fully qualified name of the annotated class */
+    public String getQualifiedName() {
+        return this.model.getQualifiedName();
     }
 
-    private String toString(final int value, final int dft) {
-        return value == dft ? "" : String.valueOf(Math.abs(value));
+    /** @return String the name of the annotated class's package */
+    public String getPackageName() {
+        return this.model.getPackageName();
     }
 
-    private void processMethod(final Element element) {
-        final AttributeDefinition adAnnotation = element.getAnnotation(AttributeDefinition.class);
-        if (adAnnotation != null) {
-            this.methods.add(new MethodData(element.getSimpleName().toString(), adAnnotation,
-                    ((ExecutableElement) element).getReturnType()));
-        }
+    /** @return String the simple name of the generated component */
+    public String getTargetName() {
+        return this.model.getTargetName();
     }
 
-    private String processPrefix(final Element element) {
-        if (element instanceof VariableElement) {
-            return ((VariableElement) element).getConstantValue().toString();
-        }
-        return "";
+    /** @return String the simple name of the generated <code>MetaTypeProvider</code> */
+    public String getProviderName() {
+        return this.model.getProviderName();
     }
 
-    /** Creates the part of the code for the <code>activate</code> method.
-     *
-     * @return String */
-    public String getActivatePart() {
-        return this.methods.stream()
-                .map(m -> String.format("%sthis.%s = (%s) configuration.getOrDefault(\"%s\", null);", INDENT3,
-                        IdUtil.toFieldName(m.name), toSimpleName(m.returnType), m.adId))
-                .collect(Collectors.joining("\n"));
+    /** @return boolean <code>false</code> if errors have been reported for the configuration (e.g. malformed default
+     *         values), no outputs must be generated in this case */
+    public boolean isValid() {
+        return this.valid;
+    }
+
+    /** @return int the number of attribute definitions */
+    public int getAttributeCount() {
+        return this.model.getAttributes().size();
     }
 
-    /** Creates the part of the code to define the fields.
+    /** @return int the number of options of all attribute definitions */
+    public int getOptionCount() {
+        return this.model.getOptionCount();
+    }
+
+    /** Returns the fingerprint of the configuration, i.e. a digest of all information the metatype XML and the
+     * component are generated from (ids, types, defaults, options, prefix etc.).
      *
-     * @return String */
-    public String getFieldDefs() {
-        return this.methods.stream()
-                .map(m -> {
-                    final String addition = isString(m.returnType) ? " = \"\"" : "";
-                    return String.format("%sprivate %s %s%s;", INDENT1, toSimpleName(m.returnType),
-                            IdUtil.toFieldName(m.name), addition);
-                })
-                .collect(Collectors.joining("\n"));
+     * @return String the hex encoded fingerprint */
+    public String getFingerprint() {
+        return this.model.getFingerprint();
+    }
+
+    private String normalize(final TypeMirror returnType) {
+        return returnType.toString().replace("[]", "");
+    }
+
+    private boolean isString(final TypeMirror type) {
+        return this.types.isSameType(type, this.stringType);
     }
 
-    public String createGetters() {
-        return this.methods.stream().map(m -> {
-            final String name = IdUtil.toFieldName(m.name);
-            return String.format(GETTER_TMPL, toSimpleName(m.returnType),
-                    name.substring(0, 1).toUpperCase() + name.substring(1), name);
-        }).collect(Collectors.joining("\n"));
+    private MethodData processMethod(final Element element) {
+        final AttributeDefinition adAnnotation = element.getAnnotation(AttributeDefinition.class);
+        if (adAnnotation == null) {
+            return null;
+        }
+        final TypeMirror returnType = ((ExecutableElement) element).getReturnType();
+        final Parsed parsed = element.getAnnotation(Parsed.class);
+        return new MethodData(element.getSimpleName().toString(), adAnnotation, toSimpleName(returnType),
+                normalize(returnType), isString(returnType), parsed == null ? null : parsed.value());
+    }
+
+    private String processPrefix(final Element element) {
+        if (element instanceof VariableElement) {
+            return ((VariableElement) element).getConstantValue().toString();
+        }
+        return "";
     }
 
     private String toSimpleName(final TypeMirror type) {
@@ -215,21 +256,27 @@ public class AnnotationManager {
 
     // ---
 
-    private final static class MethodData {
+    final static class MethodData {
         private final String name;
         private final AttributeDefinition ad;
-        private final TypeMirror returnType;
+        private final String typeName;
+        private final String normalizedType;
+        private final boolean isString;
+        private final Parsed.Type parsed;
 
-        private String adId = "";
+        protected MethodData(final String name, final AttributeDefinition ad, final String typeName,
+                final String normalizedType, final boolean isString) {
+            this(name, ad, typeName, normalizedType, isString, null);
+        }
 
-        protected MethodData(final String name, final AttributeDefinition ad, final TypeMirror returnType) {
+        protected MethodData(final String name, final AttributeDefinition ad, final String typeName,
+                final String normalizedType, final boolean isString, final Parsed.Type parsed) {
             this.name = name;
             this.ad = ad;
-            this.returnType = returnType;
-        }
-
-        protected void setId(final String adId) {
-            this.adId = adId;
+            this.typeName = typeName;
+            this.normalizedType = normalizedType;
+            this.isString = isString;
+            this.parsed = parsed;
         }
     }
 
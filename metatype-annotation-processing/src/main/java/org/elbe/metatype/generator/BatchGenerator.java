@@ -0,0 +1,532 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/** Command line entry point generating the metatype of many configuration source roots in one JVM.<br>
+ * Each source root is processed by an in-process compiler task (<code>-proc:only</code>) running the
+ * {@link MetatypeAnnotationProcessor}, the roots are processed concurrently. The outputs of each root are isolated in
+ * its own directory <code>&lt;out>/&lt;name></code> (the name of the root's module for a <code>src/main/java</code>
+ * root, else the root's name):
+ * <ul>
+ * <li><code>classes/OSGI-INF/metatype</code>: the metatype XML files</li>
+ * <li><code>generated-sources</code>: the generated components</li>
+ * <li><code>metatype-fingerprints.properties</code>: the fingerprint cache, i.e. the batch is incremental too</li>
+ * </ul>
+ * With <code>--in-place</code>, the outputs are written to each root's own project instead, like a module configured
+ * with <code>metatype.xml.dir</code> and <code>metatype.src.dir</code>: the metatype XML files to the directory given
+ * by <code>--xml-dir</code> relative to the root's module (default: <code>OSGI-INF/metatype</code>), the generated
+ * components beside their configurations. The fingerprint caches are kept in <code>&lt;out>/&lt;name></code>.
+ *
+ * <pre>
+ * java -cp &lt;processor and OSGi annotations> org.elbe.metatype.generator.BatchGenerator
+ *     [--out &lt;dir>] [--threads &lt;n>] [--classpath &lt;path>] [--in-place [--xml-dir &lt;dir>]]
+ *     [--watch [--debounce &lt;ms>]] [-Akey=value ...] &lt;source root> ...
+ * </pre>
+ *
+ * With <code>--watch</code>, the roots are watched after they have been processed and the changed configurations are
+ * regenerated until the generator is stopped (see {@link WatchGenerator}).
+ *
+ * @author lbenno */
+public final class BatchGenerator {
+    private static final String USAGE = "Usage: BatchGenerator [--out <dir>] [--threads <n>] [--classpath <path>] "
+            + "[--in-place [--xml-dir <dir>]] [--watch [--debounce <ms>]] [-Akey=value ...] <source root> ...";
+    private static final String DEFAULT_OUT = "target/metatype-batch";
+    private static final Path DEFAULT_XML_DIR = Paths.get("OSGI-INF", "metatype");
+    private static final long DEFAULT_DEBOUNCE = 200;
+    private static final String CLASSES = "classes";
+    private static final String GENERATED = "generated-sources";
+    // options that would make the roots share their outputs, see --in-place
+    private static final Set<String> SHARED_OPTIONS = Set.of(GeneratorOptions.XML_DIR, GeneratorOptions.SRC_DIR,
+            GeneratorOptions.CACHE_FILE);
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final JavaCompiler compiler;
+    private final Path outDir;
+    private final String classpath;
+    private final List<String> processorOptions;
+    private final int threads;
+    private final Path xmlDir;
+
+    /** BatchGenerator constructor, the outputs of the roots are isolated.
+     *
+     * @param outDir {@link Path} the directory containing the output directories of the roots
+     * @param classpath String the class path to compile the configurations with (must contain the OSGi metatype
+     *            annotations), <code>null</code> to use the class path of this JVM
+     * @param processorOptions List&lt;String> the options passed to the processor (<code>-Akey=value</code>)
+     * @param threads int the maximal number of roots processed concurrently */
+    public BatchGenerator(final Path outDir, final String classpath, final List<String> processorOptions,
+            final int threads) {
+        this(outDir, classpath, processorOptions, threads, null);
+    }
+
+    /** BatchGenerator constructor.
+     *
+     * @param outDir {@link Path} the directory containing the output directories (or, in place, the fingerprint
+     *            caches) of the roots
+     * @param classpath String the class path to compile the configurations with (must contain the OSGi metatype
+     *            annotations), <code>null</code> to use the class path of this JVM
+     * @param processorOptions List&lt;String> the options passed to the processor (<code>-Akey=value</code>)
+     * @param threads int the maximal number of roots processed concurrently
+     * @param xmlDir {@link Path} the directory of the metatype XML files relative to each root's module to write the
+     *            outputs in place (the components beside their configurations), <code>null</code> to isolate them */
+    public BatchGenerator(final Path outDir, final String classpath, final List<String> processorOptions,
+            final int threads, final Path xmlDir) {
+        if (xmlDir != null && xmlDir.isAbsolute()) {
+            throw new IllegalArgumentException(String.format(
+                    "The XML directory '%s' must be relative to the roots' modules.", xmlDir));
+        }
+        this.compiler = ToolProvider.getSystemJavaCompiler();
+        if (this.compiler == null) {
+            throw new IllegalStateException("No Java compiler available, the batch generator must run on a JDK!");
+        }
+        this.outDir = outDir;
+        this.classpath = classpath == null ? System.getProperty("java.class.path") : classpath;
+        this.processorOptions = List.copyOf(processorOptions);
+        this.threads = Math.max(1, threads);
+        this.xmlDir = xmlDir;
+    }
+
+    /** @param args String[] the command line arguments, see the class's documentation */
+    public static void main(final String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /** Runs the batch generator.
+     *
+     * @param args String[] the command line arguments
+     * @param out {@link PrintStream} the stream to report the results of the roots to
+     * @param err {@link PrintStream} the stream to report the diagnostics and errors to
+     * @return int the exit code: <code>0</code> if all roots have been processed successfully, <code>1</code> if
+     *         processing a root failed, <code>2</code> if the arguments are invalid (in watch mode, the roots are
+     *         watched until the thread is interrupted) */
+    static int run(final String[] args, final PrintStream out, final PrintStream err) {
+        Path outDir = Paths.get(DEFAULT_OUT);
+        String classpath = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean inPlace = false;
+        Path xmlDir = DEFAULT_XML_DIR;
+        boolean watch = false;
+        long debounce = DEFAULT_DEBOUNCE;
+        final List<String> options = new ArrayList<>();
+        final List<Path> roots = new ArrayList<>();
+        final BatchGenerator generator;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                final String arg = args[i];
+                if ("--out".equals(arg)) {
+                    outDir = Paths.get(getValue(args, ++i, arg));
+                } else if ("--threads".equals(arg)) {
+                    threads = Integer.parseInt(getValue(args, ++i, arg));
+                } else if ("--classpath".equals(arg) || "-cp".equals(arg)) {
+                    classpath = getValue(args, ++i, arg);
+                } else if ("--in-place".equals(arg)) {
+                    inPlace = true;
+                } else if ("--xml-dir".equals(arg)) {
+                    xmlDir = Paths.get(getValue(args, ++i, arg));
+                } else if ("--watch".equals(arg)) {
+                    watch = true;
+                } else if ("--debounce".equals(arg)) {
+                    debounce = Long.parseLong(getValue(args, ++i, arg));
+                } else if (arg.startsWith("-A")) {
+                    final String key = arg.substring(2).split("=", 2)[0];
+                    if (SHARED_OPTIONS.contains(key)) {
+                        throw new IllegalArgumentException(String.format("The option '%s' is not supported, "
+                                + "use --in-place to write the outputs to the roots' modules.", key));
+                    }
+                    options.add(arg);
+                } else if (arg.startsWith("-")) {
+                    throw new IllegalArgumentException(String.format("Unknown argument '%s'.", arg));
+                } else {
+                    final Path root = Paths.get(arg);
+                    if (!Files.isDirectory(root)) {
+                        throw new IllegalArgumentException(String.format("The source root '%s' doesn't exist.", arg));
+                    }
+                    roots.add(root);
+                }
+            }
+            if (roots.isEmpty()) {
+                throw new IllegalArgumentException("No source root specified.");
+            }
+            generator = new BatchGenerator(outDir, classpath, options, threads, inPlace ? xmlDir : null);
+        } catch (final IllegalArgumentException exc) {
+            // includes the NumberFormatException of --threads and --debounce and an absolute --xml-dir
+            err.println(exc.getMessage());
+            err.println(USAGE);
+            return 2;
+        }
+
+        boolean success = true;
+        for (final Result result : generator.generate(roots)) {
+            success &= report(result, out, err);
+        }
+        if (!watch) {
+            return success ? 0 : 1;
+        }
+        try (WatchGenerator watcher = new WatchGenerator(generator, roots, debounce)) {
+            out.println("Watching for changes...");
+            watcher.run(result -> report(result, out, err));
+            return 0;
+        } catch (final IOException exc) {
+            err.println("Unable to watch the source roots: " + exc);
+            return 1;
+        }
+    }
+
+    private static boolean report(final Result result, final PrintStream out, final PrintStream err) {
+        result.getDiagnostics().forEach(err::println);
+        out.println(result);
+        return result.isSuccess();
+    }
+
+    private static String getValue(final String[] args, final int index, final String name) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException(String.format("The argument '%s' requires a value.", name));
+        }
+        return args[index];
+    }
+
+    /** Processes the passed source roots concurrently.
+     *
+     * @param roots List&lt;Path> the source roots
+     * @return List&lt;Result> the results, in the same order as the passed roots */
+    public List<Result> generate(final List<Path> roots) {
+        final List<Path> targets = getTargets(roots);
+        final int poolSize = Math.min(this.threads, roots.size());
+        final ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, poolSize), r -> {
+            final Thread thread = new Thread(r, "metatype-batch-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            final List<Callable<Result>> tasks = new ArrayList<>(roots.size());
+            for (int i = 0; i < roots.size(); i++) {
+                final Path root = roots.get(i);
+                final Path target = targets.get(i);
+                tasks.add(() -> generate(root, target));
+            }
+            final List<Future<Result>> futures = pool.invokeAll(tasks);
+            final List<Result> out = new ArrayList<>(roots.size());
+            for (int i = 0; i < futures.size(); i++) {
+                out.add(get(futures.get(i), roots.get(i), targets.get(i)));
+            }
+            return out;
+        } catch (final InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            final List<Result> out = new ArrayList<>(roots.size());
+            for (int i = 0; i < roots.size(); i++) {
+                out.add(newResult(roots.get(i), targets.get(i), false, 0, 0, List.of("Interrupted.")));
+            }
+            return out;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Result get(final Future<Result> future, final Path root, final Path target)
+            throws InterruptedException {
+        try {
+            return future.get();
+        } catch (final ExecutionException exc) {
+            return newResult(root, target, false, 0, 0, List.of(String.valueOf(exc.getCause())));
+        }
+    }
+
+    /** Processes the configurations of the specified source root.
+     *
+     * @param root {@link Path} the source root
+     * @param target {@link Path} the root's output directory
+     * @return {@link Result} */
+    public Result generate(final Path root, final Path target) {
+        final long start = System.nanoTime();
+        final List<File> sources;
+        try {
+            sources = listSources(root);
+        } catch (final IOException exc) {
+            return newResult(root, target, false, 0, 0, List.of("Unable to list the sources: " + exc));
+        }
+        return generate(root, target, sources, start);
+    }
+
+    private Result generate(final Path root, final Path target, final List<File> sources, final long start) {
+        try (StandardJavaFileManager fileManager = createFileManager()) {
+            return generate(root, target, sources, fileManager, List.of(), start);
+        } catch (final IOException exc) {
+            return newResult(root, target, false, sources.size(), elapsed(start), List.of(String.valueOf(exc)));
+        }
+    }
+
+    /** @return {@link StandardJavaFileManager} a new file manager, e.g. to be reused by subsequent compilations */
+    StandardJavaFileManager createFileManager() {
+        return this.compiler.getStandardFileManager(null, Locale.ROOT, StandardCharsets.UTF_8);
+    }
+
+    /** Processes the specified sources of a source root, e.g. the changed ones only.
+     *
+     * @param root {@link Path} the source root
+     * @param target {@link Path} the root's output directory
+     * @param sources List&lt;File> the sources to process
+     * @param fileManager {@link StandardJavaFileManager} the file manager, is not closed
+     * @param options List&lt;String> additional processor options
+     * @param start long the start time of the processing (<code>System.nanoTime()</code>)
+     * @return {@link Result} */
+    Result generate(final Path root, final Path target, final List<File> sources,
+            final StandardJavaFileManager fileManager, final List<String> options, final long start) {
+        if (sources.isEmpty()) {
+            return newResult(root, target, true, 0, elapsed(start), List.of());
+        }
+        final Path classes = target.resolve(CLASSES);
+        final Path generated = getSrcDir(target);
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        final StringWriter output = new StringWriter();
+        boolean success;
+        try {
+            Files.createDirectories(classes);
+            Files.createDirectories(generated);
+            final List<String> arguments = new ArrayList<>(List.of("-proc:only", "-implicit:none",
+                    "-encoding", "UTF-8", "-d", classes.toString(), "-s", generated.toString(),
+                    // the components generated before are found (i.e. unchanged configurations are skipped), the
+                    // root's other classes too (i.e. the root's sources can be processed one by one)
+                    "-sourcepath", generated + File.pathSeparator + root,
+                    "-classpath", this.classpath));
+            arguments.addAll(this.processorOptions);
+            if (this.xmlDir != null) {
+                // in place, the processor writes the outputs to the root's module
+                arguments.add("-A" + GeneratorOptions.XML_DIR + "=" + getXmlDir(root, target).toAbsolutePath());
+                arguments.add("-A" + GeneratorOptions.SRC_DIR + "=" + root.toAbsolutePath());
+            }
+            arguments.addAll(options);
+            final JavaCompiler.CompilationTask task = this.compiler.getTask(output, fileManager, diagnostics,
+                    arguments, null, fileManager.getJavaFileObjectsFromFiles(sources));
+            task.setProcessors(List.of(new MetatypeAnnotationProcessor()));
+            success = task.call();
+        } catch (final IOException | RuntimeException exc) {
+            success = false;
+            output.write(String.valueOf(exc));
+        }
+
+        final List<String> messages = diagnostics.getDiagnostics().stream()
+                .map(BatchGenerator::format)
+                .collect(Collectors.toCollection(ArrayList::new));
+        output.toString().lines().filter(line -> !line.isBlank()).forEach(messages::add);
+        return newResult(root, target, success, sources.size(), elapsed(start), messages);
+    }
+
+    private static String format(final Diagnostic<? extends JavaFileObject> diagnostic) {
+        final StringBuilder out = new StringBuilder(diagnostic.getKind().toString().toLowerCase(Locale.ROOT))
+                .append(": ");
+        if (diagnostic.getSource() != null) {
+            out.append(diagnostic.getSource().getName()).append(':').append(diagnostic.getLineNumber()).append(": ");
+        }
+        return out.append(diagnostic.getMessage(Locale.ROOT)).toString();
+    }
+
+    private static long elapsed(final long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    /** Lists the sources of the specified root. The components and providers generated beside their configurations
+     * (i.e. with <code>metatype.src.dir</code> pointing to the source root) are skipped, they are regenerated. So are
+     * the generated ones left behind by a deleted configuration, their outputs are deleted by the processor.
+     *
+     * @param root {@link Path}
+     * @return List&lt;File> the sources, sorted
+     * @throws IOException */
+    static List<File> listSources(final Path root) throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            return files.filter(file -> Files.isRegularFile(file) && isConfigurationSource(file))
+                    .sorted()
+                    .map(Path::toFile)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /** @param file {@link Path}
+     * @return boolean <code>true</code> if the file is a source to process, i.e. not a generated component or
+     *         provider */
+    static boolean isConfigurationSource(final Path file) {
+        final String name = file.getFileName().toString();
+        if (!name.endsWith(Constants.JAVA_EXT)) {
+            return false;
+        }
+        final String className = name.substring(0, name.length() - Constants.JAVA_EXT.length());
+        final String configuration;
+        if (className.startsWith(Constants.TARGET_CLASS_PREFIX)) {
+            configuration = className.substring(Constants.TARGET_CLASS_PREFIX.length());
+        } else if (className.endsWith(Constants.PROVIDER_CLASS_SUFFIX)) {
+            configuration = className.substring(0, className.length() - Constants.PROVIDER_CLASS_SUFFIX.length());
+        } else {
+            return true;
+        }
+        return !(Files.isRegularFile(file.resolveSibling(configuration + Constants.JAVA_EXT)) || isGenerated(file));
+    }
+
+    // the generated classes are marked by their Javadoc comment
+    private static boolean isGenerated(final Path file) {
+        try (Stream<String> lines = Files.lines(file, StandardCharsets.UTF_8)) {
+            return lines.anyMatch(Constants.GENERATED_COMMENT::equals);
+        } catch (final IOException | UncheckedIOException exc) {
+            return false;
+        }
+    }
+
+    /** @param root {@link Path} the source root
+     * @param target {@link Path} the root's output directory
+     * @return {@link Path} the directory containing the root's metatype XML files */
+    Path getXmlDir(final Path root, final Path target) {
+        if (this.xmlDir != null) {
+            return getModuleDir(root).resolve(this.xmlDir);
+        }
+        return target.resolve(CLASSES).resolve(DEFAULT_XML_DIR);
+    }
+
+    /** @param root {@link Path} the source root
+     * @param target {@link Path} the root's output directory
+     * @return {@link Path} the directory containing the root's generated components */
+    Path getSrcDir(final Path root, final Path target) {
+        return this.xmlDir == null ? getSrcDir(target) : root;
+    }
+
+    private static Path getSrcDir(final Path target) {
+        return target.resolve(GENERATED);
+    }
+
+    private Result newResult(final Path root, final Path target, final boolean success, final int sources,
+            final long millis, final List<String> diagnostics) {
+        return new Result(root, target, getXmlDir(root, target), getSrcDir(root, target), success, sources, millis,
+                diagnostics);
+    }
+
+    /** @param roots List&lt;Path> the source roots
+     * @return List&lt;Path> the output directories of the roots, named after the roots' modules and unique */
+    List<Path> getTargets(final List<Path> roots) {
+        final Set<String> names = new HashSet<>();
+        final List<Path> out = new ArrayList<>(roots.size());
+        for (final Path root : roots) {
+            final String name = getName(root);
+            String unique = name;
+            for (int i = 2; !names.add(unique); i++) {
+                unique = name + "-" + i;
+            }
+            out.add(this.outDir.resolve(unique));
+        }
+        return Collections.unmodifiableList(out);
+    }
+
+    private static String getName(final Path root) {
+        final Path absolute = root.toAbsolutePath().normalize();
+        final int count = absolute.getNameCount();
+        if (count > 3 && absolute.endsWith(Paths.get("src", "main", "java"))) {
+            return absolute.getName(count - 4).toString();
+        }
+        return count == 0 ? "root" : absolute.getFileName().toString();
+    }
+
+    // the module's directory for a src/main/java root, else the root
+    private static Path getModuleDir(final Path root) {
+        final Path absolute = root.toAbsolutePath().normalize();
+        if (absolute.getNameCount() > 3 && absolute.endsWith(Paths.get("src", "main", "java"))) {
+            return absolute.getParent().getParent().getParent();
+        }
+        return absolute;
+    }
+
+    // ---
+
+    /** The result of the processing of a source root. */
+    public static final class Result {
+        private final Path root;
+        private final Path target;
+        private final Path xmlDir;
+        private final Path srcDir;
+        private final boolean success;
+        private final int sources;
+        private final long millis;
+        private final List<String> diagnostics;
+
+        protected Result(final Path root, final Path target, final Path xmlDir, final Path srcDir,
+                final boolean success, final int sources, final long millis, final List<String> diagnostics) {
+            this.root = root;
+            this.target = target;
+            this.xmlDir = xmlDir;
+            this.srcDir = srcDir;
+            this.success = success;
+            this.sources = sources;
+            this.millis = millis;
+            this.diagnostics = List.copyOf(diagnostics);
+        }
+
+        /** @return {@link Path} the source root */
+        public Path getRoot() {
+            return this.root;
+        }
+
+        /** @return {@link Path} the root's output directory (in place, the directory of its fingerprint cache) */
+        public Path getTarget() {
+            return this.target;
+        }
+
+        /** @return {@link Path} the directory containing the root's metatype XML files */
+        public Path getXmlDir() {
+            return this.xmlDir;
+        }
+
+        /** @return {@link Path} the directory containing the root's generated components */
+        public Path getSrcDir() {
+            return this.srcDir;
+        }
+
+        /** @return boolean <code>true</code> if the root has been processed without errors */
+        public boolean isSuccess() {
+            return this.success;
+        }
+
+        /** @return int the number of processed sources */
+        public int getSources() {
+            return this.sources;
+        }
+
+        /** @return List&lt;String> the compiler's diagnostics */
+        public List<String> getDiagnostics() {
+            return this.diagnostics;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %s (%d sources, %d ms) -> %s", this.root, this.success ? "OK" : "FAILED",
+                    this.sources, this.millis, this.target);
+        }
+    }
+
+}
@@ -8,11 +8,14 @@ package org.elbe.metatype.generator;
  * @author lbenno */
 public final class Constants {
 
-    public static final String TARGET_CLASS_NAME = "AppConfiguration";
-    public static final String TARGET_TMP_NAME = "TmpAppConfiguration";
+    public static final String TARGET_CLASS_PREFIX = "App";
+
+    public static final String PROVIDER_CLASS_SUFFIX = "MetaTypeProvider";
 
     public static final String JAVA_EXT = ".java";
 
+    public static final String GENERATED_COMMENT = "/** Generated */";
+
     private Constants() {
         // prevent instantiation
     }
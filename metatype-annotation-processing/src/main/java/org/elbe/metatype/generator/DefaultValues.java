@@ -0,0 +1,182 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import java.util.Map;
+
+/** Helper class to parse the <code>defaultValue</code> of an <code>@AttributeDefinition</code> at compile time.<br>
+ * The values are converted to the Java literal of the attribute's type (e.g. <code>8080</code>,
+ * <code>{ 0.5, 1.5 }</code>), therefore, the generated component can use them as constants without parsing at
+ * runtime.
+ *
+ * @author lbenno */
+public final class DefaultValues {
+    private static final Map<String, String> WRAPPERS = Map.of("int", "Integer", "long", "Long", "short", "Short",
+            "byte", "Byte", "double", "Double", "float", "Float", "boolean", "Boolean", "char", "Character",
+            "String", "String");
+
+    private DefaultValues() {
+        // prevent instantiation
+    }
+
+    /** Checks whether defaults of the specified type can be converted to a constant.
+     *
+     * @param typeName String the type of the attribute, e.g. <code>int</code> or <code>String[]</code>
+     * @return boolean <code>true</code> for primitives, <code>String</code> and arrays of them */
+    public static boolean isSupported(final String typeName) {
+        return WRAPPERS.containsKey(getComponentType(typeName));
+    }
+
+    /** Converts the default values to the Java literal of the specified type.
+     *
+     * @param typeName String the type of the attribute, e.g. <code>int</code> or <code>String[]</code>
+     * @param values String[] the default values of the attribute
+     * @return String the literal, <code>null</code> if there are no default values or the type is not supported
+     * @throws IllegalArgumentException if a value can't be converted to the type */
+    public static String toLiteral(final String typeName, final String[] values) {
+        if (values.length == 0 || !isSupported(typeName)) {
+            return null;
+        }
+        final String type = getComponentType(typeName);
+        if (type.equals(typeName)) {
+            if (values.length > 1) {
+                throw new IllegalArgumentException(
+                        String.format("The attribute of type %s accepts only one default value.", typeName));
+            }
+            return toLiteral(type, values[0]);
+        }
+        final StringBuilder out = new StringBuilder("{ ");
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                out.append(", ");
+            }
+            out.append(toLiteral(type, values[i]));
+        }
+        return out.append(" }").toString();
+    }
+
+    /** Converts a bound of an attribute (i.e. its <code>min</code> or <code>max</code>) to the Java literal of the
+     * specified primitive type.
+     *
+     * @param type String the primitive type, e.g. <code>int</code>
+     * @param value String the bound
+     * @return String the literal
+     * @throws IllegalArgumentException if the bound can't be converted to the type */
+    public static String toBoundLiteral(final String type, final String value) {
+        try {
+            return toLiteral(type, value);
+        } catch (final IllegalArgumentException exc) {
+            throw new IllegalArgumentException(
+                    String.format("The bound \"%s\" is not a valid %s.", value, WRAPPERS.get(type)), exc);
+        }
+    }
+
+    /** @param typeName String
+     * @return boolean <code>true</code> if the type is an array */
+    public static boolean isArray(final String typeName) {
+        return typeName.endsWith("[]");
+    }
+
+    private static String getComponentType(final String typeName) {
+        return isArray(typeName) ? typeName.substring(0, typeName.length() - 2) : typeName;
+    }
+
+    private static String toLiteral(final String type, final String value) {
+        try {
+            switch (type) {
+            case "String":
+                return quote(value, '"');
+            case "char":
+                if (value.length() != 1) {
+                    throw new IllegalArgumentException();
+                }
+                return quote(value, '\'');
+            case "boolean":
+                if (!"true".equalsIgnoreCase(value.trim()) && !"false".equalsIgnoreCase(value.trim())) {
+                    throw new IllegalArgumentException();
+                }
+                return value.trim().toLowerCase();
+            case "int":
+                return String.valueOf(Integer.parseInt(value.trim()));
+            case "long":
+                return Long.parseLong(value.trim()) + "L";
+            case "short":
+                return String.valueOf(Short.parseShort(value.trim()));
+            case "byte":
+                return String.valueOf(Byte.parseByte(value.trim()));
+            case "double":
+                return toLiteral(Double.parseDouble(value.trim()));
+            default:
+                return toLiteral(Float.parseFloat(value.trim()));
+            }
+        } catch (final IllegalArgumentException exc) {
+            throw new IllegalArgumentException(
+                    String.format("The default value \"%s\" is not a valid %s.", value, WRAPPERS.get(type)), exc);
+        }
+    }
+
+    private static String toLiteral(final double value) {
+        if (Double.isNaN(value)) {
+            return "Double.NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "Double.POSITIVE_INFINITY" : "Double.NEGATIVE_INFINITY";
+        }
+        return Double.toString(value);
+    }
+
+    private static String toLiteral(final float value) {
+        if (Float.isNaN(value)) {
+            return "Float.NaN";
+        }
+        if (Float.isInfinite(value)) {
+            return value > 0 ? "Float.POSITIVE_INFINITY" : "Float.NEGATIVE_INFINITY";
+        }
+        return Float.toString(value) + "F";
+    }
+
+    /** Creates a Java string or character literal, all non ASCII characters are escaped.
+     *
+     * @param value String
+     * @param quote char either <code>"</code> or <code>'</code>
+     * @return String the literal */
+    public static String quote(final String value, final char quote) {
+        final StringBuilder out = new StringBuilder(value.length() + 2).append(quote);
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+            case '\n':
+                out.append("\\n");
+                break;
+            case '\r':
+                out.append("\\r");
+                break;
+            case '\t':
+                out.append("\\t");
+                break;
+            case '\\':
+                out.append("\\\\");
+                break;
+            case '"':
+            case '\'':
+                if (c == quote) {
+                    out.append('\\');
+                }
+                out.append(c);
+                break;
+            default:
+                if (c < 0x20) {
+                    // unicode escapes of line terminators are not allowed in literals
+                    out.append(String.format("\\%03o", (int) c));
+                } else if (c > 0x7E) {
+                    out.append(String.format("\\u%04x", (int) c));
+                } else {
+                    out.append(c);
+                }
+            }
+        }
+        return out.append(quote).toString();
+    }
+
+}
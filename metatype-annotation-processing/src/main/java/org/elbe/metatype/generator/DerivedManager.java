@@ -0,0 +1,246 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.elbe.metatype.annotations.Parsed;
+
+/** Creates the parts of the generated component holding the derived values of the attributes annotated with
+ * {@link Parsed}, e.g. a <code>Pattern</code> compiled from a <code>String</code> attribute.<br>
+ * The derived values are parsed once per (re)configuration from the attributes' new values, the consumers get them
+ * through their own getters instead of parsing the <code>String</code> on every request. A value that can't be parsed
+ * is replaced by the parsed default value (<code>null</code> if there is none).
+ *
+ * @author lbenno */
+public class DerivedManager {
+    private static final String INDENT1 = String.format("%4s", " ");
+    private static final String INDENT3 = String.format("%12s", " ");
+    private static final String GETTER_TMPL = "\r\n%1$spublic %2$s get%3$s() {\r\n"
+            + "%1$s    return %4$s;\r\n"
+            + "%1$s}";
+    private static final String PARSE_TMPL = "\r\n"
+            + "\r\n"
+            + "    private static %1$s to%1$s(final String value, final %1$s fallback) {\r\n"
+            + "        if (value == null) {\r\n"
+            + "            return fallback;\r\n"
+            + "        }\r\n"
+            + "        try {\r\n"
+            + "            return %2$s;\r\n"
+            + "        } catch (final %3$s exc) {\r\n"
+            + "            return fallback;\r\n"
+            + "        }\r\n"
+            + "    }";
+
+    private final List<AdModel> attributes;
+
+    /** DerivedManager constructor.
+     *
+     * @param model {@link OcdModel} the configuration
+     * @param enums boolean <code>true</code> if the attributes with options are held as enum constants, i.e. are not
+     *            parsed */
+    public DerivedManager(final OcdModel model, final boolean enums) {
+        this.attributes = new ArrayList<>();
+        for (final AdModel attribute : model.getAttributes()) {
+            if (attribute.getParsed() != null && !(enums && EnumManager.isEnum(attribute))) {
+                this.attributes.add(attribute);
+            }
+        }
+    }
+
+    /** Checks at compile time whether the passed value can be parsed into the specified type.
+     *
+     * @param type {@link Parsed.Type}
+     * @param value String
+     * @return boolean <code>true</code> if the value can be parsed */
+    public static boolean isParsable(final Parsed.Type type, final String value) {
+        try {
+            switch (type) {
+            case PATTERN:
+                Pattern.compile(value);
+                break;
+            case URI:
+                URI.create(value);
+                break;
+            case DURATION:
+                Duration.parse(value);
+                break;
+            default:
+                Charset.forName(value);
+                break;
+            }
+            return true;
+        } catch (final IllegalArgumentException | DateTimeException exc) {
+            return false;
+        }
+    }
+
+    /** @param type {@link Parsed.Type}
+     * @return String the simple name of the Java type, e.g. <code>Pattern</code> */
+    public static String getTypeName(final Parsed.Type type) {
+        switch (type) {
+        case PATTERN:
+            return "Pattern";
+        case URI:
+            return "URI";
+        case DURATION:
+            return "Duration";
+        default:
+            return "Charset";
+        }
+    }
+
+    /** @param imports Set&lt;String> the imports of the generated component to add the derived types to */
+    public void addImports(final Set<String> imports) {
+        for (final Parsed.Type type : getTypes()) {
+            switch (type) {
+            case PATTERN:
+                imports.add("java.util.regex.Pattern");
+                break;
+            case URI:
+                imports.add("java.net.URI");
+                break;
+            case DURATION:
+                imports.add("java.time.Duration");
+                imports.add("java.time.DateTimeException");
+                break;
+            default:
+                imports.add("java.nio.charset.Charset");
+                break;
+            }
+        }
+    }
+
+    /** Appends the constants of the parsed default values, each terminated by a line break.
+     *
+     * @param out {@link Appendable}
+     * @throws IOException */
+    public void appendConstantDefs(final Appendable out) throws IOException {
+        for (final AdModel attribute : this.attributes) {
+            if (attribute.hasDefault()) {
+                out.append(String.format("%sprivate static final %s %s = %s;\r\n", INDENT1, getType(attribute),
+                        getConstantName(attribute), getParser(attribute.getParsed(), attribute.getConstantName())));
+            }
+        }
+    }
+
+    /** Appends the fields of the derived values, each preceded by a line break.
+     *
+     * @param out {@link Appendable}
+     * @param indent String the fields' indent
+     * @param modifiers String the fields' modifiers, e.g. <code>private final</code>
+     * @param initialize boolean <code>true</code> if the fields are initialized with the parsed default values
+     * @throws IOException */
+    public void appendFieldDefs(final Appendable out, final String indent, final String modifiers,
+            final boolean initialize) throws IOException {
+        for (final AdModel attribute : this.attributes) {
+            out.append(String.format("\n%s%s %s %s", indent, modifiers, getType(attribute), getFieldName(attribute)))
+                    .append(initialize && attribute.hasDefault() ? " = " + getConstantName(attribute) : "")
+                    .append(';');
+        }
+    }
+
+    /** Appends the statements initializing the derived values before the first activation, each preceded by a line
+     * break.
+     *
+     * @param out {@link Appendable}
+     * @throws IOException */
+    public void appendInitPart(final Appendable out) throws IOException {
+        for (final AdModel attribute : this.attributes) {
+            out.append(String.format("\n%sthis.%s = %s;", INDENT3, getFieldName(attribute), getFallback(attribute)));
+        }
+    }
+
+    /** Appends the statements parsing the attributes' new values, each preceded by a line break.
+     *
+     * @param out {@link Appendable}
+     * @throws IOException */
+    public void appendParsePart(final Appendable out) throws IOException {
+        for (final AdModel attribute : this.attributes) {
+            out.append(String.format("\n%sthis.%s = to%s(this.%s, %s);", INDENT3, getFieldName(attribute),
+                    getType(attribute), attribute.getFieldName(), getFallback(attribute)));
+        }
+    }
+
+    /** Appends the getters of the derived values, each preceded by a line break.
+     *
+     * @param out {@link Appendable}
+     * @param indent String the getters' indent
+     * @param valueTmpl String the template of the returned expression, <code>%1$s</code> is the field name,
+     *            <code>%2$s</code> the capitalized field name
+     * @throws IOException */
+    public void appendGetters(final Appendable out, final String indent, final String valueTmpl)
+            throws IOException {
+        for (final AdModel attribute : this.attributes) {
+            final String property = attribute.getPropertyName() + getSuffix(attribute);
+            out.append('\n').append(String.format(GETTER_TMPL, indent, getType(attribute), property,
+                    String.format(valueTmpl, getFieldName(attribute), property)));
+        }
+    }
+
+    /** Appends the static methods parsing the values, one per derived type.
+     *
+     * @param out {@link Appendable}
+     * @throws IOException */
+    public void appendParseMethods(final Appendable out) throws IOException {
+        for (final Parsed.Type type : getTypes()) {
+            out.append(String.format(PARSE_TMPL, getTypeName(type), getParser(type, "value"),
+                    type == Parsed.Type.DURATION ? "DateTimeException" : "IllegalArgumentException"));
+        }
+    }
+
+    // the derived types, each once
+    private Set<Parsed.Type> getTypes() {
+        final Set<Parsed.Type> out = EnumSet.noneOf(Parsed.Type.class);
+        for (final AdModel attribute : this.attributes) {
+            out.add(attribute.getParsed());
+        }
+        return out;
+    }
+
+    private static String getParser(final Parsed.Type type, final String value) {
+        switch (type) {
+        case PATTERN:
+            return "Pattern.compile(" + value + ")";
+        case URI:
+            return "URI.create(" + value + ")";
+        case DURATION:
+            return "Duration.parse(" + value + ")";
+        default:
+            return "Charset.forName(" + value + ")";
+        }
+    }
+
+    private static String getType(final AdModel attribute) {
+        return getTypeName(attribute.getParsed());
+    }
+
+    // e.g. "Uri" for the field "endpointUri" and the getter "getEndpointUri()"
+    private static String getSuffix(final AdModel attribute) {
+        final String name = getTypeName(attribute.getParsed());
+        return name.charAt(0) + name.substring(1).toLowerCase();
+    }
+
+    private static String getFieldName(final AdModel attribute) {
+        return attribute.getFieldName() + getSuffix(attribute);
+    }
+
+    private static String getConstantName(final AdModel attribute) {
+        return attribute.getConstantName() + "_" + getSuffix(attribute).toUpperCase();
+    }
+
+    private static String getFallback(final AdModel attribute) {
+        return attribute.hasDefault() ? getConstantName(attribute) : "null";
+    }
+
+}
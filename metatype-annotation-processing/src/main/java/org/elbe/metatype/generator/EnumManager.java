@@ -0,0 +1,164 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/** Creates the enums of the generated component, one per <code>String</code> attribute with options.<br>
+ * The component holds the attribute's value as constant of its enum, therefore, consumers compare options by identity
+ * instead of comparing strings. The configured value is converted once per (re)configuration by the enum's
+ * <code>of()</code> method, a <code>switch</code> on the option values (i.e. a hash lookup). Values that are not an
+ * option are converted to the attribute's default option (<code>null</code> if there is none).
+ *
+ * @author lbenno */
+public class EnumManager {
+    private static final String INDENT1 = String.format("%4s", " ");
+    private static final String INDENT2 = String.format("%8s", " ");
+    private static final String INDENT3 = String.format("%12s", " ");
+    private static final String SUFFIX = "Option";
+    private static final String ENUM_TMPL = "\r\n"
+            + "    /** The options of the attribute '%2$s'. */\r\n"
+            + "    public enum %1$s {\r\n";
+    private static final String MEMBERS_TMPL = ";\r\n"
+            + "\r\n"
+            + "        private final String value;\r\n"
+            + "        private final String label;\r\n"
+            + "\r\n"
+            + "        %1$s(final String value, final String label) {\r\n"
+            + "            this.value = value;\r\n"
+            + "            this.label = label;\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        /** @return String the configured value of the option */\r\n"
+            + "        public String getValue() {\r\n"
+            + "            return this.value;\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        /** @return String the option's label */\r\n"
+            + "        public String getLabel() {\r\n"
+            + "            return this.label;\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        /** Converts a configured value to its option.\r\n"
+            + "         *\r\n"
+            + "         * @param value String the configured value\r\n"
+            + "         * @param fallback %1$s the option if the value is <code>null</code> or not an option\r\n"
+            + "         * @return %1$s */\r\n"
+            + "        public static %1$s of(final String value, final %1$s fallback) {\r\n"
+            + "            if (value == null) {\r\n"
+            + "                return fallback;\r\n"
+            + "            }\r\n"
+            + "            switch (value) {\r\n";
+    private static final String END = "            default:\r\n"
+            + "                return fallback;\r\n"
+            + "            }\r\n"
+            + "        }\r\n"
+            + "    }\r\n";
+
+    private final OcdModel model;
+
+    /** @param model {@link OcdModel} the configuration */
+    public EnumManager(final OcdModel model) {
+        this.model = model;
+    }
+
+    /** @param attribute {@link AdModel}
+     * @return boolean <code>true</code> if an enum is generated for the attribute, i.e. it is a <code>String</code>
+     *         with options */
+    public static boolean isEnum(final AdModel attribute) {
+        return attribute.isString() && !attribute.getOptions().isEmpty();
+    }
+
+    /** @param attribute {@link AdModel}
+     * @return String the simple name of the attribute's enum, e.g. <code>ServerModeOption</code> */
+    public static String getEnumName(final AdModel attribute) {
+        return attribute.getPropertyName() + SUFFIX;
+    }
+
+    /** @param attribute {@link AdModel}
+     * @return String the expression of the enum constant of the attribute's default value, <code>null</code> if there
+     *         is no default value or it is not an option */
+    public static String getDefault(final AdModel attribute) {
+        if (!attribute.hasDefault()) {
+            return null;
+        }
+        final String constant = getConstants(attribute).get(attribute.getDefaultValues().get(0));
+        return constant == null ? null : getEnumName(attribute) + "." + constant;
+    }
+
+    /** Appends the enums of all attributes with options.
+     *
+     * @param out {@link Appendable}
+     * @throws IOException */
+    public void appendEnums(final Appendable out) throws IOException {
+        for (final AdModel attribute : this.model.getAttributes()) {
+            if (isEnum(attribute)) {
+                appendEnum(out, attribute);
+            }
+        }
+    }
+
+    private static void appendEnum(final Appendable out, final AdModel attribute) throws IOException {
+        final String name = getEnumName(attribute);
+        final Map<String, String> constants = getConstants(attribute);
+        final Map<String, String> labels = new LinkedHashMap<>();
+        for (final AdModel.OptionModel option : attribute.getOptions()) {
+            labels.putIfAbsent(option.getValue(), option.getLabel());
+        }
+        out.append(String.format(ENUM_TMPL, name, attribute.getId()));
+        boolean first = true;
+        for (final Map.Entry<String, String> constant : constants.entrySet()) {
+            out.append(first ? "" : ",\r\n").append(INDENT2).append(constant.getValue()).append('(')
+                    .append(quote(constant.getKey())).append(", ").append(quote(labels.get(constant.getKey())))
+                    .append(')');
+            first = false;
+        }
+        out.append(String.format(MEMBERS_TMPL, name));
+        for (final Map.Entry<String, String> constant : constants.entrySet()) {
+            out.append(INDENT3).append("case ").append(quote(constant.getKey())).append(":\r\n");
+            out.append(INDENT3).append(INDENT1).append("return ").append(constant.getValue()).append(";\r\n");
+        }
+        out.append(END);
+    }
+
+    // the names of the enum constants by option value, the first option of a value wins
+    private static Map<String, String> getConstants(final AdModel attribute) {
+        final Map<String, String> out = new LinkedHashMap<>();
+        final Set<String> names = new HashSet<>();
+        for (final AdModel.OptionModel option : attribute.getOptions()) {
+            if (out.containsKey(option.getValue())) {
+                continue;
+            }
+            final String name = toConstantName(option.getValue());
+            String unique = name;
+            for (int i = 2; !names.add(unique); i++) {
+                unique = name + "_" + i;
+            }
+            out.put(option.getValue(), unique);
+        }
+        return out;
+    }
+
+    // e.g. "en-US" -> "EN_US", "1" -> "V_1"
+    private static String toConstantName(final String value) {
+        final StringBuilder out = new StringBuilder(value.length() + 2);
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            out.append(c < 0x80 && Character.isLetterOrDigit(c) ? Character.toUpperCase(c) : '_');
+        }
+        if (out.length() == 0 || !Character.isLetter(out.charAt(0))) {
+            out.insert(0, "V_");
+        }
+        return out.toString();
+    }
+
+    private static String quote(final String value) {
+        return DefaultValues.quote(value, '"');
+    }
+
+}
@@ -0,0 +1,181 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/** Persistent cache of the configurations' fingerprints, used for incremental generation.<br>
+ * The cache maps the qualified name of each configuration to the fingerprint of the model its outputs have been
+ * generated from (see {@link AnnotationManager#getFingerprint()}). A configuration with an unchanged fingerprint is
+ * not generated again, its previous outputs are kept.<br>
+ * The cache is only valid for the settings and the output directories (its owner) it has been created with, i.e. the
+ * cache is discarded if the generator's settings change. The configurations of a discarded cache of the same owner are
+ * kept to remove their outputs if they are not generated again, the configurations of another owner (e.g. of another
+ * module sharing the cache file) are ignored, i.e. their outputs are never touched.<br>
+ * The file's content only depends on the entries (sorted, without the date), i.e. it is only rewritten if an entry
+ * changed.
+ *
+ * @author lbenno */
+public class FingerprintCache {
+    private static final Logger LOG = Logger.getLogger(FingerprintCache.class.getName());
+
+    private static final String SETTINGS = ".settings";
+    private static final String OWNER = ".owner";
+
+    private final Optional<Path> file;
+    private final Properties entries = new Properties();
+    private final Set<String> previous = new HashSet<>();
+    private final Set<String> seen = new HashSet<>();
+    private final boolean loaded;
+
+    private FingerprintCache(final Optional<Path> file, final String settings, final String owner) {
+        this.file = file;
+        final boolean read = file.isPresent() && read(file.get());
+        final boolean owned = read && owner.equals(this.entries.getProperty(OWNER));
+        this.loaded = owned && settings.equals(this.entries.getProperty(SETTINGS));
+        if (!this.loaded) {
+            if (owned) {
+                // the outputs of the former settings
+                this.previous.addAll(getNames());
+            }
+            this.entries.clear();
+        }
+        this.entries.setProperty(SETTINGS, settings);
+        this.entries.setProperty(OWNER, owner);
+    }
+
+    /** Loads the cache from the specified file.
+     *
+     * @param file Optional&lt;Path> the cache file, may not exist, empty if the cache is not persisted
+     * @param settings String the generator's settings the cache has to match
+     * @param owner String the description of the output directories the cache has to match
+     * @return {@link FingerprintCache} */
+    public static FingerprintCache load(final Optional<Path> file, final String settings, final String owner) {
+        return new FingerprintCache(file, settings, owner);
+    }
+
+    private boolean read(final Path file) {
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            this.entries.load(in);
+        } catch (final IOException | IllegalArgumentException exc) {
+            LOG.log(Level.WARNING, "Unable to read the fingerprint cache, the configurations are generated again.",
+                    exc);
+            this.entries.clear();
+            return false;
+        }
+        return true;
+    }
+
+    // the qualified names of the cached configurations
+    private Set<String> getNames() {
+        final Set<String> out = new HashSet<>();
+        for (final String name : this.entries.stringPropertyNames()) {
+            if (!name.startsWith(".")) {
+                out.add(name);
+            }
+        }
+        return out;
+    }
+
+    /** @return boolean <code>true</code> if a valid cache has been loaded, i.e. the existing outputs can be trusted */
+    public boolean isLoaded() {
+        return this.loaded;
+    }
+
+    /** Checks whether the configuration's outputs have been generated from the same model and marks the
+     * configuration as seen.
+     *
+     * @param manager {@link AnnotationManager}
+     * @param fingerprint String the configuration's actual fingerprint
+     * @return boolean <code>true</code> if the fingerprint is unchanged */
+    public boolean isUnchanged(final AnnotationManager manager, final String fingerprint) {
+        this.seen.add(manager.getQualifiedName());
+        return fingerprint.equals(this.entries.getProperty(manager.getQualifiedName()));
+    }
+
+    /** Registers the fingerprint of the configuration's newly generated outputs.
+     *
+     * @param manager {@link AnnotationManager}
+     * @param fingerprint String */
+    public void update(final AnnotationManager manager, final String fingerprint) {
+        this.seen.add(manager.getQualifiedName());
+        this.entries.setProperty(manager.getQualifiedName(), fingerprint);
+    }
+
+    /** Removes the entry of the configuration, e.g. because its outputs could not be generated.
+     *
+     * @param manager {@link AnnotationManager} */
+    public void remove(final AnnotationManager manager) {
+        this.entries.remove(manager.getQualifiedName());
+    }
+
+    /** @return Set&lt;String> the qualified names of the configurations seen in this compilation */
+    public Set<String> getSeen() {
+        return Collections.unmodifiableSet(this.seen);
+    }
+
+    /** Removes all entries of configurations that have not been seen in this compilation.
+     *
+     * @return Set&lt;String> the qualified names of the removed configurations, including those of a discarded cache
+     *         of the same owner */
+    public Set<String> removeStale() {
+        final Set<String> out = new TreeSet<>();
+        final Set<String> names = getNames();
+        names.addAll(this.previous);
+        for (final String name : names) {
+            if (!this.seen.contains(name)) {
+                this.entries.remove(name);
+                out.add(name);
+            }
+        }
+        this.previous.clear();
+        return out;
+    }
+
+    /** Writes the cache to its file. */
+    public void save() {
+        if (this.file.isEmpty()) {
+            return;
+        }
+        try {
+            NioHandler.write(this.file.get(), toBytes());
+        } catch (final IOException exc) {
+            LOG.log(Level.WARNING, "Unable to write the fingerprint cache!", exc);
+        }
+    }
+
+    // the entries one per line and sorted, the date written by Properties.store() is dropped
+    private byte[] toBytes() throws IOException {
+        final ByteArrayOutputStream stored = new ByteArrayOutputStream();
+        this.entries.store(stored, null);
+        final Set<String> lines = new TreeSet<>();
+        for (final String line : stored.toString(StandardCharsets.ISO_8859_1).split("\\R")) {
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                lines.add(line);
+            }
+        }
+        final StringBuilder out = new StringBuilder("#metatype generator fingerprints\n");
+        for (final String line : lines) {
+            out.append(line).append('\n');
+        }
+        return out.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+}
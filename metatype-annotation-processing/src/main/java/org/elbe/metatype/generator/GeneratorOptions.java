@@ -0,0 +1,282 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Set;
+
+/** The options passed to the annotation processor (i.e. <code>-Akey=value</code>).
+ *
+ * @author lbenno */
+public final class GeneratorOptions {
+    /** The number of threads used to emit the metatype XML and the component source. */
+    public static final String THREADS = "metatype.threads";
+    /** The backend used to create the metatype XML, see {@link XmlBackend}. */
+    public static final String XML_BACKEND = "metatype.xml.backend";
+    /** The directory to write the metatype XML files to, default: <code>OSGI-INF/metatype</code> in the class
+     * output. */
+    public static final String XML_DIR = "metatype.xml.dir";
+    /** The source directory to write the generated classes to, default: created through the <code>Filer</code>. */
+    public static final String SRC_DIR = "metatype.src.dir";
+    /** The file of the fingerprint cache, default: <code>metatype-fingerprints.properties</code> beside the class
+     * output. */
+    public static final String CACHE_FILE = "metatype.cache.file";
+    /** If <code>true</code>, the generated component publishes its values as immutable snapshot, default:
+     * <code>false</code>. */
+    public static final String SNAPSHOT = "metatype.snapshot";
+    /** If <code>true</code>, the generated component notifies listeners about the changed attributes, default:
+     * <code>false</code>. */
+    public static final String LISTENERS = "metatype.listeners";
+    /** The strategy of the generated component to read the configuration, see {@link Activation}. */
+    public static final String ACTIVATION = "metatype.activation";
+    /** If <code>true</code>, the time spent in each phase of the generator and the number of processed configurations
+     * are reported, default: <code>false</code>. */
+    public static final String STATS = "metatype.stats";
+    /** If <code>true</code>, the compilation contains only a part of the configurations (e.g. the changed ones), the
+     * outputs of the other configurations are kept, default: <code>false</code>. */
+    public static final String PARTIAL = "metatype.partial";
+    /** If <code>true</code>, a <code>MetaTypeProvider</code> holding the prebuilt object class definition is generated
+     * beside the metatype XML, default: <code>false</code>. */
+    public static final String PROVIDER = "metatype.provider";
+    /** If <code>true</code>, the generated component validates the configured values against the attribute
+     * definitions' <code>min</code>, <code>max</code>, <code>cardinality</code> and <code>required</code>, default:
+     * <code>false</code>. */
+    public static final String VALIDATION = "metatype.validation";
+    /** If <code>true</code>, the generated component holds the <code>String</code> attributes with options as constants
+     * of generated enums, default: <code>false</code>. */
+    public static final String ENUMS = "metatype.enums";
+    /** If <code>true</code>, the getters of the generated component's array attributes return read-only views
+     * instead of the internal arrays, default: <code>false</code>. */
+    public static final String VIEWS = "metatype.views";
+    /** If <code>true</code>, the generated component stores its accepted values in a binary file and serves them at
+     * startup until ConfigAdmin delivers the configuration, default: <code>false</code>. */
+    public static final String WARM_START = "metatype.warmstart";
+    /** If <code>true</code>, the outputs are canonical, i.e. identical inputs create byte-identical outputs on every
+     * platform and compiler: the attributes are sorted by name, the line endings are <code>\n</code> and the metatype
+     * XML is written by the stream backend, default: <code>false</code>. */
+    public static final String CANONICAL = "metatype.canonical";
+    /** The runtime metrics recorded by the generated component, see {@link Metrics}. */
+    public static final String METRICS = "metatype.metrics";
+
+    /** The version of the generated outputs, to be incremented whenever the generator's outputs change. */
+    private static final String OUTPUT_VERSION = "2";
+
+    /** The available backends to create the metatype XML. */
+    public enum XmlBackend {
+        /** Builds a DOM and serializes it using a <code>Transformer</code>. */
+        DOM,
+        /** Writes the XML straight to the file (same output as <code>DOM</code>). */
+        STREAM;
+    }
+
+    /** The strategies of the generated component to read the configuration. */
+    public enum Activation {
+        /** Looks up each attribute in the configuration map. */
+        LOOKUP,
+        /** Iterates the configuration's entries once and dispatches each key through a <code>switch</code>. */
+        SWITCH;
+    }
+
+    /** The runtime metrics recorded by the generated component, exposed as MXBean. */
+    public enum Metrics {
+        /** No metrics. */
+        NONE,
+        /** Counts the activations and modifications and records the duration of the last one. */
+        ACTIVATIONS,
+        /** As <code>ACTIVATIONS</code>, additionally counts the reads of each attribute's getter. */
+        GETTERS;
+    }
+
+    private final int threads;
+    private final XmlBackend xmlBackend;
+    private final Path xmlDir;
+    private final Path srcDir;
+    private final Path cacheFile;
+    private final boolean snapshot;
+    private final boolean listeners;
+    private final Activation activation;
+    private final boolean stats;
+    private final boolean partial;
+    private final boolean provider;
+    private final boolean validation;
+    private final boolean enums;
+    private final boolean views;
+    private final boolean warmStart;
+    private final boolean canonical;
+    private final Metrics metrics;
+
+    private GeneratorOptions(final Map<String, String> options) {
+        this.threads = toInt(options.get(THREADS), Runtime.getRuntime().availableProcessors());
+        this.canonical = Boolean.parseBoolean(options.get(CANONICAL));
+        // the Transformer's indentation and line endings depend on the platform
+        this.xmlBackend = this.canonical ? XmlBackend.STREAM : toEnum(options.get(XML_BACKEND), XmlBackend.DOM);
+        this.xmlDir = toPath(options.get(XML_DIR));
+        this.srcDir = toPath(options.get(SRC_DIR));
+        this.cacheFile = toPath(options.get(CACHE_FILE));
+        this.snapshot = Boolean.parseBoolean(options.get(SNAPSHOT));
+        this.listeners = Boolean.parseBoolean(options.get(LISTENERS));
+        this.activation = toEnum(options.get(ACTIVATION), Activation.LOOKUP);
+        this.stats = Boolean.parseBoolean(options.get(STATS));
+        this.partial = Boolean.parseBoolean(options.get(PARTIAL));
+        this.provider = Boolean.parseBoolean(options.get(PROVIDER));
+        this.validation = Boolean.parseBoolean(options.get(VALIDATION));
+        this.enums = Boolean.parseBoolean(options.get(ENUMS));
+        this.views = Boolean.parseBoolean(options.get(VIEWS));
+        this.warmStart = Boolean.parseBoolean(options.get(WARM_START));
+        this.metrics = toEnum(options.get(METRICS), Metrics.NONE);
+    }
+
+    /** Factory method.
+     *
+     * @param options Map&lt;String, String> the processor options
+     * @return {@link GeneratorOptions} */
+    public static GeneratorOptions create(final Map<String, String> options) {
+        return new GeneratorOptions(options);
+    }
+
+    /** @return Set&lt;String> the names of the supported options */
+    public static Set<String> getSupportedOptions() {
+        return Set.of(THREADS, XML_BACKEND, XML_DIR, SRC_DIR, CACHE_FILE, SNAPSHOT, LISTENERS, ACTIVATION,
+                STATS, PARTIAL, PROVIDER, VALIDATION, ENUMS, VIEWS,
+                WARM_START, CANONICAL, METRICS);
+    }
+
+    /** @return int the maximal number of threads to use for the emission, always &gt;= 1 */
+    public int getThreads() {
+        return this.threads;
+    }
+
+    /** @return {@link XmlBackend} the backend to create the metatype XML, always <code>STREAM</code> if the outputs
+     *         are canonical */
+    public XmlBackend getXmlBackend() {
+        return this.xmlBackend;
+    }
+
+    /** @return {@link Path} the configured directory for the metatype XML files, may be <code>null</code> */
+    public Path getXmlDir() {
+        return this.xmlDir;
+    }
+
+    /** @return {@link Path} the configured directory for the generated classes, may be <code>null</code> */
+    public Path getSrcDir() {
+        return this.srcDir;
+    }
+
+    /** @return {@link Path} the configured file of the fingerprint cache, may be <code>null</code> */
+    public Path getCacheFile() {
+        return this.cacheFile;
+    }
+
+    /** @return boolean <code>true</code> if the generated component publishes its values as immutable snapshot */
+    public boolean isSnapshot() {
+        return this.snapshot;
+    }
+
+    /** @return boolean <code>true</code> if the generated component notifies listeners about the changed attributes */
+    public boolean isListeners() {
+        return this.listeners;
+    }
+
+    /** @return {@link Activation} the strategy of the generated component to read the configuration */
+    public Activation getActivation() {
+        return this.activation;
+    }
+
+    /** @return boolean <code>true</code> if the statistics of the generator are reported */
+    public boolean isStats() {
+        return this.stats;
+    }
+
+    /** @return boolean <code>true</code> if the compilation contains only a part of the configurations, i.e. the
+     *         outputs of the configurations not processed must be kept */
+    public boolean isPartial() {
+        return this.partial;
+    }
+
+    /** @return boolean <code>true</code> if a <code>MetaTypeProvider</code> is generated for each configuration */
+    public boolean isProvider() {
+        return this.provider;
+    }
+
+    /** @return boolean <code>true</code> if the generated component validates the configured values */
+    public boolean isValidation() {
+        return this.validation;
+    }
+
+    /** @return boolean <code>true</code> if the <code>String</code> attributes with options are held as enum
+     *         constants */
+    public boolean isEnums() {
+        return this.enums;
+    }
+
+    /** @return boolean <code>true</code> if the getters of array attributes return read-only views */
+    public boolean isViews() {
+        return this.views;
+    }
+
+    /** @return boolean <code>true</code> if the last-known-good values are served at startup */
+    public boolean isWarmStart() {
+        return this.warmStart;
+    }
+
+    /** @return boolean <code>true</code> if the outputs are canonical, i.e. byte-identical for identical inputs */
+    public boolean isCanonical() {
+        return this.canonical;
+    }
+
+    /** @return {@link Metrics} the runtime metrics recorded by the generated component */
+    public Metrics getMetrics() {
+        return this.metrics;
+    }
+
+    /** @return String the line separator of the outputs: <code>\n</code> if the outputs are canonical, else the
+     *         platform's */
+    public String getLineSeparator() {
+        return this.canonical ? "\n" : System.lineSeparator();
+    }
+
+    /** Returns a description of all settings the generated outputs depend on. Outputs generated with different
+     * settings must not be reused.
+     *
+     * @return String */
+    public String getSettings() {
+        return OUTPUT_VERSION + ";snapshot=" + this.snapshot + ";listeners=" + this.listeners
+                + ";activation=" + this.activation + ";provider=" + this.provider
+                + ";validation=" + this.validation + ";enums=" + this.enums
+                + ";views=" + this.views + ";warmstart=" + this.warmStart
+                + ";canonical=" + this.canonical + ";metrics=" + this.metrics;
+    }
+
+    private static Path toPath(final String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        return Paths.get(value.trim()).toAbsolutePath();
+    }
+
+    private static <E extends Enum<E>> E toEnum(final String value, final E dft) {
+        if (value == null || value.isBlank()) {
+            return dft;
+        }
+        try {
+            return Enum.valueOf(dft.getDeclaringClass(), value.trim().toUpperCase());
+        } catch (final IllegalArgumentException exc) {
+            return dft;
+        }
+    }
+
+    private static int toInt(final String value, final int dft) {
+        if (value == null || value.isBlank()) {
+            return dft;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(value.trim()));
+        } catch (final NumberFormatException exc) {
+            return dft;
+        }
+    }
+
+}
@@ -0,0 +1,175 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Statistics of the generator: the time spent in each phase and the number of processed configurations,
+ * attributes and written bytes.<br>
+ * The statistics are collected only if enabled using the option {@link GeneratorOptions#STATS}, else all methods are
+ * no-ops. The phases of the emission run concurrently, therefore, their times are summed over all threads, the wall
+ * time of the emission is recorded separately.
+ *
+ * @author lbenno */
+public final class GeneratorStats {
+    /** The phases of the generator. */
+    public enum Phase {
+        /** Extraction of the models from the <code>Elements</code> API. */
+        MODEL("model"),
+        /** Calculation of the fingerprints for the incremental generation. */
+        FINGERPRINT("fingerprint"),
+        /** Creation of the metatype XML's DOM. */
+        XML_BUILD("xmlBuild"),
+        /** Serialization of the metatype XML (DOM transformation or streaming). */
+        XML_WRITE("xmlWrite"),
+        /** Creation of the component's source (if not streamed through the <code>Filer</code>, see {@link #IO}). */
+        SOURCE("source"),
+        /** Writing the generated files, including the sources streamed through the <code>Filer</code>. */
+        IO("io"),
+        /** Wall time of the (concurrent) emission of all configurations. */
+        EMISSION("emission");
+
+        private final String key;
+
+        Phase(final String key) {
+            this.key = key;
+        }
+    }
+
+    private static final GeneratorStats DISABLED = new GeneratorStats(false);
+
+    private final boolean enabled;
+    private final long created = System.nanoTime();
+    private final LongAdder[] nanos = new LongAdder[Phase.values().length];
+    private final LongAdder ocds = new LongAdder();
+    private final LongAdder generated = new LongAdder();
+    private final LongAdder attributes = new LongAdder();
+    private final LongAdder options = new LongAdder();
+    private final LongAdder filesWritten = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+
+    private GeneratorStats(final boolean enabled) {
+        this.enabled = enabled;
+        for (int i = 0; i < this.nanos.length; i++) {
+            this.nanos[i] = new LongAdder();
+        }
+    }
+
+    /** Factory method.
+     *
+     * @param options {@link GeneratorOptions}
+     * @return {@link GeneratorStats} collecting the statistics if enabled in the options */
+    public static GeneratorStats create(final GeneratorOptions options) {
+        return options.isStats() ? new GeneratorStats(true) : DISABLED;
+    }
+
+    /** @return {@link GeneratorStats} statistics that don't collect anything */
+    public static GeneratorStats disabled() {
+        return DISABLED;
+    }
+
+    /** @return boolean <code>true</code> if the statistics are collected */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /** Starts the measurement of a phase.
+     *
+     * @return long the start time, to be passed to {@link #stop(Phase, long)} */
+    public long start() {
+        return this.enabled ? System.nanoTime() : 0;
+    }
+
+    /** Stops the measurement of a phase.
+     *
+     * @param phase {@link Phase}
+     * @param start long the value returned by {@link #start()} */
+    public void stop(final Phase phase, final long start) {
+        if (this.enabled) {
+            this.nanos[phase.ordinal()].add(System.nanoTime() - start);
+        }
+    }
+
+    /** Counts a processed configuration.
+     *
+     * @param manager {@link AnnotationManager} */
+    public void countConfiguration(final AnnotationManager manager) {
+        if (this.enabled) {
+            this.ocds.increment();
+            this.attributes.add(manager.getAttributeCount());
+            this.options.add(manager.getOptionCount());
+        }
+    }
+
+    /** Counts a configuration whose outputs have been generated (i.e. that was not skipped). */
+    public void countGenerated() {
+        if (this.enabled) {
+            this.generated.increment();
+        }
+    }
+
+    /** Counts a written file.
+     *
+     * @param written boolean <code>true</code> if the file has been written, <code>false</code> if it was up to date
+     * @param bytes long the size of the file's content */
+    public void countFile(final boolean written, final long bytes) {
+        if (this.enabled && written) {
+            this.filesWritten.increment();
+            this.bytesWritten.add(bytes);
+        }
+    }
+
+    /** @return String the statistics as human readable message */
+    public String toMessage() {
+        final StringBuilder out = new StringBuilder("Metatype generator: ")
+                .append(this.ocds.sum()).append(" configurations (").append(this.generated.sum())
+                .append(" generated), ").append(this.attributes.sum()).append(" attributes, ")
+                .append(this.options.sum()).append(" options, ").append(this.filesWritten.sum())
+                .append(" files written (").append(this.bytesWritten.sum()).append(" bytes);");
+        for (final Phase phase : Phase.values()) {
+            out.append(' ').append(phase.key).append('=').append(toMillis(this.nanos[phase.ordinal()].sum()))
+                    .append("ms");
+        }
+        return out.append(" total=").append(toMillis(System.nanoTime() - this.created)).append("ms").toString();
+    }
+
+    /** @return String the statistics as JSON object, the times in nanoseconds */
+    public String toJson() {
+        final StringBuilder out = new StringBuilder("{\n");
+        append(out, "configurations", this.ocds.sum());
+        append(out, "generated", this.generated.sum());
+        append(out, "attributes", this.attributes.sum());
+        append(out, "options", this.options.sum());
+        append(out, "filesWritten", this.filesWritten.sum());
+        append(out, "bytesWritten", this.bytesWritten.sum());
+        out.append("  \"nanos\": {\n");
+        for (final Phase phase : Phase.values()) {
+            out.append("    \"").append(phase.key).append("\": ").append(this.nanos[phase.ordinal()].sum())
+                    .append(",\n");
+        }
+        out.append("    \"total\": ").append(System.nanoTime() - this.created).append("\n");
+        return out.append("  }\n}\n").toString();
+    }
+
+    /** Writes the statistics as JSON to the specified file.
+     *
+     * @param file {@link Path}
+     * @throws IOException */
+    public void write(final Path file) throws IOException {
+        NioHandler.write(file, toJson().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void append(final StringBuilder out, final String key, final long value) {
+        out.append("  \"").append(key).append("\": ").append(value).append(",\n");
+    }
+
+    private static String toMillis(final long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1_000_000.0);
+    }
+
+}
@@ -3,17 +3,28 @@
  */
 package org.elbe.metatype.generator;
 
-import java.util.Arrays;
-import java.util.stream.Collectors;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
 
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 
-/** Helper class to convert the method name to a valid AD id.
+/** Helper class to convert the method name to a valid AD id.<br>
+ * The conversions are char-level transducers appending to a caller-supplied <code>StringBuilder</code>. The results
+ * of the <code>String</code> based methods are memoized in bounded caches shared by all rounds (and compilations) of
+ * the JVM.
  *
  * @author lbenno */
 public final class IdUtil {
     private static final char LOW = '_';
     private static final char DOLLAR = '$';
+    private static final int MEMO_SIZE = 4096;
+
+    private static final Memo ID_MEMO = new Memo(IdUtil::toId);
+    private static final Memo CLASS_ID_MEMO = new Memo(IdUtil::createId);
+    private static final Memo FIELD_MEMO = new Memo(IdUtil::toFieldName);
 
     private enum State {
         IN_LOW, IN_DOLLAR, NORMAL;
@@ -50,13 +61,38 @@ public final class IdUtil {
      * @param name String the method name
      * @return String the converted name to be used as <code>id</code> attribute */
     public static String toId(final String name) {
-        final Cursor cursor = new Cursor();
-        final char[] chars = name.toCharArray();
-        final StringBuilder target = new StringBuilder(chars.length);
-        for (int i = 0; i < chars.length; i++) {
-            target.append(cursor.process(chars[i]));
+        return ID_MEMO.get(name);
+    }
+
+    /** Converts a method name to the <code>AD</code> attribute's id, see {@link #toId(String)}.
+     *
+     * @param name CharSequence the method name
+     * @param target StringBuilder the converted name is appended to */
+    public static void toId(final CharSequence name, final StringBuilder target) {
+        final Cursor cursor = new Cursor(target);
+        final int length = name.length();
+        for (int i = 0; i < length; i++) {
+            cursor.process(name.charAt(i));
+        }
+    }
+
+    /** Converts the method names of a whole attribute list, see {@link #toId(String)}.
+     *
+     * @param names List&lt;String> the method names
+     * @return List&lt;String> the ids, in the same order */
+    public static List<String> toIds(final List<String> names) {
+        final List<String> out = new ArrayList<>(names.size());
+        final StringBuilder target = new StringBuilder();
+        for (final String name : names) {
+            String id = ID_MEMO.peek(name);
+            if (id == null) {
+                target.setLength(0);
+                toId(name, target);
+                id = ID_MEMO.put(name, target.toString());
+            }
+            out.add(id);
         }
-        return target.toString();
+        return out;
     }
 
     /** This method creates an id from a class name.<br>
@@ -75,13 +111,19 @@ public final class IdUtil {
      * @param className String
      * @return String */
     public static String createId(final String className) {
-        final SEACursor cursor = new SEACursor();
-        final char[] chars = className.toCharArray();
-        final StringBuilder target = new StringBuilder(chars.length);
-        for (int i = 0; i < chars.length; i++) {
-            target.append(cursor.process(chars[i]));
+        return CLASS_ID_MEMO.get(className);
+    }
+
+    /** Creates an id from a class name, see {@link #createId(String)}.
+     *
+     * @param className CharSequence
+     * @param target StringBuilder the id is appended to */
+    public static void createId(final CharSequence className, final StringBuilder target) {
+        final SEACursor cursor = new SEACursor(target);
+        final int length = className.length();
+        for (int i = 0; i < length; i++) {
+            cursor.process(className.charAt(i));
         }
-        return target.toString();
     }
 
     /** Converts an AD id to a suitable field name.<br>
@@ -90,97 +132,171 @@ public final class IdUtil {
      * @param id String the id to convert
      * @return String the converted string */
     public static String toFieldName(final String id) {
-        final String[] parts = id.split("_");
-        final String capitalized = Arrays.stream(parts).map(p -> capialize(p)).collect(Collectors.joining());
-        return capitalized.substring(0, 1).toLowerCase() + capitalized.substring(1);
+        return FIELD_MEMO.get(id);
     }
 
-    private static String capialize(final String str) {
-        return str.substring(0, 1).toUpperCase() + str.substring(1);
+    /** Converts an AD id to a suitable field name, see {@link #toFieldName(String)}.
+     *
+     * @param id CharSequence the id to convert
+     * @param target StringBuilder the field name is appended to */
+    public static void toFieldName(final CharSequence id, final StringBuilder target) {
+        final int start = target.length();
+        boolean capitalize = false;
+        final int length = id.length();
+        for (int i = 0; i < length; i++) {
+            final char c = id.charAt(i);
+            if (c == LOW) {
+                capitalize = true;
+            } else if (target.length() == start) {
+                target.append(Character.toLowerCase(c));
+                capitalize = false;
+            } else if (capitalize) {
+                target.append(Character.toUpperCase(c));
+                capitalize = false;
+            } else {
+                target.append(c);
+            }
+        }
+    }
+
+    /** Converts a field name to the name of a constant, e.g. <code>someValues</code> to <code>SOME_VALUES</code>.
+     *
+     * @param fieldName String
+     * @return String the converted name */
+    public static String toConstantName(final String fieldName) {
+        final StringBuilder out = new StringBuilder(fieldName.length() + 4);
+        for (int i = 0; i < fieldName.length(); i++) {
+            final char c = fieldName.charAt(i);
+            if (i > 0 && Character.isUpperCase(c) && !Character.isUpperCase(fieldName.charAt(i - 1))) {
+                out.append(LOW);
+            }
+            out.append(Character.toUpperCase(c));
+        }
+        return out.toString();
     }
 
     // ---
 
     private static class SEACursor {
+        private final StringBuilder target;
         private SEAState state = SEAState.IN_UP;
 
-        protected String process(final char c) {
+        protected SEACursor(final StringBuilder target) {
+            this.target = target;
+        }
+
+        protected void process(final char c) {
             if (this.state == SEAState.IN_UP) {
-                return processUp(c);
+                processUp(c);
+            } else {
+                processLow(c);
             }
-            return processLow(c);
         }
 
-        private String processLow(final char c) {
+        private void processLow(final char c) {
             if (Character.isUpperCase(c)) {
                 this.state = SEAState.IN_UP;
-                return "." + Character.toLowerCase(c);
+                this.target.append('.').append(Character.toLowerCase(c));
+            } else {
+                this.target.append(c);
             }
-            return String.valueOf(c);
         }
 
-        private String processUp(final char c) {
+        private void processUp(final char c) {
             if (Character.isUpperCase(c)) {
-                return String.valueOf(Character.toLowerCase(c));
+                this.target.append(Character.toLowerCase(c));
+            } else {
+                this.state = SEAState.IN_LOW;
+                this.target.append(c);
             }
-            this.state = SEAState.IN_LOW;
-            return String.valueOf(c);
         }
 
     }
 
     private static class Cursor {
+        private final StringBuilder target;
         private State state = State.NORMAL;
-        private String memory = "";
+        // the number of low lines following the pending dollar sign
+        private int lows = 0;
+
+        protected Cursor(final StringBuilder target) {
+            this.target = target;
+        }
 
-        protected String process(final char c) {
+        protected void process(final char c) {
             if (this.state == State.NORMAL) {
-                return processNormal(c);
+                processNormal(c);
             } else if (this.state == State.IN_DOLLAR) {
-                return processInDollar(c);
-            } else if (this.state == State.IN_LOW) {
-                return processInLow(c);
+                processInDollar(c);
+            } else {
+                processInLow(c);
             }
-            return String.valueOf(c);
         }
 
-        private String processInLow(final char c) {
+        private void processInLow(final char c) {
             this.state = State.NORMAL;
-            this.memory = "";
             if (c == LOW) {
-                return "_";
+                this.target.append(LOW);
+            } else {
+                this.target.append('.').append(c);
             }
-            return "." + c;
         }
 
-        private String processInDollar(final char c) {
-            this.state = State.NORMAL;
+        private void processInDollar(final char c) {
             if (c == DOLLAR) {
-                final String old_memory = this.memory;
-                this.memory = "";
-                return "$_".equals(old_memory) ? "-" : String.valueOf(c);
+                this.state = State.NORMAL;
+                this.target.append(this.lows == 1 ? '-' : DOLLAR);
             } else if (c == LOW) {
-                this.state = State.IN_DOLLAR;
-                this.memory += c;
-                return "";
+                this.lows++;
+            } else {
+                this.state = State.NORMAL;
+                this.target.append(c);
             }
-            this.memory = "";
-            return String.valueOf(c);
         }
 
-        private String processNormal(final char c) {
+        private void processNormal(final char c) {
             if (c == DOLLAR) {
                 this.state = State.IN_DOLLAR;
-                this.memory += c;
-                return "";
+                this.lows = 0;
             } else if (c == LOW) {
                 this.state = State.IN_LOW;
-                this.memory += c;
-                return "";
+            } else {
+                this.target.append(c);
             }
-            return String.valueOf(c);
         }
 
     }
 
+    /** Bounded memo of a conversion, cleared when it's full. */
+    private static class Memo {
+        private final Map<String, String> values = new ConcurrentHashMap<>();
+        private final BiConsumer<CharSequence, StringBuilder> conversion;
+
+        protected Memo(final BiConsumer<CharSequence, StringBuilder> conversion) {
+            this.conversion = conversion;
+        }
+
+        protected String get(final String key) {
+            final String value = this.values.get(key);
+            if (value != null) {
+                return value;
+            }
+            final StringBuilder target = new StringBuilder(key.length() + 8);
+            this.conversion.accept(key, target);
+            return put(key, target.toString());
+        }
+
+        protected String peek(final String key) {
+            return this.values.get(key);
+        }
+
+        protected String put(final String key, final String value) {
+            if (this.values.size() >= MEMO_SIZE) {
+                this.values.clear();
+            }
+            this.values.put(key, value);
+            return value;
+        }
+    }
+
 }
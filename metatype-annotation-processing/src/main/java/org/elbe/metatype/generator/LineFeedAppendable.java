@@ -0,0 +1,50 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import java.io.IOException;
+
+/** Appendable dropping all carriage returns, i.e. normalizing the line endings of the generated sources to
+ * <code>\n</code> (the templates end their lines with <code>\r\n</code>, the parts of the attributes are joined with
+ * <code>\n</code>). The generated sources escape the carriage returns of their literals, therefore, only line endings
+ * are affected.
+ *
+ * @author lbenno */
+final class LineFeedAppendable implements Appendable {
+    private final Appendable out;
+
+    /** @param out {@link Appendable} the target */
+    LineFeedAppendable(final Appendable out) {
+        this.out = out;
+    }
+
+    @Override
+    public Appendable append(final CharSequence csq) throws IOException {
+        final CharSequence value = csq == null ? "null" : csq;
+        return append(value, 0, value.length());
+    }
+
+    @Override
+    public Appendable append(final CharSequence csq, final int start, final int end) throws IOException {
+        final CharSequence value = csq == null ? "null" : csq;
+        int from = start;
+        for (int i = start; i < end; i++) {
+            if (value.charAt(i) == '\r') {
+                this.out.append(value, from, i);
+                from = i + 1;
+            }
+        }
+        this.out.append(value, from, end);
+        return this;
+    }
+
+    @Override
+    public Appendable append(final char c) throws IOException {
+        if (c != '\r') {
+            this.out.append(c);
+        }
+        return this;
+    }
+
+}
@@ -4,7 +4,11 @@
 package org.elbe.metatype.generator;
 
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -18,18 +22,13 @@ import javax.annotation.processing.SupportedSourceVersion;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.TypeElement;
-import javax.tools.FileObject;
-import javax.tools.StandardLocation;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.TransformerException;
-
-import org.osgi.service.metatype.annotations.AttributeDefinition;
-import org.osgi.service.metatype.annotations.ObjectClassDefinition;
-import org.w3c.dom.Document;
+import javax.tools.Diagnostic.Kind;
 
 import com.google.auto.service.AutoService;
 
-/** The processor for the <code>org.osgi.service.metatype.annotations</code> annotations.
+/** The processor for the <code>org.osgi.service.metatype.annotations</code> annotations.<br>
+ * All configurations annotated with <code>@ObjectClassDefinition</code> are processed in a round, each of them
+ * results in its own metatype XML and generated component.
  *
  * @see http://hannesdorfmann.com/annotation-processing/annotationprocessing101/
  * @author lbenno */
@@ -40,58 +39,141 @@ public class MetatypeAnnotationProcessor extends AbstractProcessor {
     private static final Logger LOG = Logger.getLogger(MetatypeAnnotationProcessor.class.getName());
 
     private ProcessingEnvironment processingEnv;
+    private GeneratorOptions options;
     private NioHandler root;
+    private FingerprintCache cache;
+    private GeneratorStats stats;
 
     @Override
     public synchronized void init(final ProcessingEnvironment processingEnv) {
         super.init(processingEnv);
         this.processingEnv = processingEnv;
-        this.root = new NioHandler();
+        this.options = GeneratorOptions.create(processingEnv.getOptions());
+        this.stats = GeneratorStats.create(this.options);
+        this.root = new NioHandler(this.options, processingEnv);
+        this.cache = FingerprintCache.load(this.root.getCacheFile(), this.options.getSettings(),
+                this.root.getOwner());
+        this.root.prepare();
+    }
+
+    @Override
+    public Set<String> getSupportedOptions() {
+        return GeneratorOptions.getSupportedOptions();
     }
 
     @Override
     public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
-        for (final TypeElement annotation : annotations) {
-            final Element configuration = getConfiguration(roundEnv.getElementsAnnotatedWith(annotation));
-            if (configuration != null) {
-                try {
-                    final String className = configuration.getSimpleName().toString();
-                    final AnnotationManager manager = new AnnotationManager(configuration, this.processingEnv);
+        if (roundEnv.processingOver()) {
+            if (!this.options.isPartial()) {
+                final Set<String> seen = this.cache.getSeen();
+                this.cache.removeStale().forEach(name -> this.root.deleteOutputs(name, seen));
+            }
+            this.cache.save();
+            reportStats();
+            return false;
+        }
+        final List<AnnotationManager> managers = getConfigurations(annotations, roundEnv);
+        if (managers.isEmpty()) {
+            return false;
+        }
 
-                    // create metatype.xml
-                    final XmlHandler xml = new XmlHandler();
-                    final ObjectClassDefinition ocd = configuration.getAnnotation(ObjectClassDefinition.class);
-                    final Document metatypeXML = xml.process(ocd,
-                            roundEnv.getElementsAnnotatedWith(AttributeDefinition.class), manager);
-                    if (metatypeXML != null) {
-                        xml.write(metatypeXML, this.root.getParent(), className);
-                    }
+        // skip the configurations with unchanged models, their previous outputs are kept
+        final Map<AnnotationManager, String> fingerprints = new HashMap<>();
+        final List<AnnotationManager> changed = new ArrayList<>();
+        long start = this.stats.start();
+        for (final AnnotationManager manager : managers) {
+            final String fingerprint = manager.getFingerprint();
+            if (!this.cache.isUnchanged(manager, fingerprint) || !this.root.exists(manager)) {
+                fingerprints.put(manager, fingerprint);
+                changed.add(manager);
+            }
+        }
+        this.stats.stop(GeneratorStats.Phase.FINGERPRINT, start);
 
-                    // create java class (@Component) using the metatype.xml
-                    final FileObject builderFile = this.processingEnv.getFiler()
-                            .createResource(StandardLocation.SOURCE_OUTPUT, "",
-                                    Constants.TARGET_TMP_NAME + Constants.JAVA_EXT);
-                    try (PrintWriter srcWriter = new PrintWriter(builderFile.openWriter())) {
-                        final SrcManager src = new SrcManager(manager);
-                        srcWriter.print(src
-                                .create(this.processingEnv.getElementUtils().getPackageOf(configuration).toString(),
-                                        ocd.id()));
-                    }
-                    this.root.copyCode((TypeElement) configuration);
-                    return true;
-                } catch (final ParserConfigurationException | TransformerException | IOException exc) {
-                    LOG.log(Level.SEVERE, "Unable to create the metadata XML!", exc);
+        final ParallelEmitter emitter = new ParallelEmitter(this.options, this.stats, this.root.isStreamingSource());
+        start = this.stats.start();
+        final List<ParallelEmitter.Emission> emissions = emitter.emit(changed);
+        this.stats.stop(GeneratorStats.Phase.EMISSION, start);
+        for (final ParallelEmitter.Emission emission : emissions) {
+            final AnnotationManager manager = emission.getManager();
+            if (emission.isFailed()) {
+                this.cache.remove(manager);
+                reportFailure(manager, "Unable to create the metadata XML!", emission.getFailure());
+                continue;
+            }
+            final long ioStart = this.stats.start();
+            try {
+                this.stats.countFile(this.root.writeXml(manager, emission.getXml()), emission.getXml().length);
+                if (emission.getSource() == null) {
+                    // the source is written attribute by attribute to the Filer (its time is part of the I/O)
+                    final SrcManager source = new SrcManager(manager, this.options);
+                    this.stats.countFile(true, this.root.streamSource(manager, source));
+                } else {
+                    this.stats.countFile(this.root.writeSource(manager, emission.getSource()),
+                            emission.getSource().getBytes(StandardCharsets.UTF_8).length);
                 }
+                if (emission.getProvider() != null) {
+                    this.stats.countFile(this.root.writeSource(manager, manager.getProviderName(),
+                            emission.getProvider()), emission.getProvider().getBytes(StandardCharsets.UTF_8).length);
+                }
+                this.cache.update(manager, fingerprints.get(manager));
+                this.stats.countGenerated();
+            } catch (final IOException exc) {
+                this.cache.remove(manager);
+                reportFailure(manager, "Unable to write the generated files!", exc);
             }
+            this.stats.stop(GeneratorStats.Phase.IO, ioStart);
         }
-        return false;
+        return true;
+    }
+
+    // fails the compilation on the configuration whose outputs are missing
+    private void reportFailure(final AnnotationManager manager, final String message, final Throwable exc) {
+        LOG.log(Level.SEVERE, message, exc);
+        this.processingEnv.getMessager().printMessage(Kind.ERROR, message + " " + exc, manager.getElement());
     }
 
-    private Element getConfiguration(final Set<? extends Element> configurations) {
-        if (configurations.size() == 1) {
-            return configurations.iterator().next();
+    private void reportStats() {
+        if (!this.stats.isEnabled()) {
+            return;
+        }
+        this.processingEnv.getMessager().printMessage(Kind.NOTE, this.stats.toMessage());
+        this.root.getStatsFile().ifPresent(file -> {
+            try {
+                this.stats.write(file);
+            } catch (final IOException exc) {
+                LOG.log(Level.WARNING, "Unable to write the statistics!", exc);
+            }
+        });
+    }
+
+    /** Snapshots the models of all configurations of this round (i.e. in the processor's thread). */
+    private List<AnnotationManager> getConfigurations(final Set<? extends TypeElement> annotations,
+            final RoundEnvironment roundEnv) {
+        final List<AnnotationManager> managers = new ArrayList<>();
+        final Map<String, Element> xmlNames = new HashMap<>();
+        for (final TypeElement annotation : annotations) {
+            for (final Element configuration : roundEnv.getElementsAnnotatedWith(annotation)) {
+                final String xmlName = configuration.getSimpleName().toString().toLowerCase();
+                final Element other = xmlNames.putIfAbsent(xmlName, configuration);
+                if (other != null) {
+                    this.processingEnv.getMessager().printMessage(Kind.ERROR,
+                            String.format("The metatype XML '%s.xml' is already created for '%s'!", xmlName, other),
+                            configuration);
+                    continue;
+                }
+                final long start = this.stats.start();
+                final AnnotationManager manager = new AnnotationManager(configuration, this.processingEnv,
+                        this.options.isCanonical());
+                this.stats.stop(GeneratorStats.Phase.MODEL, start);
+                this.stats.countConfiguration(manager);
+                // the errors have been reported, the outputs of invalid configurations are not generated (and cached)
+                if (manager.isValid()) {
+                    managers.add(manager);
+                }
+            }
         }
-        return null;
+        return managers;
     }
 
 }
@@ -0,0 +1,235 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+/** Creates the parts of the generated component recording its runtime metrics: the number of activations and of
+ * modifications (counted by <code>LongAdder</code>s), the duration of the last (re)configuration and, optionally, the
+ * number of reads of each attribute's getter.<br>
+ * The metrics are exposed through the generated <code>MetricsMXBean</code>, registered on the first activation with
+ * the platform's <code>MBeanServer</code> as <code>org.elbe.metatype:type=Configuration,pid=&lt;pid></code> and
+ * unregistered on deactivation. If another instance of the same configuration is registered, the registered one is
+ * kept. The metrics are best effort, a failing registration doesn't affect the configuration.
+ *
+ * @author lbenno */
+public class MetricsManager {
+    private static final String DOMAIN = "org.elbe.metatype";
+    private static final String DEACTIVATE_IMPORT = "import org.osgi.service.component.annotations.Deactivate;\r\n";
+    private static final String FIELD = "    private final Metrics metrics = new Metrics();\r\n";
+    private static final String START = "            final long metricsStart = System.nanoTime();\r\n";
+    private static final String RECORD = "            this.metrics.record(System.nanoTime() - metricsStart);\r\n";
+    private static final String DEACTIVATE = "\r\n"
+            + "\r\n"
+            + "    @Deactivate\r\n"
+            + "    protected void deactivate() {\r\n"
+            + "        this.metrics.unregister();\r\n"
+            + "    }";
+    private static final String READ = "%s    this.metrics.reads[%d].increment();\r\n";
+    private static final String INTERFACE_START = "\r\n"
+            + "    /** Runtime metrics of the component, registered as <code>" + DOMAIN
+            + ":type=Configuration,pid=&lt;pid></code>. */\r\n"
+            + "    public interface MetricsMXBean {\r\n"
+            + "        /** @return long the number of activations */\r\n"
+            + "        long getActivations();\r\n"
+            + "\r\n"
+            + "        /** @return long the number of modifications, i.e. of reconfigurations of the active "
+            + "component */\r\n"
+            + "        long getModifications();\r\n"
+            + "\r\n"
+            + "        /** @return long the duration of the last activation or modification in nanoseconds */\r\n"
+            + "        long getLastActivationNanos();\r\n";
+    private static final String INTERFACE_READS = "\r\n"
+            + "        /** @return Map&lt;String, Long> the number of reads of each attribute's getter, by "
+            + "attribute id */\r\n"
+            + "        Map<String, Long> getReads();\r\n";
+    private static final String CLASS_START = "    }\r\n"
+            + "\r\n"
+            + "    private static final class Metrics implements MetricsMXBean {\r\n";
+    private static final String FIELDS = "        private final LongAdder activations = new LongAdder();\r\n"
+            + "        private final LongAdder modifications = new LongAdder();\r\n"
+            + "%s"
+            + "        private volatile long lastActivationNanos;\r\n"
+            + "        private boolean active;\r\n"
+            + "        private ObjectName name;\r\n";
+    private static final String READS_FIELD = "        private final LongAdder[] reads = "
+            + "new LongAdder[ATTRIBUTES.length];\r\n";
+    private static final String CONSTRUCTOR = "\r\n"
+            + "        private Metrics() {\r\n"
+            + "            for (int i = 0; i < this.reads.length; i++) {\r\n"
+            + "                this.reads[i] = new LongAdder();\r\n"
+            + "            }\r\n"
+            + "        }\r\n";
+    private static final String METHODS = "\r\n"
+            + "        private void record(final long nanos) {\r\n"
+            + "            this.lastActivationNanos = nanos;\r\n"
+            + "            if (this.active) {\r\n"
+            + "                this.modifications.increment();\r\n"
+            + "                return;\r\n"
+            + "            }\r\n"
+            + "            this.active = true;\r\n"
+            + "            this.activations.increment();\r\n"
+            + "            try {\r\n"
+            + "                final MBeanServer server = ManagementFactory.getPlatformMBeanServer();\r\n"
+            + "                final ObjectName objectName = new ObjectName(\"" + DOMAIN
+            + ":type=Configuration,pid=\"\r\n"
+            + "                        + ObjectName.quote(CONFIG_PID));\r\n"
+            + "                // another instance's metrics are kept, e.g. of an instance not yet deactivated\r\n"
+            + "                if (!server.isRegistered(objectName)) {\r\n"
+            + "                    server.registerMBean(this, objectName);\r\n"
+            + "                    this.name = objectName;\r\n"
+            + "                }\r\n"
+            + "            } catch (final JMException | RuntimeException exc) {\r\n"
+            + "                // the metrics are best effort, the component is configured anyway\r\n"
+            + "            }\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        private void unregister() {\r\n"
+            + "            this.active = false;\r\n"
+            + "            if (this.name != null) {\r\n"
+            + "                try {\r\n"
+            + "                    ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.name);\r\n"
+            + "                } catch (final JMException | RuntimeException exc) {\r\n"
+            + "                    // already unregistered\r\n"
+            + "                }\r\n"
+            + "                this.name = null;\r\n"
+            + "            }\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        @Override\r\n"
+            + "        public long getActivations() {\r\n"
+            + "            return this.activations.sum();\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        @Override\r\n"
+            + "        public long getModifications() {\r\n"
+            + "            return this.modifications.sum();\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        @Override\r\n"
+            + "        public long getLastActivationNanos() {\r\n"
+            + "            return this.lastActivationNanos;\r\n"
+            + "        }\r\n";
+    private static final String READS_METHOD = "\r\n"
+            + "        @Override\r\n"
+            + "        public Map<String, Long> getReads() {\r\n"
+            + "            final Map<String, Long> out = new LinkedHashMap<>();\r\n"
+            + "            for (int i = 0; i < ATTRIBUTES.length; i++) {\r\n"
+            + "                out.put(ATTRIBUTES[i], this.reads[i].sum());\r\n"
+            + "            }\r\n"
+            + "            return out;\r\n"
+            + "        }\r\n";
+    private static final String CLASS_END = "    }\r\n";
+
+    private final List<AdModel> attributes;
+    private final boolean reads;
+
+    /** MetricsManager constructor.
+     *
+     * @param model {@link OcdModel} the configuration
+     * @param reads boolean <code>true</code> if the reads of the attributes' getters are counted */
+    public MetricsManager(final OcdModel model, final boolean reads) {
+        this.attributes = model.getAttributes();
+        this.reads = reads;
+    }
+
+    /** @return boolean <code>true</code> if the reads of the attributes' getters are counted */
+    public boolean isCountingReads() {
+        return this.reads;
+    }
+
+    /** @param imports Set&lt;String> the imports of the generated component to add the metrics' imports to */
+    public void addImports(final Set<String> imports) {
+        imports.add("java.lang.management.ManagementFactory");
+        imports.add("java.util.concurrent.atomic.LongAdder");
+        imports.add("javax.management.JMException");
+        imports.add("javax.management.MBeanServer");
+        imports.add("javax.management.ObjectName");
+        if (this.reads) {
+            imports.add("java.util.LinkedHashMap");
+        }
+    }
+
+    /** @return String the import of the <code>Deactivate</code> annotation, placed with the other component
+     *         annotations */
+    public String getComponentImport() {
+        return DEACTIVATE_IMPORT;
+    }
+
+    /** Appends the field holding the metrics, terminated by a line break.
+     *
+     * @param out {@link Appendable}
+     * @throws IOException */
+    public void appendFieldDef(final Appendable out) throws IOException {
+        out.append(FIELD);
+    }
+
+    /** Appends the statement starting the measurement of the activate method, terminated by a line break.
+     *
+     * @param out {@link Appendable}
+     * @throws IOException */
+    public void appendStart(final Appendable out) throws IOException {
+        out.append(START);
+    }
+
+    /** Appends the statement recording the activation or modification, terminated by a line break.
+     *
+     * @param out {@link Appendable}
+     * @throws IOException */
+    public void appendRecord(final Appendable out) throws IOException {
+        out.append(RECORD);
+    }
+
+    /** Appends the deactivate method unregistering the metrics.
+     *
+     * @param out {@link Appendable}
+     * @throws IOException */
+    public void appendDeactivate(final Appendable out) throws IOException {
+        out.append(DEACTIVATE);
+    }
+
+    /** Appends the statement counting a read of the attribute's getter, terminated by a line break.
+     *
+     * @param out {@link Appendable}
+     * @param indent String the getter's indent
+     * @param index int the index of the attribute
+     * @throws IOException */
+    public void appendRead(final Appendable out, final String indent, final int index) throws IOException {
+        out.append(String.format(READ, indent, index));
+    }
+
+    /** Appends the <code>MetricsMXBean</code> interface and its implementation.
+     *
+     * @param out {@link Appendable}
+     * @throws IOException */
+    public void appendMetricsClasses(final Appendable out) throws IOException {
+        out.append(INTERFACE_START);
+        if (this.reads) {
+            out.append(INTERFACE_READS);
+        }
+        out.append(CLASS_START);
+        if (this.reads) {
+            out.append("        private static final String[] ATTRIBUTES = {");
+            boolean first = true;
+            for (final AdModel attribute : this.attributes) {
+                out.append(first ? "\r\n" : ",\r\n").append("                ")
+                        .append(DefaultValues.quote(attribute.getId(), '"'));
+                first = false;
+            }
+            out.append(" };\r\n");
+        }
+        out.append(String.format(FIELDS, this.reads ? READS_FIELD : ""));
+        if (this.reads) {
+            out.append(CONSTRUCTOR);
+        }
+        out.append(METHODS);
+        if (this.reads) {
+            out.append(READS_METHOD);
+        }
+        out.append(CLASS_END);
+    }
+
+}
@@ -3,93 +3,323 @@
  */
 package org.elbe.metatype.generator;
 
-import java.io.File;
+import java.io.BufferedWriter;
+import java.io.FilterWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 import java.util.Optional;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Stream;
 
-import javax.lang.model.element.Element;
-import javax.lang.model.element.PackageElement;
-import javax.lang.model.element.TypeElement;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.util.Elements;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
 
-/** File and directory handling.
+/** File and directory handling.<br>
+ * Each generated artifact is written once: the metatype XML to the XML directory (configured or the
+ * <code>OSGI-INF/metatype</code> directory in the class output), the java class either to the configured source
+ * directory or through the <code>Filer</code>. Files in directories are replaced atomically and only if their content
+ * changed.
  *
  * @author lbenno */
 public class NioHandler {
     private static final Logger LOG = Logger.getLogger(NioHandler.class.getName());
 
-    private static final String FILE_SEP = System.getProperty("file.separator");
-    private static final String CONFIG_PROJ = "metatype-configuration";
     private static final String TARGET = "OSGI-INF/metatype";
-    private static final String GENERATED = "target/generated-sources/annotations";
-    private static final String SRC = "src/main/java";
+    private static final String CACHE = "metatype-fingerprints.properties";
+    private static final String STATS = "metatype-stats.json";
+    private static final String XML_EXT = ".xml";
 
-    private final Optional<Path> parent;
-    private final Path generated;
-    private final Path src;
+    private final Filer filer;
+    private final Elements elements;
+    private final Optional<Path> xmlDir;
+    private final Optional<Path> srcDir;
+    private final Optional<Path> cacheFile;
+    private final Optional<Path> statsFile;
+    private final boolean provider;
 
-    /** NioHandler constructor. */
-    public NioHandler() {
-        final Path root = Paths.get("").toAbsolutePath();
-        final Path proj = root.resolve(CONFIG_PROJ);
-        this.parent = prepare(proj);
-        this.generated = proj.resolve(GENERATED);
-        this.src = proj.resolve(SRC);
+    /** NioHandler constructor.
+     *
+     * @param options {@link GeneratorOptions} the configured output locations
+     * @param processingEnv {@link ProcessingEnvironment} */
+    public NioHandler(final GeneratorOptions options, final ProcessingEnvironment processingEnv) {
+        this.filer = processingEnv.getFiler();
+        this.elements = processingEnv.getElementUtils();
+        final Optional<Path> classOutput = getClassOutput(this.filer);
+        this.xmlDir = Optional.ofNullable(options.getXmlDir()).or(() -> classOutput.map(p -> p.resolve(TARGET)));
+        this.srcDir = Optional.ofNullable(options.getSrcDir());
+        this.cacheFile = Optional.ofNullable(options.getCacheFile())
+                .or(() -> classOutput.map(Path::getParent).map(p -> p.resolve(CACHE)));
+        this.statsFile = classOutput.map(Path::getParent).map(p -> p.resolve(STATS));
+        this.provider = options.isProvider();
     }
 
-    /** @return {@link File} the parent directory where the metatype XML should be created */
-    public File getParent() {
-        return this.parent.orElseGet(() -> Paths.get("").toAbsolutePath()).toFile();
+    private static Optional<Path> getClassOutput(final Filer filer) {
+        try {
+            final URI uri = filer.getResource(StandardLocation.CLASS_OUTPUT, "", CACHE).toUri();
+            if ("file".equals(uri.getScheme())) {
+                return Optional.of(Paths.get(uri).getParent());
+            }
+        } catch (final IOException | IllegalArgumentException | UnsupportedOperationException exc) {
+            LOG.log(Level.FINE, "The class output is not located in the file system.", exc);
+        }
+        return Optional.empty();
     }
 
-    private Optional<Path> prepare(final Path root) {
-        final Path targetPath = root.resolve(TARGET);
-        if (Files.exists(targetPath)) {
+    /** Prepares the directory where the metatype XML files are created. Existing files are never deleted here: the
+     * directory may be shared with other modules built concurrently, only the stale outputs known from the
+     * fingerprint cache are deleted (see {@link #deleteOutputs(String, Set)}). */
+    public void prepare() {
+        this.xmlDir.ifPresent(dir -> {
             try {
-                if (deleteContent(targetPath)) {
-                    Files.deleteIfExists(targetPath);
-                    return Optional.ofNullable(Files.createDirectories(targetPath));
-                }
+                Files.createDirectories(dir);
             } catch (final IOException exc) {
-                LOG.log(Level.SEVERE, "Unable to delete the target directory!", exc);
+                LOG.log(Level.SEVERE, "Unable to prepare the target directory!", exc);
             }
-        } else {
-            try {
-                return Optional.ofNullable(Files.createDirectories(targetPath));
-            } catch (final IOException exc) {
-                LOG.log(Level.SEVERE, "Unable to create the target directory!", exc);
+        });
+    }
+
+    /** @return String the description of the output directories, i.e. the owner of the fingerprint cache */
+    public String getOwner() {
+        return "xml=" + this.xmlDir.map(Path::toString).orElse("") + ";src="
+                + this.srcDir.map(Path::toString).orElse("");
+    }
+
+    /** @return Optional&lt;Path> the file of the fingerprint cache, empty if the cache can't be persisted */
+    public Optional<Path> getCacheFile() {
+        return this.cacheFile;
+    }
+
+    /** @return Optional&lt;Path> the file to write the generator's statistics to (beside the class output, i.e. in
+     *         <code>target</code>), empty if the class output is not located in the file system */
+    public Optional<Path> getStatsFile() {
+        return this.statsFile;
+    }
+
+    /** Checks whether the outputs (metatype XML, java class and the provider, if generated) of the specified
+     * configuration exist.
+     *
+     * @param manager {@link AnnotationManager}
+     * @return boolean */
+    public boolean exists(final AnnotationManager manager) {
+        if (this.xmlDir.isEmpty() || !Files.isRegularFile(getXmlFile(this.xmlDir.get(), manager.getClassName()))) {
+            return false;
+        }
+        return existsSource(manager, manager.getTargetName())
+                && (!this.provider || existsSource(manager, manager.getProviderName()));
+    }
+
+    private boolean existsSource(final AnnotationManager manager, final String simpleName) {
+        if (this.srcDir.isPresent()) {
+            return Files.isRegularFile(getSrcFile(this.srcDir.get(), manager.getPackageName(), simpleName));
+        }
+        // the class generated by a former build is part of this compilation
+        return this.elements.getTypeElement(getQualifiedName(manager, simpleName)) != null;
+    }
+
+    /** Deletes the outputs of the specified stale configuration: its metatype XML, its generated component and its
+     * provider. The metatype XML is named after the simple name, therefore, it is kept if a configuration seen in this
+     * compilation writes the same file (e.g. the configuration moved to another package).
+     *
+     * @param qualifiedName String the qualified name of the stale configuration
+     * @param seen Set&lt;String> the qualified names of the configurations seen in this compilation */
+    public void deleteOutputs(final String qualifiedName, final Set<String> seen) {
+        final int index = qualifiedName.lastIndexOf('.');
+        final String packageName = index < 0 ? "" : qualifiedName.substring(0, index);
+        final String className = qualifiedName.substring(index + 1);
+        final String xmlName = getXmlName(className);
+        if (seen.stream().noneMatch(name -> xmlName.equals(getXmlName(name.substring(name.lastIndexOf('.') + 1))))) {
+            this.xmlDir.ifPresent(dir -> delete(getXmlFile(dir, className)));
+        }
+        deleteSource(packageName, Constants.TARGET_CLASS_PREFIX + className);
+        deleteSource(packageName, className + Constants.PROVIDER_CLASS_SUFFIX);
+    }
+
+    private void deleteSource(final String packageName, final String simpleName) {
+        if (this.srcDir.isPresent()) {
+            delete(getSrcFile(this.srcDir.get(), packageName, simpleName));
+            return;
+        }
+        // the class generated through the Filer by a former build
+        try {
+            final URI uri = this.filer.getResource(StandardLocation.SOURCE_OUTPUT, packageName,
+                    simpleName + Constants.JAVA_EXT).toUri();
+            if ("file".equals(uri.getScheme())) {
+                delete(Paths.get(uri));
             }
+        } catch (final IOException | IllegalArgumentException | UnsupportedOperationException exc) {
+            LOG.log(Level.FINE, "The generated source is not located in the file system.", exc);
         }
-        return Optional.empty();
     }
 
-    private static boolean deleteContent(final Path targetPath) throws IOException {
-        try (Stream<Path> walk = Files.walk(targetPath)) {
-            walk.map(Path::toFile).forEach(File::delete);
+    private static void delete(final Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (final IOException exc) {
+            LOG.log(Level.WARNING, "Unable to delete the stale output " + file, exc);
+        }
+    }
+
+    /** Writes the metatype XML of the specified configuration.
+     *
+     * @param manager {@link AnnotationManager}
+     * @param xml byte[] the XML's content
+     * @return boolean <code>true</code> if the file has been written, <code>false</code> if it was up to date
+     * @throws IOException */
+    public boolean writeXml(final AnnotationManager manager, final byte[] xml) throws IOException {
+        if (this.xmlDir.isPresent()) {
+            return write(getXmlFile(this.xmlDir.get(), manager.getClassName()), xml);
+        }
+        final FileObject file = this.filer.createResource(StandardLocation.CLASS_OUTPUT, "",
+                TARGET + "/" + getXmlName(manager.getClassName()));
+        try (OutputStream out = file.openOutputStream()) {
+            out.write(xml);
         }
         return true;
     }
 
-    /** Copy the code of the generated class to the source code directory.
+    /** Writes the source of the class generated for the specified configuration.
      *
-     * @param javaGenerated String the name of the generated java file */
-    public void copyCode(final TypeElement annotated) {
-        final Element pkg = annotated.getEnclosingElement();
-        if (pkg instanceof PackageElement) {
-            final String qualified = ((PackageElement) pkg).getQualifiedName().toString().replace(".", FILE_SEP)
-                    + FILE_SEP + Constants.TARGET_CLASS_NAME + Constants.JAVA_EXT;
-            final Path source = this.generated.resolve(Constants.TARGET_TMP_NAME + Constants.JAVA_EXT);
+     * @param manager {@link AnnotationManager}
+     * @param source String the java class
+     * @return boolean <code>true</code> if the file has been written, <code>false</code> if it was up to date
+     * @throws IOException */
+    public boolean writeSource(final AnnotationManager manager, final String source) throws IOException {
+        return writeSource(manager, manager.getTargetName(), source);
+    }
+
+    /** Writes the source of a class generated for the specified configuration, e.g. its
+     * <code>MetaTypeProvider</code>.
+     *
+     * @param manager {@link AnnotationManager}
+     * @param simpleName String the simple name of the generated class, in the configuration's package
+     * @param source String the java class
+     * @return boolean <code>true</code> if the file has been written, <code>false</code> if it was up to date
+     * @throws IOException */
+    public boolean writeSource(final AnnotationManager manager, final String simpleName, final String source)
+            throws IOException {
+        if (this.srcDir.isPresent()) {
+            return write(getSrcFile(this.srcDir.get(), manager.getPackageName(), simpleName),
+                    source.getBytes(StandardCharsets.UTF_8));
+        }
+        final JavaFileObject file = this.filer.createSourceFile(getQualifiedName(manager, simpleName));
+        try (Writer out = file.openWriter()) {
+            out.write(source);
+        }
+        return true;
+    }
+
+    /** @return boolean <code>true</code> if the sources are written through the <code>Filer</code>, i.e. can be
+     *         streamed using {@link #streamSource(AnnotationManager, SrcManager)} */
+    public boolean isStreamingSource() {
+        return this.srcDir.isEmpty();
+    }
+
+    /** Streams the source of the class generated for the specified configuration to the <code>Filer</code>'s source
+     * file. The source is written through a buffer of fixed size, i.e. it is never held in memory as a whole.
+     *
+     * @param manager {@link AnnotationManager}
+     * @param source {@link SrcManager} the emitter of the java class
+     * @return long the number of characters written
+     * @throws IOException */
+    public long streamSource(final AnnotationManager manager, final SrcManager source) throws IOException {
+        final JavaFileObject file = this.filer.createSourceFile(getQualifiedName(manager, manager.getTargetName()));
+        try (CountingWriter out = new CountingWriter(new BufferedWriter(file.openWriter()))) {
+            source.write(out);
+            return out.count;
+        }
+    }
+
+    /** Writes the content to the specified file if the content changed. The file is replaced atomically, i.e.
+     * readers see either the old or the new content.
+     *
+     * @param target {@link Path}
+     * @param content byte[]
+     * @return boolean <code>true</code> if the file has been written, <code>false</code> if it was up to date
+     * @throws IOException */
+    public static boolean write(final Path target, final byte[] content) throws IOException {
+        if (Files.isRegularFile(target) && Files.size(target) == content.length
+                && Arrays.equals(Files.readAllBytes(target), content)) {
+            return false;
+        }
+        final Path parent = target.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        final Path tmp = Files.createTempFile(parent, target.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tmp, content);
             try {
-                Files.copy(source, this.src.resolve(qualified), StandardCopyOption.REPLACE_EXISTING);
-            } catch (final IOException exc) {
-                LOG.log(Level.SEVERE, "Unable to copy the generated java class!", exc);
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (final AtomicMoveNotSupportedException exc) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
             }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return true;
+    }
+
+    /** @param className String the name of the configuration class/interface
+     * @return String the name of the configuration's metatype XML file */
+    protected static String getXmlName(final String className) {
+        return className.toLowerCase() + XML_EXT;
+    }
+
+    private static Path getXmlFile(final Path dir, final String className) {
+        return dir.resolve(getXmlName(className));
+    }
+
+    private static Path getSrcFile(final Path dir, final String packageName, final String simpleName) {
+        Path pkg = dir;
+        for (final String part : packageName.split("\\.")) {
+            if (!part.isEmpty()) {
+                pkg = pkg.resolve(part);
+            }
+        }
+        return pkg.resolve(simpleName + Constants.JAVA_EXT);
+    }
+
+    private static String getQualifiedName(final AnnotationManager manager, final String simpleName) {
+        return manager.getPackageName().isEmpty() ? simpleName : manager.getPackageName() + "." + simpleName;
+    }
+
+    // ---
+
+    private static final class CountingWriter extends FilterWriter {
+        private long count;
+
+        protected CountingWriter(final Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void write(final int c) throws IOException {
+            super.write(c);
+            this.count++;
+        }
+
+        @Override
+        public void write(final char[] cbuf, final int off, final int len) throws IOException {
+            super.write(cbuf, off, len);
+            this.count += len;
+        }
+
+        @Override
+        public void write(final String str, final int off, final int len) throws IOException {
+            super.write(str, off, len);
+            this.count += len;
         }
     }
 
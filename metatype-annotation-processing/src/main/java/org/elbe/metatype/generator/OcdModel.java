@@ -0,0 +1,163 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.List;
+
+/** The compiled model of a configuration (i.e. a class/interface annotated with <code>@ObjectClassDefinition</code>)
+ * and its attribute definitions.<br>
+ * The model is immutable and shared by all emitters (metatype XML and Java component), each derived value is computed
+ * once when the model is created.
+ *
+ * @author lbenno */
+public final class OcdModel {
+    private final String packageName;
+    private final String className;
+    private final String qualifiedName;
+    private final String prefix;
+    private final String id;
+    private final String name;
+    private final String description;
+    private final List<AdModel> attributes;
+    private final int optionCount;
+    private final String fingerprint;
+
+    /** OcdModel constructor.
+     *
+     * @param packageName String the name of the annotated class's package
+     * @param className String the simple name of the annotated class
+     * @param qualifiedName String the fully qualified name of the annotated class
+     * @param prefix String the value of the <code>PREFIX_</code> field
+     * @param id String the id of the object class definition
+     * @param name String the name of the object class definition
+     * @param description String the description of the object class definition
+     * @param attributes List&lt;AdModel> the attribute definitions */
+    public OcdModel(final String packageName, final String className, final String qualifiedName,
+            final String prefix, final String id, final String name, final String description,
+            final List<AdModel> attributes) {
+        this.packageName = packageName;
+        this.className = className;
+        this.qualifiedName = qualifiedName;
+        this.prefix = prefix;
+        this.id = id;
+        this.name = name;
+        this.description = description;
+        this.attributes = Collections.unmodifiableList(List.copyOf(attributes));
+        int options = 0;
+        for (final AdModel attribute : attributes) {
+            options += attribute.getOptions().size();
+        }
+        this.optionCount = options;
+        this.fingerprint = createFingerprint();
+    }
+
+    /** @return String the name of the annotated class's package */
+    public String getPackageName() {
+        return this.packageName;
+    }
+
+    /** @return String the simple name of the annotated class */
+    public String getClassName() {
+        return this.className;
+    }
+
+    /** @return String the fully qualified name of the annotated class */
+    public String getQualifiedName() {
+        return this.qualifiedName;
+    }
+
+    /** @return String the simple name of the generated component */
+    public String getTargetName() {
+        return Constants.TARGET_CLASS_PREFIX + this.className;
+    }
+
+    /** @return String the simple name of the generated <code>MetaTypeProvider</code> */
+    public String getProviderName() {
+        return this.className + Constants.PROVIDER_CLASS_SUFFIX;
+    }
+
+    /** @return String the value of the <code>PREFIX_</code> field, empty if there is none */
+    public String getPrefix() {
+        return this.prefix;
+    }
+
+    /** @return String the id of the object class definition, i.e. the configuration's PID */
+    public String getId() {
+        return this.id;
+    }
+
+    /** @return String the name of the object class definition */
+    public String getName() {
+        return this.name;
+    }
+
+    /** @return String the description of the object class definition */
+    public String getDescription() {
+        return this.description;
+    }
+
+    /** @return List&lt;AdModel> the attribute definitions, in declaration order */
+    public List<AdModel> getAttributes() {
+        return this.attributes;
+    }
+
+    /** @return int the number of options of all attribute definitions */
+    public int getOptionCount() {
+        return this.optionCount;
+    }
+
+    /** @return String the hex encoded digest of all information the outputs are generated from */
+    public String getFingerprint() {
+        return this.fingerprint;
+    }
+
+    private String createFingerprint() {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, this.packageName, this.className, this.prefix);
+            update(digest, this.id, this.name, this.description);
+            for (final AdModel attribute : this.attributes) {
+                update(digest, attribute.getMethodName(), attribute.getId(), attribute.getTypeName(),
+                        attribute.getNormalizedType(), String.valueOf(attribute.isString()));
+                update(digest, attribute.getName(), attribute.getDescription(), attribute.getAdType(),
+                        String.valueOf(attribute.getCardinality()), attribute.getMin(), attribute.getMax(),
+                        String.valueOf(attribute.isRequired()));
+                update(digest, attribute.getDefaultValues().toArray(new String[0]));
+                if (attribute.getParsed() != null) {
+                    update(digest, attribute.getParsed().name());
+                }
+                for (final AdModel.OptionModel option : attribute.getOptions()) {
+                    update(digest, option.getLabel(), option.getValue());
+                }
+            }
+            return toHex(digest.digest());
+        } catch (final NoSuchAlgorithmException exc) {
+            // every Java platform has to support SHA-256
+            throw new IllegalStateException(exc);
+        }
+    }
+
+    private static void update(final MessageDigest digest, final String... values) {
+        digest.update((byte) values.length);
+        for (final String value : values) {
+            final byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+            digest.update(String.valueOf(bytes.length).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) ':');
+            digest.update(bytes);
+        }
+    }
+
+    private static String toHex(final byte[] bytes) {
+        final StringBuilder out = new StringBuilder(bytes.length * 2);
+        for (final byte b : bytes) {
+            out.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return out.toString();
+    }
+
+}
@@ -0,0 +1,193 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.TransformerException;
+
+import org.w3c.dom.Document;
+
+/** Emits the metatype XML and the component's source (and the <code>MetaTypeProvider</code>'s source, if enabled) of
+ * the configurations processed in a round.<br>
+ * The configurations are independent of each other, therefore, they are emitted concurrently on a bounded thread pool.
+ * The outputs are returned to the caller to be written in the processor's thread, because the <code>Filer</code> must
+ * only be used there. If the sources are streamed through the <code>Filer</code>, they are not created here but
+ * written by the caller directly to the source file.
+ *
+ * @author lbenno */
+public class ParallelEmitter {
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final int threads;
+    private final GeneratorOptions.XmlBackend xmlBackend;
+    private final GeneratorOptions options;
+    private final GeneratorStats stats;
+    private final boolean streamSource;
+
+    /** ParallelEmitter constructor.
+     *
+     * @param options {@link GeneratorOptions} the options, e.g. the maximal number of threads to use */
+    public ParallelEmitter(final GeneratorOptions options) {
+        this(options, GeneratorStats.disabled(), false);
+    }
+
+    /** ParallelEmitter constructor.
+     *
+     * @param options {@link GeneratorOptions} the options, e.g. the maximal number of threads to use
+     * @param stats {@link GeneratorStats} the statistics to record the time of the emission's phases
+     * @param streamSource boolean <code>true</code> if the sources are streamed by the caller, i.e. must not be
+     *            created */
+    public ParallelEmitter(final GeneratorOptions options, final GeneratorStats stats, final boolean streamSource) {
+        this.stats = stats;
+        this.streamSource = streamSource;
+        this.threads = options.getThreads();
+        this.xmlBackend = options.getXmlBackend();
+        this.options = options;
+    }
+
+    /** Emits the passed configurations.
+     *
+     * @param managers List&lt;AnnotationManager> the configurations to emit
+     * @return List&lt;Emission> the results, in the same order as the passed configurations */
+    public List<Emission> emit(final List<AnnotationManager> managers) {
+        final int poolSize = Math.min(this.threads, managers.size());
+        if (poolSize <= 1) {
+            final List<Emission> out = new ArrayList<>(managers.size());
+            for (final AnnotationManager manager : managers) {
+                out.add(emit(manager));
+            }
+            return out;
+        }
+
+        final ExecutorService pool = Executors.newFixedThreadPool(poolSize, r -> {
+            final Thread thread = new Thread(r, "metatype-emitter-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            final List<Callable<Emission>> tasks = new ArrayList<>(managers.size());
+            for (final AnnotationManager manager : managers) {
+                tasks.add(() -> emit(manager));
+            }
+            final List<Future<Emission>> futures = pool.invokeAll(tasks);
+            final List<Emission> out = new ArrayList<>(managers.size());
+            for (int i = 0; i < futures.size(); i++) {
+                out.add(get(futures.get(i), managers.get(i)));
+            }
+            return out;
+        } catch (final InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            final List<Emission> out = new ArrayList<>(managers.size());
+            for (final AnnotationManager manager : managers) {
+                out.add(new Emission(manager, null, null, null, exc));
+            }
+            return out;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Emission get(final Future<Emission> future, final AnnotationManager manager)
+            throws InterruptedException {
+        try {
+            return future.get();
+        } catch (final ExecutionException exc) {
+            return new Emission(manager, null, null, null, exc.getCause());
+        }
+    }
+
+    private Emission emit(final AnnotationManager manager) {
+        try {
+            // create metatype.xml
+            final ByteArrayOutputStream xml = new ByteArrayOutputStream();
+            if (this.xmlBackend == GeneratorOptions.XmlBackend.STREAM) {
+                final long start = this.stats.start();
+                new XmlStreamHandler().write(manager, xml, this.options.getLineSeparator());
+                this.stats.stop(GeneratorStats.Phase.XML_WRITE, start);
+            } else {
+                final XmlHandler handler = new XmlHandler();
+                long start = this.stats.start();
+                final Document metatypeXML = handler.process(manager);
+                this.stats.stop(GeneratorStats.Phase.XML_BUILD, start);
+                start = this.stats.start();
+                handler.write(metatypeXML, xml);
+                this.stats.stop(GeneratorStats.Phase.XML_WRITE, start);
+            }
+
+            // create java class (@Component) using the metatype.xml
+            final long start = this.stats.start();
+            final String source = this.streamSource ? null : new SrcManager(manager, this.options).create();
+            final String provider = this.options.isProvider() ? new ProviderManager(manager, this.options).create()
+                    : null;
+            this.stats.stop(GeneratorStats.Phase.SOURCE, start);
+            return new Emission(manager, xml.toByteArray(), source, provider, null);
+        } catch (final ParserConfigurationException | TransformerException | IOException | RuntimeException exc) {
+            return new Emission(manager, null, null, null, exc);
+        }
+    }
+
+    // ---
+
+    /** The result of the emission of one configuration. */
+    public static final class Emission {
+        private final AnnotationManager manager;
+        private final byte[] xml;
+        private final String source;
+        private final String provider;
+        private final Throwable failure;
+
+        protected Emission(final AnnotationManager manager, final byte[] xml, final String source,
+                final String provider, final Throwable failure) {
+            this.manager = manager;
+            this.xml = xml;
+            this.source = source;
+            this.provider = provider;
+            this.failure = failure;
+        }
+
+        /** @return {@link AnnotationManager} the emitted configuration */
+        public AnnotationManager getManager() {
+            return this.manager;
+        }
+
+        /** @return byte[] the metatype XML, <code>null</code> if the emission failed */
+        public byte[] getXml() {
+            return this.xml;
+        }
+
+        /** @return String the source of the generated component, <code>null</code> if the emission failed or the
+         *         source is streamed */
+        public String getSource() {
+            return this.source;
+        }
+
+        /** @return String the source of the generated <code>MetaTypeProvider</code>, <code>null</code> if the emission
+         *         failed or no provider is generated */
+        public String getProvider() {
+            return this.provider;
+        }
+
+        /** @return Throwable the cause if the emission failed, else <code>null</code> */
+        public Throwable getFailure() {
+            return this.failure;
+        }
+
+        /** @return boolean <code>true</code> if the emission failed */
+        public boolean isFailed() {
+            return this.failure != null;
+        }
+    }
+
+}
@@ -0,0 +1,278 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Locale;
+
+/** Creates the <code>MetaTypeProvider</code> of a configuration, i.e. the metatype information of the metatype XML
+ * as prebuilt Java objects.<br>
+ * The generated provider is a component registered with the configuration's PID as <code>metatype.pid</code>, the
+ * metatype service gets the configuration's object class definition from the provider without parsing any XML. The
+ * object class definition and its attribute definitions are created once (static), they are immutable and hold the
+ * same values as the metatype XML.
+ *
+ * @author lbenno */
+public class ProviderManager {
+    private static final String INDENT3 = String.format("%12s", " ");
+    private static final String HEADER_TMPL = "package %2$s;\r\n"
+            + "\r\n"
+            + "import java.io.InputStream;\r\n"
+            + "\r\n"
+            + "import org.osgi.service.component.annotations.Component;\r\n"
+            + "import org.osgi.service.metatype.AttributeDefinition;\r\n"
+            + "import org.osgi.service.metatype.MetaTypeProvider;\r\n"
+            + "import org.osgi.service.metatype.ObjectClassDefinition;\r\n"
+            + "\r\n"
+            + Constants.GENERATED_COMMENT + "\r\n"
+            + "@Component(service = MetaTypeProvider.class, property = MetaTypeProvider.METATYPE_PID + \"=\" + "
+            + "%1$s.CONFIG_PID)\r\n"
+            + "public final class %1$s implements MetaTypeProvider {\r\n"
+            + "    public static final String CONFIG_PID = %3$s;\r\n"
+            + "\r\n"
+            + "    /** The object class definition of the configuration. */\r\n"
+            + "    public static final ObjectClassDefinition OCD = new Ocd(CONFIG_PID, %4$s, %5$s, new Ad[] {";
+    private static final String PROVIDER_TMPL = " });\r\n"
+            + "\r\n"
+            + "    @Override\r\n"
+            + "    public ObjectClassDefinition getObjectClassDefinition(final String id, final String locale) {\r\n"
+            + "        return CONFIG_PID.equals(id) ? OCD : null;\r\n"
+            + "    }\r\n"
+            + "\r\n"
+            + "    @Override\r\n"
+            + "    public String[] getLocales() {\r\n"
+            + "        // the definitions are not localized\r\n"
+            + "        return null;\r\n"
+            + "    }\r\n";
+    private static final String OCD_CLASS = "\r\n"
+            + "    private static final class Ocd implements ObjectClassDefinition {\r\n"
+            + "        private final String id;\r\n"
+            + "        private final String name;\r\n"
+            + "        private final String description;\r\n"
+            + "        private final Ad[] all;\r\n"
+            + "        private final Ad[] required;\r\n"
+            + "        private final Ad[] optional;\r\n"
+            + "\r\n"
+            + "        Ocd(final String id, final String name, final String description, final Ad[] all) {\r\n"
+            + "            this.id = id;\r\n"
+            + "            this.name = name;\r\n"
+            + "            this.description = description;\r\n"
+            + "            this.all = all;\r\n"
+            + "            int count = 0;\r\n"
+            + "            for (final Ad ad : all) {\r\n"
+            + "                count += ad.required ? 1 : 0;\r\n"
+            + "            }\r\n"
+            + "            this.required = new Ad[count];\r\n"
+            + "            this.optional = new Ad[all.length - count];\r\n"
+            + "            int r = 0;\r\n"
+            + "            int o = 0;\r\n"
+            + "            for (final Ad ad : all) {\r\n"
+            + "                if (ad.required) {\r\n"
+            + "                    this.required[r++] = ad;\r\n"
+            + "                } else {\r\n"
+            + "                    this.optional[o++] = ad;\r\n"
+            + "                }\r\n"
+            + "            }\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        @Override\r\n"
+            + "        public String getName() {\r\n"
+            + "            return this.name;\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        @Override\r\n"
+            + "        public String getID() {\r\n"
+            + "            return this.id;\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        @Override\r\n"
+            + "        public String getDescription() {\r\n"
+            + "            return this.description;\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        @Override\r\n"
+            + "        public AttributeDefinition[] getAttributeDefinitions(final int filter) {\r\n"
+            + "            final Ad[] selected = filter == REQUIRED ? this.required\r\n"
+            + "                    : filter == OPTIONAL ? this.optional : this.all;\r\n"
+            + "            return selected.length == 0 ? null : selected.clone();\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        @Override\r\n"
+            + "        public InputStream getIcon(final int size) {\r\n"
+            + "            return null;\r\n"
+            + "        }\r\n"
+            + "    }\r\n";
+    private static final String AD_CLASS = "\r\n"
+            + "    private static final class Ad implements AttributeDefinition {\r\n"
+            + "        private final String id;\r\n"
+            + "        private final String name;\r\n"
+            + "        private final String description;\r\n"
+            + "        private final int type;\r\n"
+            + "        private final int cardinality;\r\n"
+            + "        private final boolean required;\r\n"
+            + "        private final String[] defaultValue;\r\n"
+            + "        private final String[] optionLabels;\r\n"
+            + "        private final String[] optionValues;\r\n"
+            + "\r\n"
+            + "        Ad(final String id, final String name, final String description, final int type,\r\n"
+            + "                final int cardinality, final boolean required, final String[] defaultValue,\r\n"
+            + "                final String[] optionLabels, final String[] optionValues) {\r\n"
+            + "            this.id = id;\r\n"
+            + "            this.name = name;\r\n"
+            + "            this.description = description;\r\n"
+            + "            this.type = type;\r\n"
+            + "            this.cardinality = cardinality;\r\n"
+            + "            this.required = required;\r\n"
+            + "            this.defaultValue = defaultValue;\r\n"
+            + "            this.optionLabels = optionLabels;\r\n"
+            + "            this.optionValues = optionValues;\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        @Override\r\n"
+            + "        public String getName() {\r\n"
+            + "            return this.name;\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        @Override\r\n"
+            + "        public String getID() {\r\n"
+            + "            return this.id;\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        @Override\r\n"
+            + "        public String getDescription() {\r\n"
+            + "            return this.description;\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        @Override\r\n"
+            + "        public int getCardinality() {\r\n"
+            + "            return this.cardinality;\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        @Override\r\n"
+            + "        public int getType() {\r\n"
+            + "            return this.type;\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        @Override\r\n"
+            + "        public String[] getOptionValues() {\r\n"
+            + "            return this.optionValues == null ? null : this.optionValues.clone();\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        @Override\r\n"
+            + "        public String[] getOptionLabels() {\r\n"
+            + "            return this.optionLabels == null ? null : this.optionLabels.clone();\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        @Override\r\n"
+            + "        public String validate(final String value) {\r\n"
+            + "            // no validation\r\n"
+            + "            return null;\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        @Override\r\n"
+            + "        public String[] getDefaultValue() {\r\n"
+            + "            return this.defaultValue == null ? null : this.defaultValue.clone();\r\n"
+            + "        }\r\n"
+            + "    }\r\n"
+            + "\r\n"
+            + "}";
+
+    private final OcdModel model;
+    private final boolean canonical;
+
+    /** @param manager {@link AnnotationManager} the configuration */
+    public ProviderManager(final AnnotationManager manager) {
+        this.model = manager.getModel();
+        this.canonical = false;
+    }
+
+    /** @param manager {@link AnnotationManager} the configuration
+     * @param options {@link GeneratorOptions} the options, e.g. whether the output is canonical */
+    public ProviderManager(final AnnotationManager manager, final GeneratorOptions options) {
+        this.model = manager.getModel();
+        this.canonical = options.isCanonical();
+    }
+
+    /** Creates the content of the generated <code>MetaTypeProvider</code>.
+     *
+     * @return String
+     * @see #write(Appendable) */
+    public String create() {
+        final StringBuilder out = new StringBuilder(4096);
+        try {
+            write(out);
+        } catch (final IOException exc) {
+            // a StringBuilder doesn't throw
+            throw new UncheckedIOException(exc);
+        }
+        return out.toString();
+    }
+
+    /** Writes the content of the generated <code>MetaTypeProvider</code> to the passed output. The values are those
+     * of the metatype XML, e.g. blank descriptions are <code>null</code> and the cardinality is positive.
+     *
+     * @param out {@link Appendable} the output
+     * @throws IOException */
+    public void write(final Appendable out) throws IOException {
+        writeContent(this.canonical ? new LineFeedAppendable(out) : out);
+    }
+
+    private void writeContent(final Appendable out) throws IOException {
+        out.append(String.format(HEADER_TMPL, this.model.getProviderName(), this.model.getPackageName(),
+                quote(this.model.getId()), quote(this.model.getName()), quoteChecked(this.model.getDescription())));
+        boolean first = true;
+        for (final AdModel attribute : this.model.getAttributes()) {
+            out.append(first ? "\r\n" : ",\r\n");
+            first = false;
+            appendAttributeDefinition(out, attribute);
+        }
+        out.append(PROVIDER_TMPL);
+        out.append(OCD_CLASS);
+        out.append(AD_CLASS);
+    }
+
+    private static void appendAttributeDefinition(final Appendable out, final AdModel attribute)
+            throws IOException {
+        final List<AdModel.OptionModel> options = attribute.getOptions();
+        final StringBuilder labels = new StringBuilder();
+        final StringBuilder values = new StringBuilder();
+        for (final AdModel.OptionModel option : options) {
+            labels.append(labels.length() == 0 ? "" : ", ").append(quote(option.getLabel()));
+            values.append(values.length() == 0 ? "" : ", ").append(quote(option.getValue()));
+        }
+        out.append(INDENT3).append("new Ad(").append(quote(attribute.getId())).append(", ")
+                .append(quoteChecked(attribute.getName())).append(", ")
+                .append(quoteChecked(attribute.getDescription())).append(", ")
+                .append("AttributeDefinition.").append(attribute.getType().toUpperCase(Locale.ROOT)).append(", ")
+                // as in the metatype XML
+                .append(String.valueOf(Math.abs(attribute.getCardinality()))).append(", ")
+                .append(String.valueOf(attribute.isRequired())).append(",\r\n")
+                .append(INDENT3).append("        ").append(toArray(attribute.getDefaultValues())).append(", ")
+                .append(options.isEmpty() ? "null" : "new String[] { " + labels + " }").append(", ")
+                .append(options.isEmpty() ? "null" : "new String[] { " + values + " }").append(")");
+    }
+
+    private static String toArray(final List<String> values) {
+        if (values.isEmpty()) {
+            return "null";
+        }
+        final StringBuilder out = new StringBuilder("new String[] { ");
+        for (int i = 0; i < values.size(); i++) {
+            out.append(i == 0 ? "" : ", ").append(quote(values.get(i)));
+        }
+        return out.append(" }").toString();
+    }
+
+    private static String quote(final String value) {
+        return DefaultValues.quote(value, '"');
+    }
+
+    // blank values are omitted in the metatype XML, i.e. null
+    private static String quoteChecked(final String value) {
+        return value == null || value.isBlank() ? "null" : quote(value);
+    }
+
+}
@@ -3,53 +3,663 @@
  */
 package org.elbe.metatype.generator;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
 /**
  * @author lbenno
  *
  */
 public class SrcManager {
-    private static final String TMPL = "package %2$s;\r\n"
+    private static final String INDENT1 = String.format("%4s", " ");
+    private static final String INDENT2 = String.format("%8s", " ");
+    private static final String INDENT3 = String.format("%12s", " ");
+    private static final String GETTER_TMPL = "\r\n%1$spublic %2$s get%3$s() {\r\n"
+            + "%1$s    return %4$s;\r\n"
+            + "%1$s}";
+    private static final String COUNTED_GETTER_START = "\r\n%1$spublic %2$s get%3$s() {\r\n";
+    private static final String COUNTED_GETTER_END = "%1$s    return %2$s;\r\n"
+            + "%1$s}";
+    private static final String HEADER_TMPL = "package %2$s;\r\n"
             + "\r\n"
-            + "import java.util.Map;\r\n"
+            + "%4$s"
             + "\r\n"
+            + "%6$s"
             + "import org.osgi.service.component.annotations.Activate;\r\n"
             + "import org.osgi.service.component.annotations.Component;\r\n"
+            + "%5$s"
             + "import org.osgi.service.component.annotations.Modified;\r\n"
             + "\r\n"
-            + "/** Generated */\r\n"
+            + Constants.GENERATED_COMMENT + "\r\n"
             + "@Component(immediate = true, configurationPid = %1$s.CONFIG_PID, service = { %1$s.class })\r\n"
             + "public class %1$s {\r\n"
-            + "    public static final String CONFIG_PID = \"%3$s\";\r\n"
-            + "\r\n"
-            + "%5$s\r\n"
-            + "\r\n"
+            + "    public static final String CONFIG_PID = \"%3$s\";\r\n";
+    private static final String ACTIVATE_START = "\r\n"
             + "    @Activate\r\n"
             + "    @Modified\r\n"
             + "    protected void activate(final Map<String, Object> configuration) {\r\n"
-            + "        if (configuration != null) {\r\n"
-            + "%4$s\r\n"
+            + "        if (configuration != null) {\r\n";
+    private static final String ACTIVATE_END = "        }\r\n"
+            + "    }";
+    private static final String SNAPSHOT_FIELD = "    private volatile Snapshot snapshot = new Snapshot();\r\n";
+    private static final String SNAPSHOT_PUBLISH = "            this.snapshot = new Snapshot(configuration);\r\n";
+    private static final String SNAPSHOT_PUBLISH_CHANGES = "            final Snapshot old = this.snapshot;\r\n"
+            + "            final Snapshot current = new Snapshot(configuration);\r\n"
+            + "            this.snapshot = current;\r\n";
+    private static final String SNAPSHOT_GETTER = "\r\n"
+            + "\r\n"
+            + "    /** @return Snapshot the current values of the configuration, consistent with each other */\r\n"
+            + "    public Snapshot getSnapshot() {\r\n"
+            + "        return this.snapshot;\r\n"
+            + "    }\r\n";
+    private static final String SNAPSHOT_CLASS_START = "\r\n"
+            + "    /** Immutable values of the configuration. */\r\n"
+            + "    public static final class Snapshot {\r\n";
+    private static final String SNAPSHOT_DEFAULT_START = "\r\n"
+            + "\r\n"
+            + "        private Snapshot() {\r\n";
+    private static final String SNAPSHOT_ACTIVATE_START = "\r\n"
             + "        }\r\n"
-            + "    }"
             + "\r\n"
-            + "%6$s\r\n"
+            + "        private Snapshot(final Map<String, Object> configuration) {\r\n";
+    private static final String SNAPSHOT_ACTIVATE_END = "\r\n"
+            + "        }\r\n";
+    private static final String LISTENERS_FIELD = "    private final List<Listener> listeners = "
+            + "new CopyOnWriteArrayList<>();\r\n";
+    private static final String LISTENER_METHODS = "\r\n"
             + "\r\n"
-            + "}";
+            + "    /** Registers a listener that is notified about the attributes changed by a (re)configuration.\r\n"
+            + "     *\r\n"
+            + "     * @param listener {@link Listener} */\r\n"
+            + "    public void addListener(final Listener listener) {\r\n"
+            + "        this.listeners.add(listener);\r\n"
+            + "    }\r\n"
+            + "\r\n"
+            + "    /** @param listener {@link Listener} the listener to unregister */\r\n"
+            + "    public void removeListener(final Listener listener) {\r\n"
+            + "        this.listeners.remove(listener);\r\n"
+            + "    }\r\n"
+            + "\r\n"
+            + "    // a failing listener affects neither the other listeners nor the configuration, its exception\r\n"
+            + "    // is reported to the thread's handler\r\n"
+            + "    private static void listenerFailed(final RuntimeException exc) {\r\n"
+            + "        final Thread thread = Thread.currentThread();\r\n"
+            + "        thread.getUncaughtExceptionHandler().uncaughtException(thread, exc);\r\n"
+            + "    }";
+    private static final String LISTENER_START = "\r\n"
+            + "    /** Listener notified about the attributes changed by a (re)configuration, "
+            + "one callback per attribute. */\r\n"
+            + "    public interface Listener {\r\n";
+    private static final String MEMBER_END = "\r\n"
+            + "    }\r\n";
 
-    private final AnnotationManager manager;
+    private final OcdModel model;
+    private final boolean snapshot;
+    private final boolean listeners;
+    private final boolean switchActivation;
+    private final ValidationManager validation;
+    private final EnumManager enums;
+    private final DerivedManager derived;
+    private final ViewManager views;
+    private final WarmStartManager warmStart;
+    private final boolean canonical;
+    private final MetricsManager metrics;
 
     /** @param manager */
     public SrcManager(final AnnotationManager manager) {
-        this.manager = manager;
+        this(manager, false, false, false, false, false, false, false, false, GeneratorOptions.Metrics.NONE);
+    }
+
+    /** @param manager
+     * @param options {@link GeneratorOptions} the options, e.g. whether to generate an immutable snapshot */
+    public SrcManager(final AnnotationManager manager, final GeneratorOptions options) {
+        this(manager, options.isSnapshot(), options.isListeners(),
+                options.getActivation() == GeneratorOptions.Activation.SWITCH, options.isValidation(),
+                options.isEnums(), options.isViews(), options.isWarmStart(),
+                options.isCanonical(), options.getMetrics());
+    }
+
+    private SrcManager(final AnnotationManager manager, final boolean snapshot, final boolean listeners,
+            final boolean switchActivation, final boolean validation, final boolean enums, final boolean views,
+            final boolean warmStart, final boolean canonical, final GeneratorOptions.Metrics metrics) {
+        this.model = manager.getModel();
+        this.snapshot = snapshot;
+        this.listeners = listeners;
+        this.switchActivation = switchActivation;
+        this.validation = validation ? new ValidationManager(this.model, snapshot, enums) : null;
+        this.enums = enums ? new EnumManager(this.model) : null;
+        this.derived = new DerivedManager(this.model, enums);
+        this.views = views ? new ViewManager(this.model) : null;
+        this.warmStart = warmStart ? new WarmStartManager(this.model, snapshot, validation, enums) : null;
+        this.canonical = canonical;
+        this.metrics = metrics == GeneratorOptions.Metrics.NONE ? null
+                : new MetricsManager(this.model, metrics == GeneratorOptions.Metrics.GETTERS);
     }
 
     /** Creates the content of the generated configuration component.
      *
-     * @param pkgName String
-     * @param pid String
-     * @return String */
-    public String create(final String pkgName, final String pid) {
-        return String.format(TMPL, Constants.TARGET_CLASS_NAME, pkgName, pid, this.manager.getActivatePart(),
-                this.manager.getFieldDefs(), this.manager.createGetters());
+     * @return String
+     * @see #write(Appendable) */
+    public String create() {
+        final StringBuilder out = new StringBuilder(1024);
+        try {
+            write(out);
+        } catch (final IOException exc) {
+            // a StringBuilder doesn't throw
+            throw new UncheckedIOException(exc);
+        }
+        return out.toString();
+    }
+
+    /** Writes the content of the generated configuration component to the passed output.<br>
+     * The component is written incrementally, attribute by attribute, i.e. without creating the parts of the whole
+     * component in memory first. Passed a buffered <code>Writer</code>, the memory needed is independent of the number
+     * of attributes.<br>
+     * In snapshot mode, the component's values are held by an immutable <code>Snapshot</code> that is replaced as a
+     * whole on every (re)configuration. The snapshot is published through a single volatile field, therefore, readers
+     * never see a half-updated configuration.<br>
+     * With listeners, every (re)configuration is compared attribute by attribute with the previous values and the
+     * registered listeners are notified about the changed attributes only. A failing listener doesn't stop the
+     * notification of the others.<br>
+     * With the <code>switch</code> activation, the configuration's entries are iterated once and dispatched by key
+     * instead of looking up every attribute.<br>
+     * With validation, the new values are validated against the constraints of the attribute definitions on every
+     * (re)configuration, the violations are available through <code>getViolations()</code>. In snapshot mode, the
+     * violations are part of the snapshot.<br>
+     * With enums, the <code>String</code> attributes with options are held as constants of generated enums.<br>
+     * The attributes annotated with <code>@Parsed</code> are additionally held as parsed values, e.g. as
+     * <code>Pattern</code>, parsed once per (re)configuration.<br>
+     * With views, the getters of the array attributes return read-only views wrapping the arrays.<br>
+     * With warm start, the accepted values are stored in a binary file and served at startup until ConfigAdmin
+     * delivers the configuration.<br>
+     * With metrics, the component counts its activations and modifications (and optionally the getters' reads) and
+     * exposes them as MXBean.<br>
+     * Canonical outputs end all lines with <code>\n</code>.
+     *
+     * @param out {@link Appendable} the output, e.g. the <code>Writer</code> of the source file
+     * @throws IOException */
+    public void write(final Appendable out) throws IOException {
+        writeContent(this.canonical ? new LineFeedAppendable(out) : out);
+    }
+
+    private void writeContent(final Appendable out) throws IOException {
+        out.append(String.format(HEADER_TMPL, this.model.getTargetName(), this.model.getPackageName(),
+                this.model.getId(), getImports(), this.metrics == null ? "" : this.metrics.getComponentImport(),
+                this.warmStart == null ? "" : this.warmStart.getFrameworkImport()));
+        appendConstantDefs(out);
+        if (this.validation != null) {
+            this.validation.appendConstantDefs(out);
+        }
+        this.derived.appendConstantDefs(out);
+        if (this.warmStart != null) {
+            this.warmStart.appendConstantDefs(out);
+        }
+        out.append("\r\n");
+        if (this.listeners) {
+            out.append(LISTENERS_FIELD);
+        }
+        if (this.validation != null) {
+            this.validation.appendFieldDef(out);
+        }
+        if (this.warmStart != null) {
+            this.warmStart.appendFieldDef(out);
+        }
+        if (this.metrics != null) {
+            this.metrics.appendFieldDef(out);
+        }
+        if (this.snapshot) {
+            out.append(SNAPSHOT_FIELD);
+        } else {
+            appendFieldDefs(out);
+            this.derived.appendFieldDefs(out, INDENT1, "private", true);
+            if (this.views != null) {
+                this.views.appendFieldDefs(out, INDENT1, "private", true);
+            }
+            out.append("\r\n");
+        }
+
+        if (this.warmStart == null) {
+            out.append(ACTIVATE_START);
+        } else {
+            this.warmStart.appendActivateStart(out);
+        }
+        if (this.metrics != null) {
+            this.metrics.appendStart(out);
+        }
+        if (this.snapshot) {
+            out.append(this.listeners ? SNAPSHOT_PUBLISH_CHANGES : SNAPSHOT_PUBLISH);
+            appendValidation(out);
+            if (this.listeners) {
+                appendNotifyPart(out, "old.%1$s", "current.%1$s");
+            }
+        } else {
+            if (this.listeners) {
+                appendCapturePart(out);
+            }
+            appendActivatePart(out);
+            appendDerivedPart(out);
+            out.append("\r\n");
+            appendValidation(out);
+            if (this.listeners) {
+                appendNotifyPart(out, "old%2$s", "this.%1$s");
+            }
+        }
+        if (this.warmStart != null) {
+            this.warmStart.appendStore(out);
+        }
+        if (this.metrics != null) {
+            this.metrics.appendRecord(out);
+        }
+        out.append(ACTIVATE_END);
+        if (this.metrics != null) {
+            this.metrics.appendDeactivate(out);
+        }
+        if (this.listeners) {
+            out.append(LISTENER_METHODS);
+        }
+        if (this.validation != null) {
+            this.validation.appendMethods(out);
+        }
+        this.derived.appendParseMethods(out);
+        if (this.views != null) {
+            this.views.appendMethods(out);
+        }
+        if (this.warmStart != null) {
+            this.warmStart.appendMethods(out);
+        }
+
+        if (this.snapshot) {
+            out.append(SNAPSHOT_GETTER);
+            appendGetters(out, INDENT1, "this.snapshot.get%2$s()", true, false);
+            this.derived.appendGetters(out, INDENT1, "this.snapshot.get%2$s()");
+            out.append("\r\n").append(SNAPSHOT_CLASS_START);
+            appendSnapshotFieldDefs(out);
+            this.derived.appendFieldDefs(out, INDENT2, "private final", false);
+            if (this.views != null) {
+                this.views.appendFieldDefs(out, INDENT2, "private final", false);
+            }
+            if (this.validation != null) {
+                this.validation.appendSnapshotFieldDef(out);
+            }
+            out.append(SNAPSHOT_DEFAULT_START);
+            appendSnapshotInitPart(out);
+            this.derived.appendInitPart(out);
+            if (this.views != null) {
+                this.views.appendWrapPart(out);
+            }
+            if (this.validation != null) {
+                this.validation.appendSnapshotInitPart(out);
+            }
+            out.append(SNAPSHOT_ACTIVATE_START);
+            appendActivatePart(out);
+            appendDerivedPart(out);
+            if (this.validation != null) {
+                // the snapshot is validated before it is published, i.e. holds the violations of its values
+                this.validation.appendSnapshotValidation(out);
+            }
+            out.append(SNAPSHOT_ACTIVATE_END);
+            // the snapshot is immutable, its getters return copies of the arrays (unless views are returned)
+            appendGetters(out, INDENT2, "this.%s", false, true);
+            this.derived.appendGetters(out, INDENT2, "this.%s");
+            if (this.validation != null) {
+                this.validation.appendSnapshotMethods(out);
+            }
+            out.append(MEMBER_END);
+        } else {
+            out.append("\r\n");
+            appendGetters(out, INDENT1, "%s", true, false);
+            this.derived.appendGetters(out, INDENT1, "%s");
+            out.append("\r\n");
+        }
+        if (this.listeners) {
+            out.append(LISTENER_START);
+            appendListenerCallbacks(out);
+            out.append(MEMBER_END);
+        }
+        if (this.enums != null) {
+            this.enums.appendEnums(out);
+        }
+        if (this.views != null) {
+            this.views.appendViewClasses(out);
+        }
+        if (this.validation != null) {
+            this.validation.appendViolationClass(out);
+        }
+        if (this.metrics != null) {
+            this.metrics.appendMetricsClasses(out);
+        }
+        out.append("\r\n}");
+    }
+
+    // the values are validated before the listeners are notified, i.e. the listeners see the new violations (in
+    // snapshot mode, the snapshot validates its values before it is published)
+    private void appendValidation(final Appendable out) throws IOException {
+        if (this.validation != null) {
+            this.validation.appendValidation(out);
+        }
+    }
+
+    // the values derived from the attributes' new values: the parsed values and the views
+    private void appendDerivedPart(final Appendable out) throws IOException {
+        this.derived.appendParsePart(out);
+        if (this.views != null) {
+            this.views.appendWrapPart(out);
+        }
+    }
+
+    private void appendActivatePart(final Appendable out) throws IOException {
+        if (this.switchActivation) {
+            appendSwitchActivatePart(out);
+        } else {
+            appendLookupActivatePart(out);
+        }
+    }
+
+    private String getImports() {
+        final Set<String> imports = new TreeSet<>();
+        imports.add("java.util.Map");
+        if (this.listeners) {
+            imports.add("java.util.List");
+            imports.add("java.util.concurrent.CopyOnWriteArrayList");
+            imports.addAll(getChangeImports());
+        }
+        if (this.validation != null) {
+            this.validation.addImports(imports);
+        }
+        this.derived.addImports(imports);
+        if (this.views != null) {
+            this.views.addImports(imports);
+        }
+        if (this.warmStart != null) {
+            this.warmStart.addImports(imports);
+        }
+        if (this.metrics != null) {
+            this.metrics.addImports(imports);
+        }
+        final StringBuilder out = new StringBuilder();
+        for (final String name : imports) {
+            out.append("import ").append(name).append(";\r\n");
+        }
+        return out.toString();
+    }
+
+    // appends the part of each attribute, the parts separated by the specified separator
+    private void appendAll(final Appendable out, final String separator, final Part part) throws IOException {
+        boolean first = true;
+        for (final AdModel attribute : this.model.getAttributes()) {
+            if (!first) {
+                out.append(separator);
+            }
+            first = false;
+            part.append(attribute);
+        }
+    }
+
+    // the part of the activate method looking up each attribute in the configuration
+    private void appendLookupActivatePart(final Appendable out) throws IOException {
+        appendAll(out, "\n", a -> appendActivation(out, a));
+    }
+
+    private void appendActivation(final Appendable out, final AdModel attribute) throws IOException {
+        final String field = attribute.getFieldName();
+        if (isEnum(attribute)) {
+            out.append(String.format("%sthis.%s = %s.of((String) configuration.get(\"%s\"), %s);", INDENT3, field,
+                    getType(attribute), attribute.getId(), getFallback(attribute)));
+            return;
+        }
+        if (!attribute.isPrimitive() && !isLazyDefault(attribute)) {
+            // reference types don't need unboxing, the fallback is the constant (or null)
+            out.append(String.format("%sthis.%s = (%s) configuration.getOrDefault(\"%s\", %s);", INDENT3, field,
+                    attribute.getTypeName(), attribute.getId(), getFallback(attribute)));
+            return;
+        }
+        // primitives and arrays: the fallback is used without boxing respectively as copy of the constant
+        final String value = field + "Value";
+        out.append(String.format("%sfinal Object %s = configuration.get(\"%s\");\n", INDENT3, value,
+                attribute.getId()));
+        out.append(String.format("%sthis.%s = %s == null ? %s : (%s) %s;", INDENT3, field, value,
+                getInitialValue(attribute), attribute.getTypeName(), value));
+    }
+
+    // the part of the activate method iterating the configuration's entries once and dispatching each key through a
+    // switch to the attribute's local variable, unknown keys are skipped
+    private void appendSwitchActivatePart(final Appendable out) throws IOException {
+        final Map<String, List<AdModel>> ids = new LinkedHashMap<>();
+        for (final AdModel attribute : this.model.getAttributes()) {
+            ids.computeIfAbsent(attribute.getId(), k -> new ArrayList<>()).add(attribute);
+            out.append(String.format("%s%s %sValue = %s;\n", INDENT3, getType(attribute),
+                    attribute.getFieldName(), isLazyDefault(attribute) ? "null" : getFallback(attribute)));
+        }
+        out.append(INDENT3).append("for (final Map.Entry<String, Object> entry : configuration.entrySet()) {\n");
+        out.append(INDENT3).append("    switch (entry.getKey()) {\n");
+        for (final Map.Entry<String, List<AdModel>> id : ids.entrySet()) {
+            out.append(String.format("%s    case %s:\n", INDENT3, DefaultValues.quote(id.getKey(), '"')));
+            for (final AdModel attribute : id.getValue()) {
+                out.append(isEnum(attribute)
+                        ? String.format("%s        %sValue = %s.of((String) entry.getValue(), %s);\n", INDENT3,
+                                attribute.getFieldName(), getType(attribute), getFallback(attribute))
+                        : String.format("%s        %sValue = (%s) entry.getValue();\n", INDENT3,
+                                attribute.getFieldName(), attribute.getTypeName()));
+            }
+            out.append(INDENT3).append("        break;\n");
+        }
+        out.append(INDENT3).append("    default:\n");
+        out.append(INDENT3).append("        // not an attribute of this configuration\n");
+        out.append(INDENT3).append("        break;\n");
+        out.append(INDENT3).append("    }\n");
+        out.append(INDENT3).append("}");
+        for (final AdModel attribute : this.model.getAttributes()) {
+            final String field = attribute.getFieldName();
+            out.append(isLazyDefault(attribute)
+                    ? String.format("\n%sthis.%s = %sValue == null ? %s : %sValue;", INDENT3, field, field,
+                            getInitialValue(attribute), field)
+                    : String.format("\n%sthis.%s = %sValue;", INDENT3, field, field));
+        }
+    }
+
+    // the copy of an array's default is only created if the configuration doesn't contain the attribute
+    private static boolean isLazyDefault(final AdModel attribute) {
+        return attribute.hasDefault() && attribute.isArray();
+    }
+
+    // the value of an attribute missing in the configuration
+    private String getFallback(final AdModel attribute) {
+        if (hasDefault(attribute) || attribute.isPrimitive()) {
+            return getInitialValue(attribute);
+        }
+        return "null";
+    }
+
+    private String getInitialValue(final AdModel attribute) {
+        if (hasDefault(attribute)) {
+            return attribute.isArray() ? attribute.getConstantName() + ".clone()" : attribute.getConstantName();
+        }
+        if (attribute.isString() && !isEnum(attribute)) {
+            return "\"\"";
+        }
+        if (attribute.isPrimitive()) {
+            return "boolean".equals(attribute.getTypeName()) ? "false" : "0";
+        }
+        return "null";
+    }
+
+    // the getter of the array attribute returns a read-only view
+    private boolean isView(final AdModel attribute) {
+        return this.views != null && attribute.isArray();
+    }
+
+    // the attribute is held as constant of its generated enum
+    private boolean isEnum(final AdModel attribute) {
+        return this.enums != null && EnumManager.isEnum(attribute);
+    }
+
+    // the Java type of the attribute's field and getter
+    private String getType(final AdModel attribute) {
+        return isEnum(attribute) ? EnumManager.getEnumName(attribute) : attribute.getTypeName();
+    }
+
+    private boolean hasDefault(final AdModel attribute) {
+        return isEnum(attribute) ? EnumManager.getDefault(attribute) != null : attribute.hasDefault();
+    }
+
+    // the constants holding the attributes' default values, each terminated by a line break
+    private void appendConstantDefs(final Appendable out) throws IOException {
+        for (final AdModel attribute : this.model.getAttributes()) {
+            if (hasDefault(attribute)) {
+                out.append(String.format("%sprivate static final %s %s = %s;\r\n", INDENT1, getType(attribute),
+                        attribute.getConstantName(),
+                        isEnum(attribute) ? EnumManager.getDefault(attribute) : attribute.getDefaultLiteral()));
+            }
+        }
+    }
+
+    private void appendFieldDefs(final Appendable out) throws IOException {
+        appendAll(out, "\n", a -> {
+            final String addition = a.isString() && !isEnum(a) || hasDefault(a) ? " = " + getInitialValue(a) : "";
+            out.append(String.format("%sprivate %s %s%s;", INDENT1, getType(a), a.getFieldName(), addition));
+        });
+    }
+
+    // the final fields of the immutable snapshot
+    private void appendSnapshotFieldDefs(final Appendable out) throws IOException {
+        appendAll(out, "\n",
+                a -> out.append(String.format("%sprivate final %s %s;", INDENT2, getType(a), a.getFieldName())));
+    }
+
+    // initializes the snapshot's fields before the first activation, i.e. with the defaults or the values of a
+    // component's uninitialized fields
+    private void appendSnapshotInitPart(final Appendable out) throws IOException {
+        appendAll(out, "\n",
+                a -> out.append(String.format("%sthis.%s = %s;", INDENT3, a.getFieldName(), getInitialValue(a))));
+    }
+
+    // keeps the values (and views) before the (re)configuration, each local variable terminated by a line break
+    private void appendCapturePart(final Appendable out) throws IOException {
+        appendAll(out, "", a -> {
+            out.append(String.format("%sfinal %s old%s = this.%s;\r\n", INDENT3, getType(a), a.getPropertyName(),
+                    a.getFieldName()));
+            if (isView(a)) {
+                out.append(String.format("%sfinal %s old%sView = this.%s;\r\n", INDENT3,
+                        ViewManager.getViewType(a), a.getPropertyName(), ViewManager.getFieldName(a)));
+            }
+        });
+    }
+
+    /** Appends the part of the code comparing each attribute's previous value with the new one and notifying the
+     * registered listeners about the changed attributes. Primitives are compared by value, arrays using
+     * <code>Arrays.equals</code>. An exception thrown by a listener is caught, i.e. the remaining listeners and
+     * attributes are notified anyway. With views, the listeners are passed the arrays' views, not the arrays.
+     *
+     * @param out {@link Appendable}
+     * @param oldTmpl String the template of the previous value's expression, <code>%1$s</code> is the field name,
+     *            <code>%2$s</code> the capitalized field name
+     * @param newTmpl String the template of the new value's expression, the statements are terminated by a line
+     *            break
+     * @throws IOException */
+    private void appendNotifyPart(final Appendable out, final String oldTmpl, final String newTmpl)
+            throws IOException {
+        out.append(INDENT3).append("if (!this.listeners.isEmpty()) {\r\n");
+        for (final AdModel attribute : this.model.getAttributes()) {
+            final String name = attribute.getFieldName();
+            final String oldValue = String.format(oldTmpl, name, attribute.getPropertyName());
+            final String newValue = String.format(newTmpl, name, attribute.getPropertyName());
+            final boolean view = isView(attribute);
+            final String oldArg = view ? String.format(oldTmpl, ViewManager.getFieldName(attribute),
+                    attribute.getPropertyName() + "View") : oldValue;
+            final String newArg = view ? String.format(newTmpl, ViewManager.getFieldName(attribute),
+                    attribute.getPropertyName() + "View") : newValue;
+            out.append(String.format("%s    if (%s) {\r\n", INDENT3, createChangeCheck(attribute, oldValue, newValue)))
+                    .append(String.format("%s        for (final Listener listener : this.listeners) {\r\n", INDENT3))
+                    .append(String.format("%s            try {\r\n", INDENT3))
+                    .append(String.format("%s                listener.%sChanged(%s, %s);\r\n", INDENT3, name,
+                            oldArg, newArg))
+                    .append(String.format("%s            } catch (final RuntimeException exc) {\r\n", INDENT3))
+                    .append(String.format("%s                listenerFailed(exc);\r\n", INDENT3))
+                    .append(String.format("%s            }\r\n", INDENT3))
+                    .append(String.format("%s        }\r\n", INDENT3))
+                    .append(String.format("%s    }\r\n", INDENT3));
+        }
+        out.append(INDENT3).append("}\r\n");
+    }
+
+    // the callbacks of the listener interface, one per attribute, the arrays are passed as views if enabled
+    private void appendListenerCallbacks(final Appendable out) throws IOException {
+        appendAll(out, "\r\n\r\n", a -> {
+            final String type = isView(a) ? ViewManager.getViewType(a) : getType(a);
+            out.append(String.format("%sdefault void %sChanged(final %s oldValue, final %s newValue) {\r\n"
+                    + "%s    // nothing to do by default\r\n"
+                    + "%s}", INDENT2, a.getFieldName(), type, type, INDENT2, INDENT2));
+        });
+    }
+
+    // the classes to import for the comparison of the attributes' values
+    private Set<String> getChangeImports() {
+        final Set<String> out = new TreeSet<>();
+        for (final AdModel attribute : this.model.getAttributes()) {
+            if (attribute.isArray()) {
+                out.add(Arrays.class.getName());
+            } else if (!attribute.isPrimitive() && !isEnum(attribute)) {
+                out.add(Objects.class.getName());
+            }
+        }
+        return out;
+    }
+
+    private String createChangeCheck(final AdModel attribute, final String oldValue, final String newValue) {
+        final String typeName = attribute.getTypeName();
+        if (attribute.isArray()) {
+            return String.format("!Arrays.equals(%s, %s)", oldValue, newValue);
+        }
+        if ("double".equals(typeName) || "float".equals(typeName)) {
+            // compares NaN as equal to itself
+            return String.format("%s.compare(%s, %s) != 0", typeName.substring(0, 1).toUpperCase()
+                    + typeName.substring(1), oldValue, newValue);
+        }
+        if (attribute.isPrimitive() || isEnum(attribute)) {
+            // enum constants are compared by identity
+            return String.format("%s != %s", oldValue, newValue);
+        }
+        return String.format("!Objects.equals(%s, %s)", oldValue, newValue);
+    }
+
+    // the component's getters count their reads if enabled, the snapshot's getters (counted parameter false) don't
+    private void appendGetters(final Appendable out, final String indent, final String valueTmpl,
+            final boolean counted, final boolean copied) throws IOException {
+        final boolean reads = counted && this.metrics != null && this.metrics.isCountingReads();
+        final int[] index = { 0 };
+        appendAll(out, "\n", a -> {
+            final boolean view = isView(a);
+            final String field = String.format(valueTmpl, view ? ViewManager.getFieldName(a) : a.getFieldName(),
+                    a.getPropertyName());
+            final String value = copied && a.isArray() && !view
+                    ? String.format("%1$s == null ? null : %1$s.clone()", field)
+                    : field;
+            if (reads) {
+                out.append(String.format(COUNTED_GETTER_START, indent, view ? ViewManager.getViewType(a) : getType(a),
+                        a.getPropertyName()));
+                this.metrics.appendRead(out, indent, index[0]++);
+                out.append(String.format(COUNTED_GETTER_END, indent, value));
+            } else {
+                out.append(String.format(GETTER_TMPL, indent, view ? ViewManager.getViewType(a) : getType(a),
+                        a.getPropertyName(), value));
+            }
+        });
+    }
+
+    // ---
+
+    // appends the code of an attribute
+    @FunctionalInterface
+    private interface Part {
+        void append(AdModel attribute) throws IOException;
     }
 
 }
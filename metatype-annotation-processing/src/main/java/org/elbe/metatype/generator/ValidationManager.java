@@ -0,0 +1,330 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import java.io.IOException;
+import java.util.Set;
+
+/** Creates the parts of the generated component validating the configured values against the constraints of the
+ * attribute definitions: <code>required</code> (attributes without default value), <code>min</code> and
+ * <code>max</code> (numbers and the length of strings, each element of arrays) and <code>cardinality</code> (the
+ * length of arrays).<br>
+ * The bounds are parsed at compile time into constants of the attribute's primitive type, therefore, the validation
+ * compares primitives only: no parsing, boxing or regular expressions at runtime. The list of violations is only
+ * created if a constraint is violated.<br>
+ * In snapshot mode, the values are validated by the <code>Snapshot</code>'s constructor and the violations are held by
+ * the snapshot, i.e. they are published together with the values they belong to.
+ *
+ * @author lbenno */
+public class ValidationManager {
+    private static final String INDENT1 = String.format("%4s", " ");
+    private static final String INDENT2 = String.format("%8s", " ");
+    private static final String INDENT3 = String.format("%12s", " ");
+    private static final String VIOLATIONS_FIELD = "    private volatile List<Violation> violations = "
+            + "Collections.emptyList();\r\n";
+    private static final String VALIDATE = "            this.violations = validate(configuration);\r\n";
+    private static final String VALIDATE_START = "\r\n"
+            + "\r\n"
+            + "    /** @return List&lt;Violation> the violations of the last (re)configuration, empty if the "
+            + "configured\r\n"
+            + "     *         values are valid */\r\n"
+            + "    public List<Violation> getViolations() {\r\n"
+            + "        return this.violations;\r\n"
+            + "    }\r\n"
+            + "\r\n"
+            + "    /** Validates the configured values against the constraints of the attribute definitions.\r\n"
+            + "     *\r\n"
+            + "     * @param configuration Map&lt;String, Object> the configuration\r\n"
+            + "     * @return List&lt;Violation> the violations, empty if the values are valid */\r\n"
+            + "    protected List<Violation> validate(final Map<String, Object> configuration) {\r\n"
+            + "        List<Violation> out = null;\r\n";
+    private static final String VALIDATE_END = "        return out == null ? Collections.<Violation> emptyList() : "
+            + "Collections.unmodifiableList(out);\r\n"
+            + "    }";
+    private static final String SNAPSHOT_FIELD = "\n        private final List<Violation> violations;";
+    private static final String SNAPSHOT_INIT = "\n            this.violations = Collections.emptyList();";
+    private static final String SNAPSHOT_VALIDATE = "\n            this.violations = validate(configuration);";
+    private static final String SNAPSHOT_GETTER = "\r\n"
+            + "\r\n"
+            + "    /** @return List&lt;Violation> the violations of the last (re)configuration, empty if the "
+            + "configured\r\n"
+            + "     *         values are valid */\r\n"
+            + "    public List<Violation> getViolations() {\r\n"
+            + "        return this.snapshot.getViolations();\r\n"
+            + "    }";
+    private static final String SNAPSHOT_VALIDATE_START = "\r\n"
+            + "\r\n"
+            + "        /** @return List&lt;Violation> the violations of the snapshot's values, empty if the values "
+            + "are valid */\r\n"
+            + "        public List<Violation> getViolations() {\r\n"
+            + "            return this.violations;\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        // validates the configured values against the constraints of the attribute definitions\r\n"
+            + "        private List<Violation> validate(final Map<String, Object> configuration) {\r\n"
+            + "            List<Violation> out = null;\r\n";
+    private static final String SNAPSHOT_VALIDATE_END = "            return out == null ? "
+            + "Collections.<Violation> emptyList() : Collections.unmodifiableList(out);\r\n"
+            + "        }";
+    private static final String VIOLATION_CLASS = "\r\n"
+            + "    /** The violation of a constraint of an attribute definition. */\r\n"
+            + "    public static final class Violation {\r\n"
+            + "        /** The constraints of the attribute definitions. */\r\n"
+            + "        public enum Constraint {\r\n"
+            + "            REQUIRED, MIN, MAX, CARDINALITY\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        private final String attribute;\r\n"
+            + "        private final Constraint constraint;\r\n"
+            + "        private final String message;\r\n"
+            + "\r\n"
+            + "        private Violation(final String attribute, final Constraint constraint, "
+            + "final String message) {\r\n"
+            + "            this.attribute = attribute;\r\n"
+            + "            this.constraint = constraint;\r\n"
+            + "            this.message = message;\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        private static List<Violation> add(final List<Violation> violations, final String attribute,\r\n"
+            + "                final Constraint constraint, final String message) {\r\n"
+            + "            final List<Violation> out = violations == null ? new ArrayList<>() : violations;\r\n"
+            + "            out.add(new Violation(attribute, constraint, message));\r\n"
+            + "            return out;\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        /** @return String the id of the attribute */\r\n"
+            + "        public String getAttribute() {\r\n"
+            + "            return this.attribute;\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        /** @return Constraint the violated constraint */\r\n"
+            + "        public Constraint getConstraint() {\r\n"
+            + "            return this.constraint;\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        /** @return String the description of the violation */\r\n"
+            + "        public String getMessage() {\r\n"
+            + "            return this.message;\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        @Override\r\n"
+            + "        public String toString() {\r\n"
+            + "            return this.message;\r\n"
+            + "        }\r\n"
+            + "    }\r\n";
+
+    private final OcdModel model;
+    private final boolean snapshot;
+    private final boolean enums;
+
+    /** ValidationManager constructor.
+     *
+     * @param model {@link OcdModel} the configuration
+     * @param snapshot boolean <code>true</code> if the component's values are held by a <code>Snapshot</code>
+     * @param enums boolean <code>true</code> if the attributes with options are held as enum constants, i.e. have no
+     *            length */
+    public ValidationManager(final OcdModel model, final boolean snapshot, final boolean enums) {
+        this.model = model;
+        this.snapshot = snapshot;
+        this.enums = enums;
+    }
+
+    /** @param imports Set&lt;String> the imports of the generated component to add the validation's imports to */
+    public void addImports(final Set<String> imports) {
+        imports.add("java.util.ArrayList");
+        imports.add("java.util.Collections");
+        imports.add("java.util.List");
+    }
+
+    /** Appends the constants of the parsed bounds, each terminated by a line break.
+     *
+     * @param out {@link Appendable}
+     * @throws IOException */
+    public void appendConstantDefs(final Appendable out) throws IOException {
+        for (final AdModel attribute : this.model.getAttributes()) {
+            appendConstantDef(out, attribute, "MIN_", attribute.getMinLiteral());
+            appendConstantDef(out, attribute, "MAX_", attribute.getMaxLiteral());
+        }
+    }
+
+    private static void appendConstantDef(final Appendable out, final AdModel attribute, final String prefix,
+            final String literal) throws IOException {
+        if (literal != null) {
+            out.append(String.format("%sprivate static final %s %s = %s;\r\n", INDENT1, attribute.getBoundType(),
+                    getConstantName(prefix, attribute), literal));
+        }
+    }
+
+    /** Appends the field holding the violations, terminated by a line break. In snapshot mode, the violations are
+     * held by the snapshot.
+     *
+     * @param out {@link Appendable}
+     * @throws IOException */
+    public void appendFieldDef(final Appendable out) throws IOException {
+        if (!this.snapshot) {
+            out.append(VIOLATIONS_FIELD);
+        }
+    }
+
+    /** Appends the statement of the activate method validating the new values, terminated by a line break. In
+     * snapshot mode, the values are validated by the snapshot's constructor.
+     *
+     * @param out {@link Appendable}
+     * @throws IOException */
+    public void appendValidation(final Appendable out) throws IOException {
+        if (!this.snapshot) {
+            out.append(VALIDATE);
+        }
+    }
+
+    /** Appends the getter of the violations and, unless in snapshot mode, the validate method.
+     *
+     * @param out {@link Appendable}
+     * @throws IOException */
+    public void appendMethods(final Appendable out) throws IOException {
+        if (this.snapshot) {
+            out.append(SNAPSHOT_GETTER);
+            return;
+        }
+        out.append(VALIDATE_START);
+        for (final AdModel attribute : this.model.getAttributes()) {
+            appendChecks(out, attribute, INDENT2);
+        }
+        out.append(VALIDATE_END);
+    }
+
+    /** Appends the snapshot's field holding the violations, preceded by a line break.
+     *
+     * @param out {@link Appendable}
+     * @throws IOException */
+    public void appendSnapshotFieldDef(final Appendable out) throws IOException {
+        out.append(SNAPSHOT_FIELD);
+    }
+
+    /** Appends the statement of the snapshot's default constructor initializing the violations, preceded by a line
+     * break.
+     *
+     * @param out {@link Appendable}
+     * @throws IOException */
+    public void appendSnapshotInitPart(final Appendable out) throws IOException {
+        out.append(SNAPSHOT_INIT);
+    }
+
+    /** Appends the statement of the snapshot's constructor validating the new values, preceded by a line break.
+     *
+     * @param out {@link Appendable}
+     * @throws IOException */
+    public void appendSnapshotValidation(final Appendable out) throws IOException {
+        out.append(SNAPSHOT_VALIDATE);
+    }
+
+    /** Appends the snapshot's getter of the violations and its validate method.
+     *
+     * @param out {@link Appendable}
+     * @throws IOException */
+    public void appendSnapshotMethods(final Appendable out) throws IOException {
+        out.append(SNAPSHOT_VALIDATE_START);
+        for (final AdModel attribute : this.model.getAttributes()) {
+            appendChecks(out, attribute, INDENT3);
+        }
+        out.append(SNAPSHOT_VALIDATE_END);
+    }
+
+    /** Appends the class of the violations.
+     *
+     * @param out {@link Appendable}
+     * @throws IOException */
+    public void appendViolationClass(final Appendable out) throws IOException {
+        out.append(VIOLATION_CLASS);
+    }
+
+    // the checks of an attribute, the statements indented by the specified indent
+    private void appendChecks(final Appendable out, final AdModel attribute, final String base) throws IOException {
+        final String id = attribute.getId();
+        final String value = "this." + attribute.getFieldName();
+        // attributes with default value are never missing
+        if (attribute.isRequired() && !attribute.hasDefault()) {
+            out.append(String.format("%sif (configuration.get(%s) == null) {\r\n", base, quote(id)));
+            appendViolation(out, base + INDENT1, id, "REQUIRED", String.format("The attribute '%s' is required.", id));
+            out.append(base).append("}\r\n");
+        }
+        final boolean bounded = (attribute.getMinLiteral() != null || attribute.getMaxLiteral() != null)
+                && !(this.enums && EnumManager.isEnum(attribute));
+        final boolean cardinality = attribute.isArray() && attribute.getCardinality() != 0;
+        if (!bounded && !cardinality) {
+            return;
+        }
+
+        String indent = base;
+        if (!attribute.isPrimitive()) {
+            out.append(String.format("%sif (%s != null) {\r\n", indent, value));
+            indent = base + INDENT1;
+        }
+        if (cardinality) {
+            final int max = Math.abs(attribute.getCardinality());
+            out.append(String.format("%sif (%s.length > %s) {\r\n", indent, value, max));
+            appendViolation(out, indent + INDENT1, id, "CARDINALITY",
+                    String.format("The attribute '%s' has more than %s values.", id, max));
+            out.append(indent).append("}\r\n");
+        }
+        if (bounded) {
+            appendBounds(out, indent, attribute, value);
+        }
+        if (!attribute.isPrimitive()) {
+            out.append(base).append("}\r\n");
+        }
+    }
+
+    // the elements of arrays are compared one by one, the first violation of a bound is reported
+    private static void appendBounds(final Appendable out, final String indent, final AdModel attribute,
+            final String value) throws IOException {
+        final String type = attribute.isArray()
+                ? attribute.getTypeName().substring(0, attribute.getTypeName().length() - 2)
+                : attribute.getTypeName();
+        final boolean length = "String".equals(type);
+        final String message = (attribute.isArray() ? "A " : "The ") + (length ? "length" : "value")
+                + " of '%s' is %s than %s.";
+        for (final boolean min : new boolean[] { true, false }) {
+            if ((min ? attribute.getMinLiteral() : attribute.getMaxLiteral()) == null) {
+                continue;
+            }
+            if (attribute.isArray()) {
+                out.append(String.format("%sfor (final %s element : %s) {\r\n", indent, type, value));
+                appendBound(out, indent + INDENT1, attribute, min, length ? "element != null && element.length()"
+                        : "element", message, true);
+                out.append(indent).append("}\r\n");
+            } else {
+                appendBound(out, indent, attribute, min, length ? value + ".length()" : value, message, false);
+            }
+        }
+    }
+
+    private static void appendBound(final Appendable out, final String indent, final AdModel attribute,
+            final boolean min, final String value, final String message, final boolean loop) throws IOException {
+        out.append(String.format("%sif (%s %s %s) {\r\n", indent, value, min ? "<" : ">",
+                getConstantName(min ? "MIN_" : "MAX_", attribute)));
+        appendViolation(out, indent + INDENT1, attribute.getId(), min ? "MIN" : "MAX", String.format(message,
+                attribute.getId(), min ? "less" : "greater", (min ? attribute.getMin() : attribute.getMax()).trim()));
+        if (loop) {
+            out.append(indent).append(INDENT1).append("break;\r\n");
+        }
+        out.append(indent).append("}\r\n");
+    }
+
+    private static void appendViolation(final Appendable out, final String indent, final String id,
+            final String constraint, final String message) throws IOException {
+        out.append(String.format("%sout = Violation.add(out, %s, Violation.Constraint.%s,\r\n", indent, quote(id),
+                constraint));
+        out.append(String.format("%s        %s);\r\n", indent, quote(message)));
+    }
+
+    private static String getConstantName(final String prefix, final AdModel attribute) {
+        return prefix + IdUtil.toConstantName(attribute.getFieldName());
+    }
+
+    private static String quote(final String value) {
+        return DefaultValues.quote(value, '"');
+    }
+
+}
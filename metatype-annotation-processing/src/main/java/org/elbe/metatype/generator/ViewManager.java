@@ -0,0 +1,197 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/** Creates the read-only views of the generated component's array attributes: the getters return a view instead of
+ * the internal array, therefore, callers can't change the configuration and don't need a defensive copy.<br>
+ * The arrays of primitives are wrapped by generated, primitive-specialized views (e.g. <code>IntView</code> with
+ * <code>size()</code> and <code>get(int)</code>, no boxing), the arrays of objects by an unmodifiable
+ * <code>List</code>. The views wrap the arrays without copying and are created once per (re)configuration, the getters
+ * don't allocate. An array missing in the configuration is returned as empty view.
+ *
+ * @author lbenno */
+public class ViewManager {
+    private static final String INDENT3 = String.format("%12s", " ");
+    private static final String VIEW_TMPL = "\r\n"
+            + "    /** Read-only view of a <code>%2$s[]</code> value, wraps the array without copying. */\r\n"
+            + "    public static final class %1$s {\r\n"
+            + "        private static final %1$s EMPTY = new %1$s(new %2$s[0]);\r\n"
+            + "\r\n"
+            + "        private final %2$s[] values;\r\n"
+            + "\r\n"
+            + "        private %1$s(final %2$s[] values) {\r\n"
+            + "            this.values = values;\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        private static %1$s of(final %2$s[] values) {\r\n"
+            + "            return values == null ? EMPTY : new %1$s(values);\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        /** @return int the number of values */\r\n"
+            + "        public int size() {\r\n"
+            + "            return this.values.length;\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        /** @return boolean <code>true</code> if there are no values */\r\n"
+            + "        public boolean isEmpty() {\r\n"
+            + "            return this.values.length == 0;\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        /** @param index int\r\n"
+            + "         * @return %2$s the value at the specified index */\r\n"
+            + "        public %2$s get(final int index) {\r\n"
+            + "            return this.values[index];\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        /** @return %2$s[] a copy of the values */\r\n"
+            + "        public %2$s[] toArray() {\r\n"
+            + "            return this.values.clone();\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        @Override\r\n"
+            + "        public boolean equals(final Object other) {\r\n"
+            + "            return other instanceof %1$s && Arrays.equals(this.values, ((%1$s) other).values);\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        @Override\r\n"
+            + "        public int hashCode() {\r\n"
+            + "            return Arrays.hashCode(this.values);\r\n"
+            + "        }\r\n"
+            + "\r\n"
+            + "        @Override\r\n"
+            + "        public String toString() {\r\n"
+            + "            return Arrays.toString(this.values);\r\n"
+            + "        }\r\n"
+            + "    }\r\n";
+    private static final String TO_LIST = "\r\n"
+            + "\r\n"
+            + "    private static <T> List<T> toList(final T[] values) {\r\n"
+            + "        return values == null ? Collections.<T> emptyList() : "
+            + "Collections.unmodifiableList(Arrays.asList(values));\r\n"
+            + "    }";
+
+    private final List<AdModel> attributes;
+
+    /** @param model {@link OcdModel} the configuration */
+    public ViewManager(final OcdModel model) {
+        this.attributes = new ArrayList<>();
+        for (final AdModel attribute : model.getAttributes()) {
+            if (attribute.isArray()) {
+                this.attributes.add(attribute);
+            }
+        }
+    }
+
+    /** @param attribute {@link AdModel} an array attribute
+     * @return String the type of the attribute's view, e.g. <code>IntView</code> or <code>List&lt;String></code> */
+    public static String getViewType(final AdModel attribute) {
+        final String element = getElementType(attribute);
+        return isPrimitive(element) ? getViewName(element) : "List<" + element + ">";
+    }
+
+    /** @param attribute {@link AdModel}
+     * @return String the name of the field holding the attribute's view */
+    public static String getFieldName(final AdModel attribute) {
+        return attribute.getFieldName() + "View";
+    }
+
+    /** @param imports Set&lt;String> the imports of the generated component to add the views' imports to */
+    public void addImports(final Set<String> imports) {
+        if (this.attributes.isEmpty()) {
+            return;
+        }
+        imports.add("java.util.Arrays");
+        if (hasLists()) {
+            imports.add("java.util.Collections");
+            imports.add("java.util.List");
+        }
+    }
+
+    /** Appends the fields of the views, each preceded by a line break.
+     *
+     * @param out {@link Appendable}
+     * @param indent String the fields' indent
+     * @param modifiers String the fields' modifiers, e.g. <code>private final</code>
+     * @param initialize boolean <code>true</code> if the fields are initialized with the views of the array fields'
+     *            initial values
+     * @throws IOException */
+    public void appendFieldDefs(final Appendable out, final String indent, final String modifiers,
+            final boolean initialize) throws IOException {
+        for (final AdModel attribute : this.attributes) {
+            out.append(String.format("\n%s%s %s %s", indent, modifiers, getViewType(attribute),
+                    getFieldName(attribute)))
+                    .append(initialize ? " = " + createView(attribute, attribute.getFieldName()) : "").append(';');
+        }
+    }
+
+    /** Appends the statements wrapping the arrays' new values, each preceded by a line break.
+     *
+     * @param out {@link Appendable}
+     * @throws IOException */
+    public void appendWrapPart(final Appendable out) throws IOException {
+        for (final AdModel attribute : this.attributes) {
+            out.append(String.format("\n%sthis.%s = %s;", INDENT3, getFieldName(attribute),
+                    createView(attribute, "this." + attribute.getFieldName())));
+        }
+    }
+
+    /** Appends the static method wrapping the arrays of objects, if needed.
+     *
+     * @param out {@link Appendable}
+     * @throws IOException */
+    public void appendMethods(final Appendable out) throws IOException {
+        if (hasLists()) {
+            out.append(TO_LIST);
+        }
+    }
+
+    /** Appends the classes of the views, one per primitive element type.
+     *
+     * @param out {@link Appendable}
+     * @throws IOException */
+    public void appendViewClasses(final Appendable out) throws IOException {
+        final Set<String> elements = new TreeSet<>();
+        for (final AdModel attribute : this.attributes) {
+            final String element = getElementType(attribute);
+            if (isPrimitive(element) && elements.add(element)) {
+                out.append(String.format(VIEW_TMPL, getViewName(element), element));
+            }
+        }
+    }
+
+    private boolean hasLists() {
+        for (final AdModel attribute : this.attributes) {
+            if (!isPrimitive(getElementType(attribute))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String createView(final AdModel attribute, final String value) {
+        final String element = getElementType(attribute);
+        return isPrimitive(element) ? getViewName(element) + ".of(" + value + ")" : "toList(" + value + ")";
+    }
+
+    private static String getElementType(final AdModel attribute) {
+        final String type = attribute.getTypeName();
+        return type.substring(0, type.length() - 2);
+    }
+
+    private static boolean isPrimitive(final String element) {
+        return element.indexOf('.') < 0 && Character.isLowerCase(element.charAt(0));
+    }
+
+    // e.g. "IntView" for "int"
+    private static String getViewName(final String element) {
+        return Character.toUpperCase(element.charAt(0)) + element.substring(1) + "View";
+    }
+
+}
@@ -0,0 +1,360 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.osgi.service.metatype.annotations.AttributeType;
+
+/** Creates the parts of the generated component serving the last-known-good values at startup, i.e. before
+ * ConfigAdmin delivers the configuration.<br>
+ * Every configuration delivered by ConfigAdmin (recognized by its <code>service.pid</code>) is serialized, once
+ * accepted, into a compact binary file whose layout is generated per configuration: a header (magic number and layout
+ * hash), then the attributes in declaration order (except the passwords, they are never stored), each as presence
+ * flag and value. On the first activation without configuration, the file is read into a heap buffer (a mapping
+ * would keep the file locked against its replacement on some platforms) and the component is activated with these
+ * values until ConfigAdmin's configuration arrives. A file of another layout (e.g. written by a former version of the
+ * configuration) is ignored, a deleted configuration deletes the file.<br>
+ * The files are located in the bundle's persistent storage area (<code>BundleContext.getDataFile()</code>) or in the
+ * directory specified by the system property <code>metatype.warmstart.dir</code>, named after the configuration's
+ * PID.
+ *
+ * @author lbenno */
+public class WarmStartManager {
+    private static final String PASSWORD = AttributeType.PASSWORD.toString();
+    private static final String INDENT2 = String.format("%8s", " ");
+    private static final String INDENT3 = String.format("%12s", " ");
+    private static final String INDENT4 = String.format("%16s", " ");
+    // the types that can be serialized: the methods of DataOutputStream and ByteBuffer by (unboxed) element type
+    private static final Map<String, String[]> IO = Map.of("int", new String[] { "writeInt", "in.getInt()" },
+            "long", new String[] { "writeLong", "in.getLong()" },
+            "short", new String[] { "writeShort", "in.getShort()" },
+            "byte", new String[] { "writeByte", "in.get()" },
+            "char", new String[] { "writeChar", "in.getChar()" },
+            "double", new String[] { "writeDouble", "in.getDouble()" },
+            "float", new String[] { "writeFloat", "in.getFloat()" },
+            "boolean", new String[] { "writeBoolean", "in.get() != 0" },
+            "String", new String[] { null, "readString(in)" });
+    private static final Map<String, String> UNBOXED = Map.of("java.lang.Integer", "int", "java.lang.Long", "long",
+            "java.lang.Short", "short", "java.lang.Byte", "byte", "java.lang.Character", "char", "java.lang.Double",
+            "double", "java.lang.Float", "float", "java.lang.Boolean", "boolean", "java.lang.String", "String");
+    private static final String CONSTANTS = "    private static final String SERVICE_PID = \"service.pid\";\r\n"
+            + "    private static final String WARM_START_DIR = \"metatype.warmstart.dir\";\r\n"
+            + "    private static final int WARM_START_MAGIC = 0x4d545732;\r\n"
+            + "    private static final long WARM_START_LAYOUT = 0x%sL;\r\n";
+    private static final String FRAMEWORK_IMPORT = "import org.osgi.framework.BundleContext;\r\n";
+    private static final String FIELD = "    private boolean started;\r\n"
+            + "    private Path warmStartFile;\r\n";
+    private static final String ACTIVATE_START = "\r\n"
+            + "    @Activate\r\n"
+            + "    @Modified\r\n"
+            + "    protected void activate(final BundleContext context, final Map<String, Object> properties) {\r\n"
+            + "        // ConfigAdmin's configuration contains the service.pid, until it arrives\r\n"
+            + "        // the last-known-good values are served\r\n"
+            + "        final boolean live = properties != null && properties.containsKey(SERVICE_PID);\r\n"
+            + "        final boolean warm = !live && !this.started;\r\n"
+            + "        if (!this.started) {\r\n"
+            + "            this.started = true;\r\n"
+            + "            this.warmStartFile = getWarmStartFile(context);\r\n"
+            + "        }\r\n"
+            + "        final Map<String, Object> configuration = warm ? loadWarmStart(properties) : properties;\r\n"
+            + "        if (configuration != null) {\r\n";
+    private static final String STORE = "            if (live) {\r\n"
+            + "%s"
+            + "            } else if (!warm) {\r\n"
+            + "                // the configuration has been deleted\r\n"
+            + "                deleteWarmStart();\r\n"
+            + "            }\r\n";
+    private static final String STORE_ALL = "                storeWarmStart();\r\n";
+    private static final String STORE_VALID = "                if (getViolations().isEmpty()) {\r\n"
+            + "                    storeWarmStart();\r\n"
+            + "                }\r\n";
+    private static final String FILE_METHOD = "\r\n"
+            + "\r\n"
+            + "    // the file in the bundle's persistent storage area (or in the directory specified by the system\r\n"
+            + "    // property), null if the framework doesn't support a file system\r\n"
+            + "    private static Path getWarmStartFile(final BundleContext context) {\r\n"
+            + "        final String dir = System.getProperty(WARM_START_DIR);\r\n"
+            + "        if (dir != null) {\r\n"
+            + "            return Paths.get(dir, CONFIG_PID + \".bin\");\r\n"
+            + "        }\r\n"
+            + "        final File file = context == null ? null : context.getDataFile(CONFIG_PID + \".bin\");\r\n"
+            + "        return file == null ? null : file.toPath();\r\n"
+            + "    }\r\n"
+            + "\r\n"
+            + "    private void deleteWarmStart() {\r\n"
+            + "        if (this.warmStartFile == null) {\r\n"
+            + "            return;\r\n"
+            + "        }\r\n"
+            + "        try {\r\n"
+            + "            Files.deleteIfExists(this.warmStartFile);\r\n"
+            + "        } catch (final IOException | RuntimeException exc) {\r\n"
+            + "            // the file is ignored once its layout changes\r\n"
+            + "        }\r\n"
+            + "    }";
+    private static final String LOAD_START = "\r\n"
+            + "\r\n"
+            + "    /** Reads the last-known-good values. The small file is read into a heap buffer, a mapping\r\n"
+            + "     * would lock the file against its replacement (e.g. on Windows) until it is garbage collected.\r\n"
+            + "     *\r\n"
+            + "     * @param properties Map&lt;String, Object> the component's properties\r\n"
+            + "     * @return Map&lt;String, Object> the properties and the last-known-good values, the properties\r\n"
+            + "     *         if there are none */\r\n"
+            + "    private Map<String, Object> loadWarmStart(final Map<String, Object> properties) {\r\n"
+            + "        final Path file = this.warmStartFile;\r\n"
+            + "        if (file == null || !Files.isRegularFile(file)) {\r\n"
+            + "            return properties;\r\n"
+            + "        }\r\n"
+            + "        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {\r\n"
+            + "            final ByteBuffer in = ByteBuffer.allocate((int) Math.min(channel.size(), "
+            + "Integer.MAX_VALUE));\r\n"
+            + "            while (in.hasRemaining() && channel.read(in) >= 0) {\r\n"
+            + "                // until the buffer is full or the file's end is reached\r\n"
+            + "            }\r\n"
+            + "            in.flip();\r\n"
+            + "            if (in.remaining() < 12 || in.getInt() != WARM_START_MAGIC "
+            + "|| in.getLong() != WARM_START_LAYOUT) {\r\n"
+            + "                return properties;\r\n"
+            + "            }\r\n"
+            + "            final Map<String, Object> out = properties == null ? new HashMap<>() "
+            + ": new HashMap<>(properties);\r\n";
+    private static final String LOAD_END = "            return out;\r\n"
+            + "        } catch (final IOException | RuntimeException exc) {\r\n"
+            + "            // e.g. a truncated file, the component waits for the configuration\r\n"
+            + "            return properties;\r\n"
+            + "        }\r\n"
+            + "    }";
+    private static final String STORE_START = "\r\n"
+            + "\r\n"
+            + "    // serializes the accepted values, the file is replaced atomically (if supported)\r\n"
+            + "    private void storeWarmStart() {\r\n"
+            + "        final Path file = this.warmStartFile;\r\n"
+            + "        if (file == null) {\r\n"
+            + "            return;\r\n"
+            + "        }\r\n"
+            + "%s"
+            + "        try {\r\n"
+            + "            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();\r\n"
+            + "            try (DataOutputStream out = new DataOutputStream(bytes)) {\r\n"
+            + "                out.writeInt(WARM_START_MAGIC);\r\n"
+            + "                out.writeLong(WARM_START_LAYOUT);\r\n";
+    private static final String STORE_END = "            }\r\n"
+            + "            Files.createDirectories(file.getParent());\r\n"
+            + "            final Path temp = Files.createTempFile(file.getParent(), CONFIG_PID, \".tmp\");\r\n"
+            + "            try {\r\n"
+            + "                Files.write(temp, bytes.toByteArray());\r\n"
+            + "                try {\r\n"
+            + "                    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, "
+            + "StandardCopyOption.ATOMIC_MOVE);\r\n"
+            + "                } catch (final AtomicMoveNotSupportedException exc) {\r\n"
+            + "                    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);\r\n"
+            + "                }\r\n"
+            + "            } finally {\r\n"
+            + "                Files.deleteIfExists(temp);\r\n"
+            + "            }\r\n"
+            + "        } catch (final IOException | RuntimeException exc) {\r\n"
+            + "            // the cache is best effort, the component is configured anyway\r\n"
+            + "        }\r\n"
+            + "    }";
+    private static final String STRING_METHODS = "\r\n"
+            + "\r\n"
+            + "    private static void writeString(final DataOutputStream out, final String value) "
+            + "throws IOException {\r\n"
+            + "        if (value == null) {\r\n"
+            + "            out.writeInt(-1);\r\n"
+            + "        } else {\r\n"
+            + "            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);\r\n"
+            + "            out.writeInt(bytes.length);\r\n"
+            + "            out.write(bytes);\r\n"
+            + "        }\r\n"
+            + "    }\r\n"
+            + "\r\n"
+            + "    private static String readString(final ByteBuffer in) {\r\n"
+            + "        final int length = in.getInt();\r\n"
+            + "        if (length < 0) {\r\n"
+            + "            return null;\r\n"
+            + "        }\r\n"
+            + "        final byte[] bytes = new byte[length];\r\n"
+            + "        in.get(bytes);\r\n"
+            + "        return new String(bytes, StandardCharsets.UTF_8);\r\n"
+            + "    }";
+
+    private final OcdModel model;
+    private final boolean snapshot;
+    private final boolean validation;
+    private final boolean enums;
+    private final List<AdModel> attributes;
+
+    /** WarmStartManager constructor.
+     *
+     * @param model {@link OcdModel} the configuration
+     * @param snapshot boolean <code>true</code> if the component's values are held by a <code>Snapshot</code>
+     * @param validation boolean <code>true</code> if the component validates the values, i.e. only valid values are
+     *            stored
+     * @param enums boolean <code>true</code> if the attributes with options are held as enum constants */
+    public WarmStartManager(final OcdModel model, final boolean snapshot, final boolean validation,
+            final boolean enums) {
+        this.model = model;
+        this.snapshot = snapshot;
+        this.validation = validation;
+        this.enums = enums;
+        // the layout: all attributes of a serializable type, in declaration order, passwords are never stored
+        this.attributes = new ArrayList<>();
+        for (final AdModel attribute : model.getAttributes()) {
+            if (getElementType(attribute) != null && !PASSWORD.equals(attribute.getType())) {
+                this.attributes.add(attribute);
+            }
+        }
+    }
+
+    /** @param imports Set&lt;String> the imports of the generated component to add the warm start's imports to */
+    public void addImports(final Set<String> imports) {
+        imports.add("java.io.ByteArrayOutputStream");
+        imports.add("java.io.DataOutputStream");
+        imports.add("java.io.File");
+        imports.add("java.io.IOException");
+        imports.add("java.nio.ByteBuffer");
+        imports.add("java.nio.channels.FileChannel");
+        imports.add("java.nio.charset.StandardCharsets");
+        imports.add("java.nio.file.AtomicMoveNotSupportedException");
+        imports.add("java.nio.file.Files");
+        imports.add("java.nio.file.Path");
+        imports.add("java.nio.file.Paths");
+        imports.add("java.nio.file.StandardCopyOption");
+        imports.add("java.nio.file.StandardOpenOption");
+        imports.add("java.util.HashMap");
+    }
+
+    /** @return String the import of the <code>BundleContext</code>, placed with the other OSGi imports */
+    public String getFrameworkImport() {
+        return FRAMEWORK_IMPORT;
+    }
+
+    /** Appends the constants of the warm start, e.g. the hash of the layout, each terminated by a line break.
+     *
+     * @param out {@link Appendable}
+     * @throws IOException */
+    public void appendConstantDefs(final Appendable out) throws IOException {
+        // the layout changes with the attributes' ids and types, i.e. with the configuration's fingerprint
+        out.append(String.format(CONSTANTS, this.model.getFingerprint().substring(0, 16)));
+    }
+
+    /** Appends the field tracking the first activation, terminated by a line break.
+     *
+     * @param out {@link Appendable}
+     * @throws IOException */
+    public void appendFieldDef(final Appendable out) throws IOException {
+        out.append(FIELD);
+    }
+
+    /** Appends the start of the activate method, replacing the configuration by the last-known-good values on the
+     * first activation without ConfigAdmin's configuration.
+     *
+     * @param out {@link Appendable}
+     * @throws IOException */
+    public void appendActivateStart(final Appendable out) throws IOException {
+        out.append(ACTIVATE_START);
+    }
+
+    /** Appends the statements of the activate method storing the accepted values, terminated by a line break. An
+     * invalid configuration is not stored but keeps the last-known-good values, only a deleted configuration deletes
+     * them.
+     *
+     * @param out {@link Appendable}
+     * @throws IOException */
+    public void appendStore(final Appendable out) throws IOException {
+        out.append(String.format(STORE, this.validation ? STORE_VALID : STORE_ALL));
+    }
+
+    /** Appends the methods reading and writing the binary file.
+     *
+     * @param out {@link Appendable}
+     * @throws IOException */
+    public void appendMethods(final Appendable out) throws IOException {
+        out.append(FILE_METHOD);
+        out.append(LOAD_START);
+        for (final AdModel attribute : this.attributes) {
+            appendRead(out, attribute);
+        }
+        out.append(LOAD_END);
+        out.append(String.format(STORE_START, this.snapshot ? INDENT2 + "final Snapshot values = this.snapshot;\r\n"
+                : ""));
+        for (final AdModel attribute : this.attributes) {
+            appendWrite(out, attribute);
+        }
+        out.append(STORE_END);
+        if (hasStrings()) {
+            out.append(STRING_METHODS);
+        }
+    }
+
+    private boolean hasStrings() {
+        for (final AdModel attribute : this.attributes) {
+            if ("String".equals(getElementType(attribute))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void appendRead(final Appendable out, final AdModel attribute) throws IOException {
+        final String element = getElementType(attribute);
+        final String id = DefaultValues.quote(attribute.getId(), '"');
+        out.append(INDENT3).append("if (in.get() != 0) {\r\n");
+        if (attribute.isArray()) {
+            final String array = attribute.getTypeName().substring(0, attribute.getTypeName().length() - 2);
+            out.append(String.format("%sfinal %s[] values = new %s[in.getInt()];\r\n", INDENT4, array, array));
+            out.append(String.format("%sfor (int i = 0; i < values.length; i++) {\r\n", INDENT4));
+            out.append(String.format("%s    values[i] = %s;\r\n", INDENT4, IO.get(element)[1]));
+            out.append(String.format("%s}\r\n", INDENT4));
+            out.append(String.format("%sout.put(%s, values);\r\n", INDENT4, id));
+        } else {
+            out.append(String.format("%sout.put(%s, %s);\r\n", INDENT4, id, IO.get(element)[1]));
+        }
+        out.append(INDENT3).append("}\r\n");
+    }
+
+    private void appendWrite(final Appendable out, final AdModel attribute) throws IOException {
+        final String element = getElementType(attribute);
+        final String value = (this.snapshot ? "values." : "this.") + attribute.getFieldName();
+        if (attribute.isPrimitive()) {
+            out.append(String.format("%sout.writeBoolean(true);\r\n", INDENT4));
+            out.append(String.format("%sout.%s(%s);\r\n", INDENT4, IO.get(element)[0], value));
+            return;
+        }
+        out.append(String.format("%sout.writeBoolean(%s != null);\r\n", INDENT4, value));
+        out.append(String.format("%sif (%s != null) {\r\n", INDENT4, value));
+        if (attribute.isArray()) {
+            out.append(String.format("%s    out.writeInt(%s.length);\r\n", INDENT4, value));
+            out.append(String.format("%s    for (final %s element : %s) {\r\n", INDENT4,
+                    attribute.getTypeName().substring(0, attribute.getTypeName().length() - 2), value));
+            out.append(String.format("%s        %s;\r\n", INDENT4, write(element, "element")));
+            out.append(String.format("%s    }\r\n", INDENT4));
+        } else {
+            // enum constants are stored as their option values
+            out.append(String.format("%s    %s;\r\n", INDENT4,
+                    write(element, this.enums && EnumManager.isEnum(attribute) ? value + ".getValue()" : value)));
+        }
+        out.append(String.format("%s}\r\n", INDENT4));
+    }
+
+    private static String write(final String element, final String value) {
+        return "String".equals(element) ? String.format("writeString(out, %s)", value)
+                : String.format("out.%s(%s)", IO.get(element)[0], value);
+    }
+
+    // the (unboxed) element type, null if the attribute's type can't be serialized
+    private static String getElementType(final AdModel attribute) {
+        if (attribute.isString()) {
+            return "String";
+        }
+        final String type = attribute.getNormalizedType();
+        return IO.containsKey(type) ? type : UNBOXED.get(type);
+    }
+
+}
@@ -0,0 +1,196 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import javax.tools.StandardJavaFileManager;
+
+/** Watches source roots and regenerates the outputs of the changed configurations, e.g. during development.<br>
+ * The changes are debounced: they are collected until no further change occurred within the debounce time (e.g. while
+ * an IDE saves several files), then only the changed sources are processed. The compilations are partial (see
+ * {@link GeneratorOptions#PARTIAL}), i.e. the outputs of the other configurations are kept instead of being recreated.
+ * Each change is compiled by a new compilation task of the system compiler in this JVM (i.e. its classes are loaded
+ * and JIT-compiled once), only the file manager and its caches (e.g. of the opened class path archives) are reused
+ * across the tasks. The outputs of a deleted configuration are deleted. With a generator writing the outputs in place,
+ * the components generated beside the configurations are not sources, i.e. writing them doesn't trigger a
+ * regeneration.
+ *
+ * @author lbenno */
+public final class WatchGenerator implements Closeable {
+    private static final Logger LOG = Logger.getLogger(WatchGenerator.class.getName());
+
+    private static final List<String> PARTIAL = List.of("-A" + GeneratorOptions.PARTIAL + "=true");
+
+    private final BatchGenerator generator;
+    private final long debounce;
+    private final WatchService watcher;
+    private final StandardJavaFileManager fileManager;
+    private final Map<Path, Path> targets = new LinkedHashMap<>();
+    private final Map<WatchKey, Path> roots = new HashMap<>();
+
+    /** WatchGenerator constructor, registers the roots' directories.
+     *
+     * @param generator {@link BatchGenerator} the generator processing the changed sources
+     * @param roots List&lt;Path> the source roots to watch
+     * @param debounce long the time in milliseconds without further changes before the changes are processed
+     * @throws IOException */
+    public WatchGenerator(final BatchGenerator generator, final List<Path> roots, final long debounce)
+            throws IOException {
+        this.generator = generator;
+        this.debounce = Math.max(0, debounce);
+        this.watcher = FileSystems.getDefault().newWatchService();
+        this.fileManager = generator.createFileManager();
+        final List<Path> outDirs = generator.getTargets(roots);
+        for (int i = 0; i < roots.size(); i++) {
+            final Path root = roots.get(i).toAbsolutePath().normalize();
+            this.targets.put(root, outDirs.get(i));
+            register(root, root, null);
+        }
+    }
+
+    // registers the directory and its sub directories, the sources found are added to the changes
+    private void register(final Path root, final Path dir, final Set<Path> changes) throws IOException {
+        try (Stream<Path> dirs = Files.walk(dir)) {
+            for (final Path sub : (Iterable<Path>) dirs::iterator) {
+                if (Files.isDirectory(sub)) {
+                    this.roots.put(sub.register(this.watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), root);
+                } else if (changes != null && BatchGenerator.isConfigurationSource(sub)) {
+                    changes.add(sub);
+                }
+            }
+        }
+    }
+
+    /** Processes the changes until the thread is interrupted.
+     *
+     * @param listener Consumer&lt;BatchGenerator.Result> notified about the result of each regenerated root */
+    public void run(final Consumer<BatchGenerator.Result> listener) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                poll(Long.MAX_VALUE, TimeUnit.MILLISECONDS).forEach(listener);
+            }
+        } catch (final InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Waits for changes and processes them after the debounce time.
+     *
+     * @param timeout long the maximal time to wait for the first change
+     * @param unit {@link TimeUnit}
+     * @return List&lt;BatchGenerator.Result> the results of the roots containing changes, empty if nothing changed
+     * @throws InterruptedException */
+    public List<BatchGenerator.Result> poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+        WatchKey key = this.watcher.poll(timeout, unit);
+        if (key == null) {
+            return List.of();
+        }
+        final long start = System.nanoTime();
+        final Map<Path, Set<Path>> changes = new LinkedHashMap<>();
+        final Set<Path> overflows = new TreeSet<>();
+        while (key != null) {
+            collect(key, changes, overflows);
+            key = this.watcher.poll(this.debounce, TimeUnit.MILLISECONDS);
+        }
+
+        final List<BatchGenerator.Result> out = new ArrayList<>();
+        for (final Path root : this.targets.keySet()) {
+            if (overflows.contains(root)) {
+                // events have been lost, the whole root is processed
+                out.add(this.generator.generate(root, this.targets.get(root)));
+            } else if (changes.containsKey(root)) {
+                out.add(process(root, changes.get(root), start));
+            }
+        }
+        return out;
+    }
+
+    private void collect(final WatchKey key, final Map<Path, Set<Path>> changes, final Set<Path> overflows) {
+        final Path root = this.roots.get(key);
+        final Path dir = (Path) key.watchable();
+        for (final WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflows.add(root);
+                continue;
+            }
+            final Path file = dir.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(file)) {
+                try {
+                    register(root, file, changes.computeIfAbsent(root, r -> new TreeSet<>()));
+                } catch (final IOException exc) {
+                    LOG.log(Level.WARNING, "Unable to watch the directory " + file, exc);
+                }
+            } else if (BatchGenerator.isConfigurationSource(file)) {
+                // other files, e.g. the components generated in place, don't trigger a regeneration
+                changes.computeIfAbsent(root, r -> new TreeSet<>()).add(file);
+            }
+        }
+        if (!key.reset()) {
+            // the directory has been deleted
+            this.roots.remove(key);
+        }
+    }
+
+    private BatchGenerator.Result process(final Path root, final Set<Path> files, final long start) {
+        final Path target = this.targets.get(root);
+        final List<File> sources = new ArrayList<>();
+        for (final Path file : files) {
+            if (Files.isRegularFile(file)) {
+                sources.add(file.toFile());
+            } else {
+                deleteOutputs(root, this.generator.getXmlDir(root, target), this.generator.getSrcDir(root, target),
+                        file);
+            }
+        }
+        return this.generator.generate(root, target, sources, this.fileManager, PARTIAL, start);
+    }
+
+    // deletes the metatype XML, the component and the provider generated for the deleted source
+    private static void deleteOutputs(final Path root, final Path xmlDir, final Path generated, final Path file) {
+        final String fileName = file.getFileName().toString();
+        final String className = fileName.substring(0, fileName.length() - Constants.JAVA_EXT.length());
+        final Path pkg = root.relativize(file).getParent();
+        final Path srcDir = pkg == null ? generated : generated.resolve(pkg);
+        try {
+            Files.deleteIfExists(xmlDir.resolve(NioHandler.getXmlName(className)));
+            Files.deleteIfExists(srcDir.resolve(Constants.TARGET_CLASS_PREFIX + className + Constants.JAVA_EXT));
+            Files.deleteIfExists(srcDir.resolve(className + Constants.PROVIDER_CLASS_SUFFIX + Constants.JAVA_EXT));
+        } catch (final IOException exc) {
+            LOG.log(Level.WARNING, "Unable to delete the outputs of " + file, exc);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            this.watcher.close();
+        } finally {
+            this.fileManager.close();
+        }
+    }
+
+}
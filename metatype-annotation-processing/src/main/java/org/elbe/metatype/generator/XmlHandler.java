@@ -3,8 +3,9 @@
  */
 package org.elbe.metatype.generator;
 
-import java.io.File;
-import java.util.Set;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.function.BiConsumer;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
@@ -15,7 +16,6 @@ import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
-import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
@@ -23,7 +23,7 @@ import org.w3c.dom.Element;
  *
  * @author lbenno */
 public class XmlHandler {
-    private static final String NS = "http://www.osgi.org/xmlns/metatype/v1.4.0";
+    static final String NS = "http://www.osgi.org/xmlns/metatype/v1.4.0";
 
     private final Document doc;
 
@@ -34,46 +34,84 @@ public class XmlHandler {
         this.doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
     }
 
-    /** Writes the specified XML to the passed location.
+    /** Writes the specified XML to the passed stream.
      *
      * @param doc {@link Document}
-     * @param parent File the location in the file system
-     * @param name String the file name
-     * @return boolean
+     * @param out {@link OutputStream} the stream, is not closed
      * @throws TransformerException */
-    public boolean write(final Document doc, final File parent, final String name) throws TransformerException {
+    public void write(final Document doc, final OutputStream out) throws TransformerException {
         final Transformer transformer = TransformerFactory.newInstance().newTransformer();
         transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-        transformer.transform(new DOMSource(doc), new StreamResult(createTarget(parent, name)));
-        return true;
-    }
-
-    private File createTarget(final File parent, final String name) {
-        return new File(parent, String.format("%s.xml", name.toLowerCase()));
+        transformer.transform(new DOMSource(doc), new StreamResult(out));
     }
 
     /** Processes the passed annotations and returns the XML.
      *
-     * @param ocdAnnotation {@link ObjectClassDefinition}
-     * @param methods Set&lt;javax.lang.model.element.Element> the annotated methods
-     * @param className String the name of the configuration class/interface
+     * @param data {@link AnnotationManager} the configuration class/interface
      * @return {@link Document} the created XML */
-    public Document process(final ObjectClassDefinition ocdAnnotation,
-            final Set<? extends javax.lang.model.element.Element> methods, final AnnotationManager data) {
+    public Document process(final AnnotationManager data) {
+        final OcdModel model = data.getModel();
         final Element root = this.doc.createElementNS(NS, "metatype:MetaData");
         this.doc.appendChild(root);
 
         final Element ocd = this.doc.createElement("OCD");
         root.appendChild(ocd);
-        ocd.setAttribute("id", ocdAnnotation.id());
-        ocd.setAttribute("name", ocdAnnotation.name());
-        ocd.setAttribute("description", ocdAnnotation.description());
+        ocd.setAttribute("id", model.getId());
+        ocd.setAttribute("name", model.getName());
+        ocd.setAttribute("description", model.getDescription());
 
-        data.processAttributeDefinitions(this.doc, ocd);
-        addDesignate(root, ocdAnnotation.id());
+        processAttributeDefinitions(model.getAttributes(), this.doc, ocd);
+        addDesignate(root, model.getId());
         return this.doc;
     }
 
+    /** Creates the <code>AD</code> elements of the passed attribute definitions.
+     *
+     * @param attributes List&lt;AdModel> the attribute definitions
+     * @param doc {@link Document}
+     * @param parent {@link Element} the parent to append the created <code>AD</code> elements */
+    public static void processAttributeDefinitions(final List<AdModel> attributes, final Document doc,
+            final Element parent) {
+        for (final AdModel attribute : attributes) {
+            final Element ad = doc.createElement("AD");
+            parent.appendChild(ad);
+            setAttributes(attribute, ad::setAttribute);
+            for (final AdModel.OptionModel option : attribute.getOptions()) {
+                final Element opt = doc.createElement("Option");
+                ad.appendChild(opt);
+                opt.setAttribute("value", option.getValue());
+                opt.setAttribute("label", option.getLabel());
+            }
+        }
+    }
+
+    /** Passes the XML attributes of the specified attribute definition's <code>AD</code> element to the consumer.
+     *
+     * @param attribute {@link AdModel}
+     * @param ad BiConsumer&lt;String, String> the consumer of the XML attributes' names and values */
+    protected static void setAttributes(final AdModel attribute, final BiConsumer<String, String> ad) {
+        ad.accept("id", attribute.getId());
+        setAttributeChecked(ad, "name", attribute.getName());
+        setAttributeChecked(ad, "description", attribute.getDescription());
+        setAttributeChecked(ad, "default", attribute.getDefaultValue());
+        setAttributeChecked(ad, "min", attribute.getMin());
+        setAttributeChecked(ad, "max", attribute.getMax());
+        if (!attribute.isRequired()) {
+            setAttributeChecked(ad, "required", "false");
+        }
+        if (attribute.getCardinality() != 0) {
+            ad.accept("cardinality", String.valueOf(Math.abs(attribute.getCardinality())));
+        }
+        ad.accept("type", attribute.getType());
+    }
+
+    private static void setAttributeChecked(final BiConsumer<String, String> ad, final String name,
+            final String value) {
+        if (value != null && !value.isBlank()) {
+            ad.accept(name, value);
+        }
+    }
+
     private void addDesignate(final Element root, final String id) {
         final Element designate = this.doc.createElement("Designate");
         root.appendChild(designate);
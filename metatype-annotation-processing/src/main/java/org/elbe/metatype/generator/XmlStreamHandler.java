@@ -0,0 +1,69 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/** This class writes the XML document <code>configuration.xml</code> straight to a stream, i.e. without building a
+ * DOM and without a <code>Transformer</code>.<br>
+ * The output is identical to the one created by {@link XmlHandler}.
+ *
+ * @author lbenno */
+public class XmlStreamHandler {
+
+    /** Writes the XML of the specified configuration to the passed stream. The stream is flushed but not closed.
+     *
+     * @param data {@link AnnotationManager} the configuration class/interface
+     * @param out {@link OutputStream}
+     * @throws IOException */
+    public void write(final AnnotationManager data, final OutputStream out) throws IOException {
+        write(data, out, System.lineSeparator());
+    }
+
+    /** Writes the XML of the specified configuration to the passed stream. The stream is flushed but not closed.
+     *
+     * @param data {@link AnnotationManager} the configuration class/interface
+     * @param out {@link OutputStream}
+     * @param lineSeparator String the line separator to use, e.g. <code>\n</code> for a platform independent output
+     * @throws IOException */
+    public void write(final AnnotationManager data, final OutputStream out, final String lineSeparator)
+            throws IOException {
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        final XmlWriter xml = new XmlWriter(writer, lineSeparator);
+        final OcdModel model = data.getModel();
+
+        xml.startDocument();
+        xml.startElement("metatype:MetaData");
+        xml.attribute("xmlns:metatype", XmlHandler.NS);
+
+        xml.startElement("OCD");
+        xml.attribute("id", model.getId());
+        xml.attribute("name", model.getName());
+        xml.attribute("description", model.getDescription());
+        for (final AdModel attribute : model.getAttributes()) {
+            xml.startElement("AD");
+            XmlHandler.setAttributes(attribute, xml::attribute);
+            for (final AdModel.OptionModel option : attribute.getOptions()) {
+                xml.startElement("Option");
+                xml.attribute("value", option.getValue());
+                xml.attribute("label", option.getLabel());
+                xml.endElement();
+            }
+            xml.endElement();
+        }
+        xml.endElement();
+
+        xml.startElement("Designate");
+        xml.attribute("pid", model.getId());
+        xml.startElement("Object");
+        xml.attribute("ocdref", model.getId());
+        xml.endDocument();
+    }
+
+}
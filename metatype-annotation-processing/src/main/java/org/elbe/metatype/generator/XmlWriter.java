@@ -0,0 +1,161 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Minimal streaming XML writer producing the same output as the platform's <code>Transformer</code> does for a DOM
+ * without text nodes (indentation of 4 spaces, attributes sorted by name, empty elements closed with
+ * <code>/&gt;</code>).<br>
+ * Only the attributes of the actual element are buffered, i.e. the memory used is independent of the document's
+ * size.
+ *
+ * @author lbenno */
+public class XmlWriter {
+    private static final String DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>";
+    private static final String INDENT = "    ";
+
+    private final Writer out;
+    private final String lineSeparator;
+    private final Deque<String> elements = new ArrayDeque<>();
+    private final Map<String, String> attributes = new TreeMap<>();
+    private boolean pending = false;
+
+    /** XmlWriter constructor.
+     *
+     * @param out {@link Writer} the target, has to encode the characters as UTF-8 */
+    public XmlWriter(final Writer out) {
+        this(out, System.lineSeparator());
+    }
+
+    /** XmlWriter constructor.
+     *
+     * @param out {@link Writer} the target, has to encode the characters as UTF-8
+     * @param lineSeparator String the line separator to use */
+    public XmlWriter(final Writer out, final String lineSeparator) {
+        this.out = out;
+        this.lineSeparator = lineSeparator;
+    }
+
+    /** Writes the XML declaration.
+     *
+     * @throws IOException */
+    public void startDocument() throws IOException {
+        this.out.write(DECLARATION);
+        this.out.write(this.lineSeparator);
+    }
+
+    /** Starts an element. The element's attributes have to be added before any child element is started.
+     *
+     * @param name String the element's name
+     * @throws IOException */
+    public void startElement(final String name) throws IOException {
+        closeStartTag(false);
+        this.elements.push(name);
+        this.pending = true;
+    }
+
+    /** Adds an attribute to the element just started.
+     *
+     * @param name String
+     * @param value String */
+    public void attribute(final String name, final String value) {
+        this.attributes.put(name, value);
+    }
+
+    /** Ends the actual element.
+     *
+     * @throws IOException */
+    public void endElement() throws IOException {
+        if (this.pending) {
+            closeStartTag(true);
+            this.elements.pop();
+        } else {
+            final String name = this.elements.pop();
+            indent(this.elements.size());
+            this.out.write("</");
+            this.out.write(name);
+            this.out.write('>');
+            this.out.write(this.lineSeparator);
+        }
+    }
+
+    /** Ends all open elements and flushes the target.
+     *
+     * @throws IOException */
+    public void endDocument() throws IOException {
+        while (!this.elements.isEmpty()) {
+            endElement();
+        }
+        this.out.flush();
+    }
+
+    private void closeStartTag(final boolean empty) throws IOException {
+        if (!this.pending) {
+            return;
+        }
+        indent(this.elements.size() - 1);
+        this.out.write('<');
+        this.out.write(this.elements.peek());
+        for (final Map.Entry<String, String> attribute : this.attributes.entrySet()) {
+            this.out.write(' ');
+            this.out.write(attribute.getKey());
+            this.out.write("=\"");
+            escape(attribute.getValue());
+            this.out.write('"');
+        }
+        this.out.write(empty ? "/>" : ">");
+        this.out.write(this.lineSeparator);
+        this.attributes.clear();
+        this.pending = false;
+    }
+
+    private void indent(final int depth) throws IOException {
+        for (int i = 0; i < depth; i++) {
+            this.out.write(INDENT);
+        }
+    }
+
+    private void escape(final String value) throws IOException {
+        final int length = value.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            final String replacement;
+            if (c == '&') {
+                replacement = "&amp;";
+            } else if (c == '<') {
+                replacement = "&lt;";
+            } else if (c == '>') {
+                replacement = "&gt;";
+            } else if (c == '"') {
+                replacement = "&quot;";
+            } else if (c < ' ') {
+                replacement = "&#" + (int) c + ";";
+            } else if (Character.isSurrogate(c)) {
+                if (!Character.isHighSurrogate(c) || i + 1 >= length
+                        || !Character.isLowSurrogate(value.charAt(i + 1))) {
+                    throw new IOException(String.format("Invalid UTF-16 surrogate detected: %x", (int) c));
+                }
+                replacement = "&#" + Character.toCodePoint(c, value.charAt(i + 1)) + ";";
+                this.out.write(value, start, i - start);
+                this.out.write(replacement);
+                start = ++i + 1;
+                continue;
+            } else {
+                continue;
+            }
+            this.out.write(value, start, i - start);
+            this.out.write(replacement);
+            start = i + 1;
+        }
+        this.out.write(value, start, length - start);
+    }
+
+}
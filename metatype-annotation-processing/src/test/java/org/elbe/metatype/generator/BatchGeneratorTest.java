@@ -0,0 +1,204 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.tools.ToolProvider;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * @author lbenno
+ *
+ */
+class BatchGeneratorTest {
+    static final String CONFIGURATION = "package org.elbe.%1$s;\n"
+            + "\n"
+            + "import org.osgi.service.metatype.annotations.AttributeDefinition;\n"
+            + "import org.osgi.service.metatype.annotations.ObjectClassDefinition;\n"
+            + "\n"
+            + "@ObjectClassDefinition(id = \"org.elbe.%1$s\", name = \"%1$s\")\n"
+            + "public @interface %2$s {\n"
+            + "    @AttributeDefinition(name = \"Port\", defaultValue = \"8080\")\n"
+            + "    int port();\n"
+            + "}\n";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void generate() throws Exception {
+        final Path first = createRoot("first", "src/main/java", "Configuration");
+        final Path second = createRoot("second", "src/main/java", "Configuration");
+        final Path other = createRoot("other", "sources", "Other");
+
+        final BatchGenerator generator = new BatchGenerator(this.dir.resolve("out"), getClasspath(), List.of(), 2);
+        final List<BatchGenerator.Result> results = generator.generate(List.of(first, second, other));
+
+        assertEquals(3, results.size());
+        assertOutputs(results.get(0), "first", "configuration.xml", "org/elbe/first/AppConfiguration.java");
+        assertOutputs(results.get(1), "second", "configuration.xml", "org/elbe/second/AppConfiguration.java");
+        assertOutputs(results.get(2), "sources", "other.xml", "org/elbe/other/AppOther.java");
+        assertTrue(Files.readString(results.get(1).getXmlDir().resolve("configuration.xml"))
+                .contains("id=\"org.elbe.second\""));
+    }
+
+    @Test
+    void generate_sharedXmlDir() throws Exception {
+        final Path xml = this.dir.resolve("xml");
+        final Path first = createRoot("first", "src/main/java", "Configuration");
+        final Path other = createRoot("other", "src/main/java", "Other");
+        final List<BatchGenerator.Result> results = new BatchGenerator(this.dir.resolve("out"), getClasspath(),
+                List.of("-A" + GeneratorOptions.XML_DIR + "=" + xml), 2).generate(List.of(first, other));
+        for (final BatchGenerator.Result result : results) {
+            assertTrue(result.isSuccess(), () -> String.join("\n", result.getDiagnostics()));
+        }
+        assertTrue(Files.isRegularFile(xml.resolve("configuration.xml")));
+        assertTrue(Files.isRegularFile(xml.resolve("other.xml")));
+
+        // the first module is renamed and built with other settings, i.e. its cache is discarded
+        final Path pkg = first.resolve("org/elbe/first");
+        Files.delete(pkg.resolve("Configuration.java"));
+        Files.writeString(pkg.resolve("Renamed.java"), String.format(CONFIGURATION, "first", "Renamed"));
+        final BatchGenerator.Result result = new BatchGenerator(this.dir.resolve("out"), getClasspath(),
+                List.of("-A" + GeneratorOptions.XML_DIR + "=" + xml, "-A" + GeneratorOptions.SNAPSHOT + "=true"), 1)
+                        .generate(List.of(first)).get(0);
+        assertTrue(result.isSuccess(), () -> String.join("\n", result.getDiagnostics()));
+        assertTrue(Files.isRegularFile(xml.resolve("renamed.xml")));
+        // the module's stale output is deleted, the other module's output is kept
+        assertFalse(Files.exists(xml.resolve("configuration.xml")));
+        assertTrue(Files.isRegularFile(xml.resolve("other.xml")));
+    }
+
+    @Test
+    void generate_writeFailure() throws Exception {
+        // the XML directory can't be created, i.e. the outputs are missing
+        final Path xml = Files.writeString(this.dir.resolve("xml"), "");
+        final Path root = createRoot("first", "src/main/java", "Configuration");
+        final BatchGenerator.Result result = new BatchGenerator(this.dir.resolve("out"), getClasspath(),
+                List.of("-A" + GeneratorOptions.XML_DIR + "=" + xml), 1).generate(List.of(root)).get(0);
+        assertFalse(result.isSuccess());
+        assertTrue(result.getDiagnostics().stream().anyMatch(d -> d.startsWith("error: ")
+                && d.contains("Configuration.java") && d.contains("Unable to write the generated files!")),
+                () -> String.join("\n", result.getDiagnostics()));
+    }
+
+    @Test
+    void run_invalid() {
+        assertEquals(2, BatchGenerator.run(new String[0], System.out, System.err));
+        assertEquals(2, BatchGenerator.run(new String[] { "-Ametatype.xml.dir=xml", this.dir.toString() },
+                System.out, System.err));
+        assertEquals(2, BatchGenerator.run(new String[] { "--threads" }, System.out, System.err));
+        assertEquals(2, BatchGenerator.run(new String[] { "--in-place", "--xml-dir",
+                this.dir.resolve("xml").toAbsolutePath().toString(), this.dir.toString() }, System.out, System.err));
+    }
+
+    @Test
+    void run_inPlace() throws Exception {
+        final Path root = createRoot("module", "src/main/java", "Configuration");
+        assertEquals(0, BatchGenerator.run(new String[] { "--out", this.dir.resolve("out").toString(), "--classpath",
+                getClasspath(), "--in-place", "--xml-dir", "xml", root.toString() }, System.out, System.err));
+        assertTrue(Files.isRegularFile(this.dir.resolve("module/xml/configuration.xml")));
+        assertTrue(Files.isRegularFile(root.resolve("org/elbe/module/AppConfiguration.java")));
+        assertTrue(Files.isRegularFile(this.dir.resolve("out/module/metatype-fingerprints.properties")));
+    }
+
+    @Test
+    void listSources() throws IOException {
+        final Path root = createRoot("sources", "src/main/java", "Configuration");
+        final Path pkg = root.resolve("org/elbe/sources");
+        // a component generated beside its configuration is not a source
+        Files.writeString(pkg.resolve("AppConfiguration.java"), "package org.elbe.sources;");
+        Files.writeString(pkg.resolve("ConfigurationMetaTypeProvider.java"), "package org.elbe.sources;");
+        Files.writeString(pkg.resolve("Application.java"), "package org.elbe.sources;");
+        // neither is a generated component left behind by a deleted configuration
+        Files.writeString(pkg.resolve("AppDeleted.java"), "package org.elbe.sources;\n\n/** Generated */\n");
+
+        final List<Path> sources = BatchGenerator.listSources(root).stream().map(File::toPath)
+                .collect(Collectors.toList());
+        assertEquals(List.of(pkg.resolve("Application.java"), pkg.resolve("Configuration.java")), sources);
+    }
+
+    private void assertOutputs(final BatchGenerator.Result result, final String name, final String xml,
+            final String source) {
+        assertTrue(result.isSuccess(), () -> String.join("\n", result.getDiagnostics()));
+        assertEquals(name, result.getTarget().getFileName().toString());
+        assertTrue(Files.isRegularFile(result.getXmlDir().resolve(xml)));
+        assertTrue(Files.isRegularFile(result.getSrcDir().resolve(source)));
+        assertFalse(result.getDiagnostics().stream().anyMatch(d -> d.startsWith("error")));
+    }
+
+    private Path createRoot(final String module, final String root, final String className) throws IOException {
+        final Path out = this.dir.resolve(module).resolve(root);
+        final Path pkg = out.resolve("org").resolve("elbe").resolve(module);
+        Files.createDirectories(pkg);
+        Files.write(pkg.resolve(className + Constants.JAVA_EXT),
+                String.format(CONFIGURATION, module, className).getBytes(StandardCharsets.UTF_8));
+        return out;
+    }
+
+    // the test's class path may be a manifest-only jar, the annotations are passed explicitly
+    static String getClasspath() throws URISyntaxException {
+        return getLocation(ObjectClassDefinition.class) + File.pathSeparator + getLocation(Component.class);
+    }
+
+    static String getLocation(final Class<?> type) throws URISyntaxException {
+        return Paths.get(type.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+    }
+
+    /** Generates the component of the passed configuration, compiles both and returns the loader of the compiled
+     * classes. The caller has to close the loader.
+     *
+     * @param out Path the batch generator's output directory
+     * @param root Path the source root containing the configuration
+     * @param configuration String the qualified name of the configuration, e.g. <code>org.elbe.x.Configuration</code>
+     * @param classpath String the class path of the generation and the compilation
+     * @param options List&lt;String> the generator's options
+     * @return {@link URLClassLoader} the loader of the configuration and its component */
+    static URLClassLoader compile(final Path out, final Path root, final String configuration,
+            final String classpath, final List<String> options) throws Exception {
+        final BatchGenerator.Result result = new BatchGenerator(out, classpath, options, 1).generate(List.of(root))
+                .get(0);
+        assertTrue(result.isSuccess(), () -> String.join("\n", result.getDiagnostics()));
+
+        final Path classes = Files.createDirectories(result.getTarget().resolve("test-classes"));
+        assertEquals(0, ToolProvider.getSystemJavaCompiler().run(null, null, null, "-proc:none", "-d",
+                classes.toString(), "-classpath", classpath,
+                root.resolve(configuration.replace('.', '/') + Constants.JAVA_EXT).toString(),
+                result.getSrcDir().resolve(getComponent(configuration).replace('.', '/') + Constants.JAVA_EXT)
+                        .toString()));
+        return new URLClassLoader(new URL[] { classes.toUri().toURL() }, BatchGeneratorTest.class.getClassLoader());
+    }
+
+    /** @param loader ClassLoader the loader returned by {@link #compile(Path, Path, String, String, List)}
+     * @param configuration String the qualified name of the configuration
+     * @return Object a new instance of the configuration's component */
+    static Object newComponent(final ClassLoader loader, final String configuration) throws Exception {
+        return loader.loadClass(getComponent(configuration)).getConstructor().newInstance();
+    }
+
+    private static String getComponent(final String configuration) {
+        final int index = configuration.lastIndexOf('.') + 1;
+        return configuration.substring(0, index) + Constants.TARGET_CLASS_PREFIX + configuration.substring(index);
+    }
+
+}
@@ -0,0 +1,95 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.osgi.service.metatype.MetaTypeProvider;
+
+/**
+ * @author lbenno
+ *
+ */
+class CanonicalOutputTest {
+    private static final String CONFIGURATION = "package org.elbe.canonical;\n"
+            + "\n"
+            + "import org.osgi.service.metatype.annotations.AttributeDefinition;\n"
+            + "import org.osgi.service.metatype.annotations.ObjectClassDefinition;\n"
+            + "import org.osgi.service.metatype.annotations.Option;\n"
+            + "\n"
+            + "@ObjectClassDefinition(id = \"org.elbe.canonical\", name = \"Canonical\")\n"
+            + "public @interface Configuration {\n"
+            + "%s"
+            + "}\n";
+    private static final String PORT = "    @AttributeDefinition(name = \"Port\", defaultValue = \"8080\")\n"
+            + "    int port();\n";
+    private static final String HOST = "    @AttributeDefinition(name = \"Host\", defaultValue = \"localhost\")\n"
+            + "    String host();\n";
+    private static final String MODE = "    @AttributeDefinition(name = \"Mode\", options = {\n"
+            + "            @Option(label = \"Fast\", value = \"fast\"),\n"
+            + "            @Option(label = \"Safe\", value = \"safe\") })\n"
+            + "    String mode();\n";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void generate() throws Exception {
+        final List<String> options = List.of("-A" + GeneratorOptions.CANONICAL + "=true",
+                "-A" + GeneratorOptions.PROVIDER + "=true", "-A" + GeneratorOptions.XML_BACKEND + "=dom");
+        final BatchGenerator.Result declared = generate("declared", PORT + HOST + MODE, options);
+        final BatchGenerator.Result reordered = generate("reordered", MODE + PORT + HOST, options);
+
+        // the declaration order doesn't matter
+        for (final String name : new String[] { "org/elbe/canonical/AppConfiguration.java",
+                "org/elbe/canonical/ConfigurationMetaTypeProvider.java" }) {
+            final byte[] source = Files.readAllBytes(declared.getSrcDir().resolve(name));
+            assertArrayEquals(source, Files.readAllBytes(reordered.getSrcDir().resolve(name)), name);
+            assertFalse(new String(source, StandardCharsets.UTF_8).contains("\r"), name);
+        }
+        final byte[] xml = Files.readAllBytes(declared.getXmlDir().resolve("configuration.xml"));
+        assertArrayEquals(xml, Files.readAllBytes(reordered.getXmlDir().resolve("configuration.xml")));
+        final String content = new String(xml, StandardCharsets.UTF_8);
+        assertFalse(content.contains("\r"));
+        assertTrue(content.indexOf("id=\"host\"") < content.indexOf("id=\"mode\"")
+                && content.indexOf("id=\"mode\"") < content.indexOf("id=\"port\""), content);
+        assertTrue(content.contains("\n        <AD "), content);
+    }
+
+    @Test
+    void generate_default() throws Exception {
+        // without the option, the attributes keep the declaration order
+        final BatchGenerator.Result result = generate("default", MODE + PORT + HOST, List.of());
+        final String content = Files.readString(result.getXmlDir().resolve("configuration.xml"));
+        assertTrue(content.indexOf("id=\"mode\"") < content.indexOf("id=\"port\"")
+                && content.indexOf("id=\"port\"") < content.indexOf("id=\"host\""), content);
+    }
+
+    private BatchGenerator.Result generate(final String name, final String methods, final List<String> options)
+            throws Exception {
+        final Path root = this.dir.resolve(name).resolve("src/main/java");
+        final Path pkg = root.resolve("org/elbe/canonical");
+        Files.createDirectories(pkg);
+        Files.writeString(pkg.resolve("Configuration.java"), String.format(CONFIGURATION, methods));
+        final BatchGenerator.Result result = new BatchGenerator(this.dir.resolve("out-" + name),
+                BatchGeneratorTest.getClasspath() + File.pathSeparator
+                        + BatchGeneratorTest.getLocation(MetaTypeProvider.class),
+                options, 1).generate(List.of(root)).get(0);
+        assertTrue(result.isSuccess(), () -> String.join("\n", result.getDiagnostics()));
+        assertEquals(1, result.getSources());
+        return result;
+    }
+
+}
@@ -0,0 +1,60 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author lbenno
+ *
+ */
+class DefaultValuesTest {
+
+    @Test
+    void toLiteral() {
+        assertEquals("8080", DefaultValues.toLiteral("int", new String[] { " 8080 " }));
+        assertEquals("2500L", DefaultValues.toLiteral("long", new String[] { "2500" }));
+        assertEquals("true", DefaultValues.toLiteral("boolean", new String[] { "TRUE" }));
+        assertEquals("0.5", DefaultValues.toLiteral("double", new String[] { ".5" }));
+        assertEquals("Float.NEGATIVE_INFINITY", DefaultValues.toLiteral("float", new String[] { "-Infinity" }));
+        assertEquals("'\\''", DefaultValues.toLiteral("char", new String[] { "'" }));
+        assertEquals("\"a\\u00e9\\\"\\n\\001\"", DefaultValues.toLiteral("String", new String[] { "aé\"\n\u0001" }));
+    }
+
+    @Test
+    void toLiteral_Array() {
+        assertEquals("{ 1, -2, 3 }", DefaultValues.toLiteral("int[]", new String[] { "1", "-2", "3" }));
+        assertEquals("{ \"a\", \"b\" }", DefaultValues.toLiteral("String[]", new String[] { "a", "b" }));
+    }
+
+    @Test
+    void toLiteral_None() {
+        assertNull(DefaultValues.toLiteral("int", new String[0]));
+        assertNull(DefaultValues.toLiteral("java.lang.Class<?>", new String[] { "java.lang.String" }));
+    }
+
+    @Test
+    void toLiteral_Malformed() {
+        assertThrows(IllegalArgumentException.class, () -> DefaultValues.toLiteral("int", new String[] { "abc" }));
+        assertThrows(IllegalArgumentException.class, () -> DefaultValues.toLiteral("byte", new String[] { "128" }));
+        assertThrows(IllegalArgumentException.class, () -> DefaultValues.toLiteral("boolean", new String[] { "yes" }));
+        assertThrows(IllegalArgumentException.class, () -> DefaultValues.toLiteral("char", new String[] { "ab" }));
+        assertThrows(IllegalArgumentException.class, () -> DefaultValues.toLiteral("int", new String[] { "1", "2" }));
+    }
+
+    @Test
+    void toBoundLiteral() {
+        assertEquals("65535", DefaultValues.toBoundLiteral("int", " 65535"));
+        assertEquals("-1L", DefaultValues.toBoundLiteral("long", "-1"));
+        assertEquals("1.0F", DefaultValues.toBoundLiteral("float", "1"));
+        final IllegalArgumentException exc = assertThrows(IllegalArgumentException.class,
+                () -> DefaultValues.toBoundLiteral("short", "1.5"));
+        assertEquals("The bound \"1.5\" is not a valid Short.", exc.getMessage());
+    }
+
+}
@@ -0,0 +1,135 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.elbe.metatype.annotations.Parsed;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * @author lbenno
+ *
+ */
+class DerivedManagerTest {
+    private static final String TYPE = "org.elbe.derived.Configuration";
+    private static final String CONFIGURATION = "package org.elbe.derived;\n"
+            + "\n"
+            + "import org.elbe.metatype.annotations.Parsed;\n"
+            + "import org.osgi.service.metatype.annotations.AttributeDefinition;\n"
+            + "import org.osgi.service.metatype.annotations.ObjectClassDefinition;\n"
+            + "\n"
+            + "@ObjectClassDefinition(id = \"org.elbe.derived\", name = \"Derived\")\n"
+            + "public @interface Configuration {\n"
+            + "    @AttributeDefinition(name = \"Filter\", defaultValue = \"%s\")\n"
+            + "    @Parsed(Parsed.Type.PATTERN)\n"
+            + "    String filter();\n"
+            + "\n"
+            + "    @AttributeDefinition(name = \"Endpoint\", required = false)\n"
+            + "    @Parsed(Parsed.Type.URI)\n"
+            + "    String endpoint();\n"
+            + "\n"
+            + "    @AttributeDefinition(name = \"Timeout\", defaultValue = \"PT30S\")\n"
+            + "    @Parsed(Parsed.Type.DURATION)\n"
+            + "    String timeout();\n"
+            + "\n"
+            + "    @AttributeDefinition(name = \"Encoding\", defaultValue = \"UTF-8\")\n"
+            + "    @Parsed(Parsed.Type.CHARSET)\n"
+            + "    String encoding();\n"
+            + "}\n";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void activate() throws Exception {
+        for (final String snapshot : new String[] { "false", "true" }) {
+            try (URLClassLoader loader = createLoader(snapshot)) {
+                final Object component = BatchGeneratorTest.newComponent(loader, TYPE);
+                assertEquals("[a-z]+", ((Pattern) get(component, "getFilterPattern")).pattern());
+                assertNull(get(component, "getEndpointUri"));
+                assertEquals(Duration.ofSeconds(30), get(component, "getTimeoutDuration"));
+
+                activate(component, Map.of("filter", "\\d+", "endpoint", "http://localhost:8080/",
+                        "timeout", "PT1M", "encoding", "ISO-8859-1"));
+                final Pattern filter = (Pattern) get(component, "getFilterPattern");
+                assertTrue(filter.matcher("42").matches());
+                // parsed once per configuration
+                assertSame(filter, get(component, "getFilterPattern"));
+                assertEquals(URI.create("http://localhost:8080/"), get(component, "getEndpointUri"));
+                assertEquals(Duration.ofMinutes(1), get(component, "getTimeoutDuration"));
+                assertEquals(StandardCharsets.ISO_8859_1, get(component, "getEncodingCharset"));
+                assertEquals("PT1M", get(component, "getTimeout"));
+
+                // values that can't be parsed fall back to the parsed defaults
+                activate(component, Map.of("filter", "[", "endpoint", "a b", "timeout", "30s", "encoding", "none"));
+                assertEquals("[a-z]+", ((Pattern) get(component, "getFilterPattern")).pattern());
+                assertNull(get(component, "getEndpointUri"));
+                assertEquals(Duration.ofSeconds(30), get(component, "getTimeoutDuration"));
+                assertEquals(StandardCharsets.UTF_8, get(component, "getEncodingCharset"));
+            }
+        }
+    }
+
+    @Test
+    void generate_invalidDefault() throws Exception {
+        final BatchGenerator.Result result = generate("invalid", "[a-z", List.of());
+        assertFalse(result.isSuccess());
+        final String diagnostics = String.join("\n", result.getDiagnostics());
+        assertTrue(diagnostics.contains("The default value \"[a-z\" is not a valid Pattern."), diagnostics);
+    }
+
+    private BatchGenerator.Result generate(final String name, final String filter, final List<String> options)
+            throws Exception {
+        return new BatchGenerator(this.dir.resolve("out"), getClasspath(), options, 1)
+                .generate(List.of(createRoot(name, filter))).get(0);
+    }
+
+    private URLClassLoader createLoader(final String snapshot) throws Exception {
+        return BatchGeneratorTest.compile(this.dir.resolve("out"), createRoot("snapshot-" + snapshot, "[a-z]+"), TYPE,
+                getClasspath(), List.of("-A" + GeneratorOptions.SNAPSHOT + "=" + snapshot));
+    }
+
+    private Path createRoot(final String name, final String filter) throws Exception {
+        final Path root = this.dir.resolve(name).resolve("src/main/java");
+        final Path pkg = root.resolve("org/elbe/derived");
+        Files.createDirectories(pkg);
+        Files.writeString(pkg.resolve("Configuration.java"), String.format(CONFIGURATION, filter));
+        return root;
+    }
+
+    // the configurations need the hint annotation
+    private static String getClasspath() throws Exception {
+        return BatchGeneratorTest.getClasspath() + File.pathSeparator + BatchGeneratorTest.getLocation(Parsed.class);
+    }
+
+    private static void activate(final Object component, final Map<String, Object> configuration)
+            throws Exception {
+        final Method activate = component.getClass().getDeclaredMethod("activate", Map.class);
+        activate.setAccessible(true);
+        activate.invoke(component, configuration);
+    }
+
+    private static Object get(final Object component, final String getter) throws Exception {
+        return component.getClass().getMethod(getter).invoke(component);
+    }
+
+}
@@ -0,0 +1,97 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Method;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * @author lbenno
+ *
+ */
+class EnumManagerTest {
+    private static final String TYPE = "org.elbe.enums.Configuration";
+    private static final String CONFIGURATION = "package org.elbe.enums;\n"
+            + "\n"
+            + "import org.osgi.service.metatype.annotations.AttributeDefinition;\n"
+            + "import org.osgi.service.metatype.annotations.ObjectClassDefinition;\n"
+            + "import org.osgi.service.metatype.annotations.Option;\n"
+            + "\n"
+            + "@ObjectClassDefinition(id = \"org.elbe.enums\", name = \"Enums\")\n"
+            + "public @interface Configuration {\n"
+            + "    @AttributeDefinition(name = \"Mode\", defaultValue = \"fast\",\n"
+            + "            options = { @Option(label = \"Fast\", value = \"fast\"),\n"
+            + "                    @Option(label = \"Safe\", value = \"safe-1\") })\n"
+            + "    String mode();\n"
+            + "\n"
+            + "    @AttributeDefinition(name = \"Level\", required = false,\n"
+            + "            options = { @Option(label = \"One\", value = \"1\"),\n"
+            + "                    @Option(label = \"Two\", value = \"2\") })\n"
+            + "    String level();\n"
+            + "}\n";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void activate() throws Exception {
+        for (final String activation : new String[] { "lookup", "switch" }) {
+            try (URLClassLoader loader = createLoader(activation)) {
+                final Object component = BatchGeneratorTest.newComponent(loader, TYPE);
+                final Class<?> mode = component.getClass().getMethod("getMode").getReturnType();
+                assertEquals("ModeOption", mode.getSimpleName());
+                final Object fast = mode.getField("FAST").get(null);
+                final Object safe = mode.getField("SAFE_1").get(null);
+
+                activate(component, Map.of("mode", "safe-1", "level", "2"));
+                assertSame(safe, get(component, "getMode"));
+                assertEquals("safe-1", mode.getMethod("getValue").invoke(safe));
+                assertEquals("Safe", mode.getMethod("getLabel").invoke(safe));
+                final Object level = get(component, "getLevel");
+                assertEquals("V_2", level.toString());
+
+                // missing or unknown values fall back to the default option (or null)
+                activate(component, Map.of("mode", "unknown", "level", "3"));
+                assertSame(fast, get(component, "getMode"));
+                assertNull(get(component, "getLevel"));
+                activate(component, Map.of());
+                assertSame(fast, get(component, "getMode"));
+            }
+        }
+    }
+
+    private URLClassLoader createLoader(final String activation) throws Exception {
+        final Path root = this.dir.resolve(activation).resolve("src/main/java");
+        final Path pkg = root.resolve("org/elbe/enums");
+        Files.createDirectories(pkg);
+        Files.writeString(pkg.resolve("Configuration.java"), CONFIGURATION);
+        return BatchGeneratorTest.compile(this.dir.resolve("out"), root, TYPE, BatchGeneratorTest.getClasspath(),
+                List.of("-A" + GeneratorOptions.ENUMS + "=true",
+                        "-A" + GeneratorOptions.ACTIVATION + "=" + activation));
+    }
+
+    private static void activate(final Object component, final Map<String, Object> configuration)
+            throws Exception {
+        final Method activate = component.getClass().getDeclaredMethod("activate", Map.class);
+        activate.setAccessible(true);
+        activate.invoke(component, configuration);
+    }
+
+    private static Object get(final Object component, final String getter) throws Exception {
+        return component.getClass().getMethod(getter).invoke(component);
+    }
+
+}
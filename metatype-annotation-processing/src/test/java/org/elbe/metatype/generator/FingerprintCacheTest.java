@@ -0,0 +1,192 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.osgi.service.metatype.MetaTypeProvider;
+
+/**
+ * @author lbenno
+ *
+ */
+class FingerprintCacheTest {
+    private static final Pattern GENERATED = Pattern.compile("\"generated\": (\\d+)");
+    private static final FileTime PAST = FileTime.fromMillis(1_000_000_000_000L);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void generate_unchanged() throws Exception {
+        final Path root = createRoot();
+        final Path pkg = root.resolve("org/elbe/module");
+        final BatchGenerator.Result initial = generate(root, List.of());
+        assertEquals(2, getGenerated(initial));
+        final Path xml = initial.getXmlDir().resolve("configuration.xml");
+        final Path component = initial.getSrcDir().resolve("org/elbe/module/AppConfiguration.java");
+        final Path otherXml = initial.getXmlDir().resolve("other.xml");
+        final byte[] xmlContent = Files.readAllBytes(xml);
+        final byte[] componentContent = Files.readAllBytes(component);
+        setPast(xml, component, otherXml);
+
+        // nothing changed: the outputs are kept as they are
+        assertEquals(0, getGenerated(generate(root, List.of())));
+        assertUnchanged(xml, xmlContent);
+        assertUnchanged(component, componentContent);
+        assertEquals(PAST, Files.getLastModifiedTime(otherXml));
+
+        // one configuration changed: the other one is skipped
+        Files.writeString(pkg.resolve("Other.java"), String.format(BatchGeneratorTest.CONFIGURATION, "module", "Other")
+                .replace("\"8080\"", "\"9090\""));
+        assertEquals(1, getGenerated(generate(root, List.of())));
+        assertUnchanged(xml, xmlContent);
+        assertUnchanged(component, componentContent);
+        assertNotEquals(PAST, Files.getLastModifiedTime(otherXml));
+        assertTrue(Files.readString(otherXml).contains("9090"));
+    }
+
+    @Test
+    void generate_changedSettings() throws Exception {
+        final Path root = createRoot();
+        final BatchGenerator.Result initial = generate(root, List.of());
+        final Path xml = initial.getXmlDir().resolve("configuration.xml");
+        final Path component = initial.getSrcDir().resolve("org/elbe/module/AppConfiguration.java");
+        final byte[] componentContent = Files.readAllBytes(component);
+        setPast(xml, component);
+
+        // another option changes the outputs, i.e. all configurations are regenerated
+        assertEquals(2, getGenerated(generate(root, List.of("-A" + GeneratorOptions.SNAPSHOT + "=true"))));
+        assertFalse(new String(componentContent, StandardCharsets.UTF_8).contains("Snapshot"));
+        assertTrue(Files.readString(component).contains("Snapshot"));
+        assertNotEquals(PAST, Files.getLastModifiedTime(component));
+        assertEquals(0, getGenerated(generate(root, List.of("-A" + GeneratorOptions.SNAPSHOT + "=true"))));
+    }
+
+    @Test
+    void generate_changedOwner() throws Exception {
+        final Path root = createRoot();
+        final BatchGenerator.Result initial = generate(root, List.of());
+        final Path xml = initial.getXmlDir().resolve("configuration.xml");
+        final byte[] xmlContent = Files.readAllBytes(xml);
+        setPast(xml);
+
+        // other output directories: the configurations are generated there, the former outputs are not touched
+        final Path xmlDir = this.dir.resolve("xml");
+        assertEquals(2, getGenerated(generate(root, List.of("-A" + GeneratorOptions.XML_DIR + "=" + xmlDir))));
+        assertArrayEquals(xmlContent, Files.readAllBytes(xmlDir.resolve("configuration.xml")));
+        assertTrue(Files.isRegularFile(xmlDir.resolve("other.xml")));
+        assertUnchanged(xml, xmlContent);
+    }
+
+    @Test
+    void generate_moved() throws Exception {
+        final Path root = createRoot();
+        final Path pkg = root.resolve("org/elbe/module");
+        final BatchGenerator.Result initial = generate(root, List.of());
+        final Path xml = initial.getXmlDir().resolve("configuration.xml");
+        final Path component = initial.getSrcDir().resolve("org/elbe/module/AppConfiguration.java");
+
+        // the configuration moved to another package writes the same XML, its former component is deleted
+        final Path moved = Files.createDirectories(root.resolve("org/elbe/moved"));
+        Files.delete(pkg.resolve("Configuration.java"));
+        Files.writeString(moved.resolve("Configuration.java"),
+                String.format(BatchGeneratorTest.CONFIGURATION, "moved", "Configuration"));
+        assertEquals(1, getGenerated(generate(root, List.of())));
+        assertTrue(Files.readString(xml).contains("id=\"org.elbe.moved\""));
+        assertFalse(Files.exists(component));
+        assertTrue(Files.isRegularFile(initial.getSrcDir().resolve("org/elbe/moved/AppConfiguration.java")));
+
+        // the outputs of a deleted configuration are deleted
+        final Path other = initial.getSrcDir().resolve("org/elbe/module/AppOther.java");
+        assertTrue(Files.isRegularFile(other));
+        Files.delete(pkg.resolve("Other.java"));
+        assertEquals(0, getGenerated(generate(root, List.of())));
+        assertFalse(Files.exists(initial.getXmlDir().resolve("other.xml")));
+        assertFalse(Files.exists(other));
+        assertTrue(Files.isRegularFile(xml));
+    }
+
+    @Test
+    void generate_deletedInPlace() throws Exception {
+        final Path root = createRoot();
+        final Path pkg = root.resolve("org/elbe/module");
+        final BatchGenerator generator = new BatchGenerator(this.dir.resolve("out"),
+                BatchGeneratorTest.getClasspath() + File.pathSeparator
+                        + BatchGeneratorTest.getLocation(MetaTypeProvider.class),
+                List.of("-A" + GeneratorOptions.PROVIDER + "=true"), 1, Paths.get("OSGI-INF/metatype"));
+        final BatchGenerator.Result initial = generator.generate(List.of(root)).get(0);
+        assertTrue(initial.isSuccess(), () -> String.join("\n", initial.getDiagnostics()));
+        assertTrue(Files.isRegularFile(pkg.resolve("AppOther.java")));
+        assertTrue(Files.isRegularFile(pkg.resolve("OtherMetaTypeProvider.java")));
+
+        // the component and the provider written beside the configuration are deleted too, i.e. no orphan is
+        // compiled
+        Files.delete(pkg.resolve("Other.java"));
+        final BatchGenerator.Result result = generator.generate(List.of(root)).get(0);
+        assertTrue(result.isSuccess(), () -> String.join("\n", result.getDiagnostics()));
+        assertFalse(Files.exists(result.getXmlDir().resolve("other.xml")));
+        assertFalse(Files.exists(pkg.resolve("AppOther.java")));
+        assertFalse(Files.exists(pkg.resolve("OtherMetaTypeProvider.java")));
+        assertTrue(Files.isRegularFile(pkg.resolve("AppConfiguration.java")));
+        assertTrue(Files.isRegularFile(result.getXmlDir().resolve("configuration.xml")));
+    }
+
+    private Path createRoot() throws Exception {
+        final Path root = this.dir.resolve("module/src/main/java");
+        final Path pkg = root.resolve("org/elbe/module");
+        Files.createDirectories(pkg);
+        Files.writeString(pkg.resolve("Configuration.java"),
+                String.format(BatchGeneratorTest.CONFIGURATION, "module", "Configuration"));
+        Files.writeString(pkg.resolve("Other.java"),
+                String.format(BatchGeneratorTest.CONFIGURATION, "module", "Other"));
+        return root;
+    }
+
+    private BatchGenerator.Result generate(final Path root, final List<String> options) throws Exception {
+        final List<String> all = new ArrayList<>(options);
+        all.add("-A" + GeneratorOptions.STATS + "=true");
+        final BatchGenerator.Result result = new BatchGenerator(this.dir.resolve("out"),
+                BatchGeneratorTest.getClasspath(), all, 1).generate(List.of(root)).get(0);
+        assertTrue(result.isSuccess(), () -> String.join("\n", result.getDiagnostics()));
+        return result;
+    }
+
+    // the number of generated configurations, from the statistics of the last run
+    private static int getGenerated(final BatchGenerator.Result result) throws Exception {
+        final String stats = Files.readString(result.getTarget().resolve("metatype-stats.json"));
+        final Matcher matcher = GENERATED.matcher(stats);
+        assertTrue(matcher.find(), stats);
+        return Integer.parseInt(matcher.group(1));
+    }
+
+    private static void setPast(final Path... files) throws Exception {
+        for (final Path file : files) {
+            Files.setLastModifiedTime(file, PAST);
+        }
+    }
+
+    private static void assertUnchanged(final Path file, final byte[] content) throws Exception {
+        assertEquals(PAST, Files.getLastModifiedTime(file), file::toString);
+        assertArrayEquals(content, Files.readAllBytes(file), file::toString);
+    }
+
+}
@@ -5,6 +5,8 @@ package org.elbe.metatype.generator;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import java.util.Arrays;
+
 import org.junit.jupiter.api.Test;
 
 /**
@@ -48,4 +50,45 @@ class IdUtilTest {
         assertEquals("ethzIdKnowhowConfigSolr", IdUtil.toFieldName("ethz_id_knowhow_config_solr"));
     }
 
+    @Test
+    void toConstantName() throws Exception {
+        assertEquals("SOME_VALUES", IdUtil.toConstantName("someValues"));
+        assertEquals("PORT", IdUtil.toConstantName("port"));
+        assertEquals("MY_VPN_NAME", IdUtil.toConstantName("myVpnName"));
+    }
+
+    @Test
+    void toIds() throws Exception {
+        assertEquals(Arrays.asList("ethz.id.knowhow.config.solr", "double_under.path", "name-with-dollar", "a.$b"),
+                IdUtil.toIds(Arrays.asList("ethz_id_knowhow_config_solr", "double__under_path",
+                        "name$_$with$_$dollar", "a_$b")));
+    }
+
+    @Test
+    void appendTo() throws Exception {
+        final StringBuilder target = new StringBuilder("my.prefix.");
+        IdUtil.toId("many$parts$_$with$$dollar", target);
+        assertEquals("my.prefix.manyparts-with$dollar", target.toString());
+
+        target.setLength(0);
+        IdUtil.createId("MyVPnConfiguration", target);
+        assertEquals("my.vpn.configuration", target.toString());
+
+        target.setLength(0);
+        target.append("field_");
+        IdUtil.toFieldName("Ethz_id_knowhow", target);
+        assertEquals("field_ethzIdKnowhow", target.toString());
+    }
+
+    @Test
+    void memoized() throws Exception {
+        for (int i = 0; i < 10000; i++) {
+            assertEquals("name" + i + ".path", IdUtil.toId("name" + i + "_path"));
+        }
+        assertEquals("double_under.path", IdUtil.toId("double__under_path"));
+        assertEquals("double_under.path", IdUtil.toId("double__under_path"));
+        assertEquals("my.configuration", IdUtil.createId("MyConfiguration"));
+        assertEquals("my.configuration", IdUtil.createId("MyConfiguration"));
+    }
+
 }
@@ -0,0 +1,95 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * @author lbenno
+ *
+ */
+class MetricsManagerTest {
+    private static final String TYPE = "org.elbe.metrics.Configuration";
+    private static final String CONFIGURATION = "package org.elbe.metrics;\n"
+            + "\n"
+            + "import org.osgi.service.metatype.annotations.AttributeDefinition;\n"
+            + "import org.osgi.service.metatype.annotations.ObjectClassDefinition;\n"
+            + "\n"
+            + "@ObjectClassDefinition(id = \"org.elbe.metrics\", name = \"Metrics\")\n"
+            + "public @interface Configuration {\n"
+            + "    @AttributeDefinition(name = \"Port\", defaultValue = \"8080\")\n"
+            + "    int port();\n"
+            + "\n"
+            + "    @AttributeDefinition(name = \"Host\", defaultValue = \"localhost\")\n"
+            + "    String host();\n"
+            + "}\n";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void activate() throws Exception {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName("org.elbe.metatype:type=Configuration,pid=\"org.elbe.metrics\"");
+        for (final String snapshot : new String[] { "false", "true" }) {
+            try (URLClassLoader loader = createLoader(snapshot)) {
+                final Object component = BatchGeneratorTest.newComponent(loader, TYPE);
+                assertFalse(server.isRegistered(name));
+
+                invoke(component, "activate", Map.of("port", 9090));
+                invoke(component, "activate", Map.of("port", 9091));
+                invoke(component, "activate", Map.of("port", 9092));
+                for (int i = 0; i < 3; i++) {
+                    assertEquals(9092, component.getClass().getMethod("getPort").invoke(component));
+                }
+
+                assertTrue(server.isRegistered(name));
+                assertEquals(1L, server.getAttribute(name, "Activations"));
+                assertEquals(2L, server.getAttribute(name, "Modifications"));
+                assertTrue((Long) server.getAttribute(name, "LastActivationNanos") > 0);
+                final TabularData reads = (TabularData) server.getAttribute(name, "Reads");
+                assertEquals(3L, reads.get(new Object[] { "port" }).get("value"));
+                assertEquals(0L, reads.get(new Object[] { "host" }).get("value"));
+
+                invoke(component, "deactivate");
+                assertFalse(server.isRegistered(name));
+            }
+        }
+    }
+
+    private URLClassLoader createLoader(final String snapshot) throws Exception {
+        final Path root = this.dir.resolve("snapshot-" + snapshot).resolve("src/main/java");
+        final Path pkg = root.resolve("org/elbe/metrics");
+        Files.createDirectories(pkg);
+        Files.writeString(pkg.resolve("Configuration.java"), CONFIGURATION);
+        return BatchGeneratorTest.compile(this.dir.resolve("out"), root, TYPE, BatchGeneratorTest.getClasspath(),
+                List.of("-A" + GeneratorOptions.METRICS + "=getters",
+                        "-A" + GeneratorOptions.SNAPSHOT + "=" + snapshot));
+    }
+
+    private static void invoke(final Object component, final String name, final Object... args) throws Exception {
+        final Method method = args.length == 0 ? component.getClass().getDeclaredMethod(name)
+                : component.getClass().getDeclaredMethod(name, Map.class);
+        method.setAccessible(true);
+        method.invoke(component, args);
+    }
+
+}
@@ -0,0 +1,233 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.TestFactory;
+
+/** End-to-end harness compiling synthetic configurations in memory with the {@link MetatypeAnnotationProcessor}.<br>
+ * Each scenario records the wall time, the allocated bytes and the size of the outputs (sources and metatype XML) and
+ * checks them against thresholds: a fixed allowance for the compilation plus a budget per attribute. The scenarios
+ * and budgets are configurable through system properties:
+ * <ul>
+ * <li><code>metatype.perf.scenarios</code>: the scenarios as <code>configurations x attributes</code>, separated by
+ * commas, e.g. <code>1x10000,10x1000,100x100,1000x20</code> (default: <code>1x1000,100x20</code>, i.e. quick enough
+ * for every build)</li>
+ * <li><code>metatype.perf.maxMicrosPerAttribute</code>: the wall time budget (default: 5'000)</li>
+ * <li><code>metatype.perf.maxAllocatedPerAttribute</code>: the budget of allocated bytes (default: 250'000)</li>
+ * <li><code>metatype.perf.maxOutputPerAttribute</code>: the budget of output bytes (default: 1'000)</li>
+ * </ul>
+ * E.g. <code>mvn test -Dtest=ProcessorPerformanceTest -Dmetatype.perf.scenarios=1x10000,1000x20</code>.<br>
+ * The processor runs with <code>-proc:only</code> (the generated <code>activate</code> method of 10'000 attributes
+ * exceeds the maximal size of a method's code) and emits sequentially, i.e. all allocations are done by the
+ * compiling thread.
+ *
+ * @author lbenno */
+class ProcessorPerformanceTest {
+    private static final Logger LOG = Logger.getLogger(ProcessorPerformanceTest.class.getName());
+
+    private static final String SCENARIOS = "metatype.perf.scenarios";
+    private static final String MAX_MICROS = "metatype.perf.maxMicrosPerAttribute";
+    private static final String MAX_ALLOCATED = "metatype.perf.maxAllocatedPerAttribute";
+    private static final String MAX_OUTPUT = "metatype.perf.maxOutputPerAttribute";
+    // the fixed costs of a compilation, independent of the number of attributes
+    private static final long FIXED_MICROS = 1_000_000;
+    private static final long FIXED_ALLOCATED = 64 * 1024 * 1024;
+    private static final long FIXED_OUTPUT = 16 * 1024;
+
+    @TestFactory
+    Stream<DynamicTest> compile() throws Exception {
+        // warm up the compiler, i.e. don't measure the loading of its classes
+        compile(1, 10);
+        return Stream.of(System.getProperty(SCENARIOS, "1x1000,100x20").split(","))
+                .map(String::trim).map(scenario -> DynamicTest.dynamicTest(scenario, () -> {
+                    final String[] parts = scenario.split("x");
+                    assertScenario(scenario, Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+                }));
+    }
+
+    private static void assertScenario(final String scenario, final int configurations, final int attributes)
+            throws Exception {
+        final Measurement measurement = compile(configurations, attributes);
+        final long total = (long) configurations * attributes;
+        LOG.info(() -> String.format("%s: %d ms, %d KB allocated, %d KB output (%d files)", scenario,
+                measurement.nanos / 1_000_000, measurement.allocated / 1024, measurement.output / 1024,
+                measurement.files));
+
+        // one metatype XML and one component per configuration
+        assertEquals(2 * configurations, measurement.files);
+        assertTrue(measurement.nanos / 1000 <= FIXED_MICROS + total * Long.getLong(MAX_MICROS, 5_000),
+                () -> String.format("%s: The wall time of %d ms exceeds the threshold.", scenario,
+                        measurement.nanos / 1_000_000));
+        if (measurement.allocated >= 0) {
+            assertTrue(measurement.allocated <= FIXED_ALLOCATED + total * Long.getLong(MAX_ALLOCATED, 250_000),
+                    () -> String.format("%s: The %d KB allocated exceed the threshold.", scenario,
+                            measurement.allocated / 1024));
+        }
+        assertTrue(measurement.output <= FIXED_OUTPUT + total * Long.getLong(MAX_OUTPUT, 1_000),
+                () -> String.format("%s: The output of %d KB exceeds the threshold.", scenario,
+                        measurement.output / 1024));
+    }
+
+    private static Measurement compile(final int configurations, final int attributes) throws Exception {
+        final List<JavaFileObject> sources = SyntheticSources.create(configurations, attributes).entrySet().stream()
+                .map(e -> new MemoryFile(e.getKey().replace('.', '/') + JavaFileObject.Kind.SOURCE.extension,
+                        JavaFileObject.Kind.SOURCE, e.getValue()))
+                .collect(Collectors.toList());
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (MemoryFileManager fileManager = new MemoryFileManager(
+                compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8))) {
+            final JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics,
+                    List.of("-proc:only", "-classpath", BatchGeneratorTest.getClasspath(),
+                            "-A" + GeneratorOptions.THREADS + "=1"),
+                    null, sources);
+            task.setProcessors(List.of(new MetatypeAnnotationProcessor()));
+
+            final long allocated = getAllocatedBytes();
+            final long start = System.nanoTime();
+            final boolean success = task.call();
+            final long nanos = System.nanoTime() - start;
+            final long allocatedAfter = getAllocatedBytes();
+
+            assertTrue(success, () -> diagnostics.getDiagnostics().stream()
+                    .filter(d -> d.getKind() == Diagnostic.Kind.ERROR).map(Object::toString)
+                    .collect(Collectors.joining("\n")));
+            // the generated sources and metatype XML, i.e. without e.g. the fingerprint cache
+            final List<MemoryFile> outputs = fileManager.outputs.stream()
+                    .filter(f -> f.getKind() == JavaFileObject.Kind.SOURCE || f.getName().endsWith(".xml"))
+                    .collect(Collectors.toList());
+            return new Measurement(nanos, allocated < 0 ? -1 : allocatedAfter - allocated,
+                    outputs.stream().mapToLong(f -> f.content.size()).sum(), outputs.size());
+        }
+    }
+
+    // the bytes allocated by the current thread, -1 if the JVM doesn't support the measurement
+    private static long getAllocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory
+                    .getThreadMXBean();
+            if (bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+                return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    // ---
+
+    private static class Measurement {
+        final long nanos;
+        final long allocated;
+        final long output;
+        final int files;
+
+        Measurement(final long nanos, final long allocated, final long output, final int files) {
+            this.nanos = nanos;
+            this.allocated = allocated;
+            this.output = output;
+            this.files = files;
+        }
+    }
+
+    /** The file manager keeping the outputs (generated sources and resources) in memory. */
+    private static class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+        final List<MemoryFile> outputs = new ArrayList<>();
+
+        MemoryFileManager(final StandardJavaFileManager fileManager) {
+            super(fileManager);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(final Location location, final String className,
+                final JavaFileObject.Kind kind, final FileObject sibling) {
+            return add(new MemoryFile(location.getName() + "/" + className.replace('.', '/') + kind.extension, kind,
+                    null));
+        }
+
+        @Override
+        public FileObject getFileForOutput(final Location location, final String packageName,
+                final String relativeName, final FileObject sibling) {
+            return add(new MemoryFile(location.getName() + "/" + packageName.replace('.', '/') + "/" + relativeName,
+                    JavaFileObject.Kind.OTHER, null));
+        }
+
+        @Override
+        public FileObject getFileForInput(final Location location, final String packageName,
+                final String relativeName) throws IOException {
+            // nothing is persisted between the compilations, e.g. no fingerprint cache
+            return location == StandardLocation.CLASS_OUTPUT ? null
+                    : super.getFileForInput(location, packageName, relativeName);
+        }
+
+        @Override
+        public boolean isSameFile(final FileObject a, final FileObject b) {
+            if (a instanceof MemoryFile || b instanceof MemoryFile) {
+                return a.toUri().equals(b.toUri());
+            }
+            return super.isSameFile(a, b);
+        }
+
+        private MemoryFile add(final MemoryFile file) {
+            this.outputs.add(file);
+            return file;
+        }
+    }
+
+    private static class MemoryFile extends SimpleJavaFileObject {
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+        MemoryFile(final String path, final JavaFileObject.Kind kind, final String source) {
+            super(URI.create("mem:///" + path), kind);
+            if (source != null) {
+                this.content.writeBytes(source.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            this.content.reset();
+            return this.content;
+        }
+
+        @Override
+        public InputStream openInputStream() {
+            return new ByteArrayInputStream(this.content.toByteArray());
+        }
+
+        @Override
+        public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+            return new String(this.content.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+}
@@ -0,0 +1,110 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.osgi.service.metatype.AttributeDefinition;
+import org.osgi.service.metatype.MetaTypeProvider;
+import org.osgi.service.metatype.ObjectClassDefinition;
+
+/**
+ * @author lbenno
+ *
+ */
+class ProviderManagerTest {
+    private static final String CONFIGURATION = "package org.elbe.provider;\n"
+            + "\n"
+            + "import org.osgi.service.metatype.annotations.AttributeDefinition;\n"
+            + "import org.osgi.service.metatype.annotations.ObjectClassDefinition;\n"
+            + "import org.osgi.service.metatype.annotations.Option;\n"
+            + "\n"
+            + "@ObjectClassDefinition(id = \"org.elbe.provider\", name = \"Provider\",\n"
+            + "        description = \"A \\\"test\\\".\")\n"
+            + "public @interface Configuration {\n"
+            + "    @AttributeDefinition(name = \"Port\", defaultValue = \"8080\", min = \"1\")\n"
+            + "    int port();\n"
+            + "\n"
+            + "    @AttributeDefinition(name = \"Mode\", required = false, defaultValue = \"fast\",\n"
+            + "            options = { @Option(label = \"Fast\", value = \"fast\"),\n"
+            + "                    @Option(label = \"Safe\", value = \"safe\") })\n"
+            + "    String mode();\n"
+            + "\n"
+            + "    @AttributeDefinition(name = \"Ratios\", cardinality = 3, defaultValue = { \"0.5\", \"1.5\" })\n"
+            + "    double[] ratios();\n"
+            + "}\n";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void create() throws Exception {
+        final Path root = this.dir.resolve("provider/src/main/java");
+        final Path pkg = root.resolve("org/elbe/provider");
+        Files.createDirectories(pkg);
+        Files.writeString(pkg.resolve("Configuration.java"), CONFIGURATION);
+        // the generated provider is part of the compilation, i.e. needs the metatype API
+        final String classpath = BatchGeneratorTest.getClasspath() + File.pathSeparator
+                + BatchGeneratorTest.getLocation(MetaTypeProvider.class);
+        final BatchGenerator.Result result = new BatchGenerator(this.dir.resolve("out"), classpath,
+                List.of("-A" + GeneratorOptions.PROVIDER + "=true"), 1).generate(List.of(root)).get(0);
+        assertTrue(result.isSuccess(), () -> String.join("\n", result.getDiagnostics()));
+
+        // the generated provider compiles against the metatype API
+        final Path provider = result.getSrcDir().resolve("org/elbe/provider/ConfigurationMetaTypeProvider.java");
+        final Path classes = Files.createDirectories(this.dir.resolve("classes"));
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertEquals(0, compiler.run(null, null, null, "-d", classes.toString(), "-classpath", classpath,
+                provider.toString()));
+
+        try (URLClassLoader loader = new URLClassLoader(new URL[] { classes.toUri().toURL() },
+                getClass().getClassLoader())) {
+            final MetaTypeProvider metatype = (MetaTypeProvider) loader
+                    .loadClass("org.elbe.provider.ConfigurationMetaTypeProvider").getConstructor().newInstance();
+            assertNull(metatype.getObjectClassDefinition("other", null));
+            final ObjectClassDefinition ocd = metatype.getObjectClassDefinition("org.elbe.provider", "de");
+            assertEquals("org.elbe.provider", ocd.getID());
+            assertEquals("Provider", ocd.getName());
+            assertEquals("A \"test\".", ocd.getDescription());
+
+            final AttributeDefinition[] all = ocd.getAttributeDefinitions(ObjectClassDefinition.ALL);
+            assertEquals(3, all.length);
+            assertEquals("port", all[0].getID());
+            assertEquals(AttributeDefinition.INTEGER, all[0].getType());
+            assertNull(all[0].getDescription());
+            assertArrayEquals(new String[] { "8080" }, all[0].getDefaultValue());
+            assertNull(all[0].getOptionValues());
+            assertArrayEquals(new String[] { "Fast", "Safe" }, all[1].getOptionLabels());
+            assertArrayEquals(new String[] { "fast", "safe" }, all[1].getOptionValues());
+            assertEquals(AttributeDefinition.DOUBLE, all[2].getType());
+            assertEquals(3, all[2].getCardinality());
+            assertArrayEquals(new String[] { "0.5", "1.5" }, all[2].getDefaultValue());
+
+            final AttributeDefinition[] optional = ocd.getAttributeDefinitions(ObjectClassDefinition.OPTIONAL);
+            assertEquals(1, optional.length);
+            assertEquals("mode", optional[0].getID());
+            assertEquals(2, ocd.getAttributeDefinitions(ObjectClassDefinition.REQUIRED).length);
+
+            // the definitions are shared, i.e. must not be changed by the callers
+            all[0].getDefaultValue()[0] = "1";
+            assertArrayEquals(new String[] { "8080" }, all[0].getDefaultValue());
+        }
+    }
+
+}
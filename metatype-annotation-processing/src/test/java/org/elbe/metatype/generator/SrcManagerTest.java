@@ -0,0 +1,163 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * @author lbenno
+ *
+ */
+class SrcManagerTest {
+    private static final String TYPE = "org.elbe.listeners.Configuration";
+    private static final String CONFIGURATION = "package org.elbe.listeners;\n"
+            + "\n"
+            + "import org.osgi.service.metatype.annotations.AttributeDefinition;\n"
+            + "import org.osgi.service.metatype.annotations.ObjectClassDefinition;\n"
+            + "\n"
+            + "@ObjectClassDefinition(id = \"org.elbe.listeners\", name = \"Listeners\")\n"
+            + "public @interface Configuration {\n"
+            + "    @AttributeDefinition(name = \"Port\", defaultValue = \"8080\")\n"
+            + "    int port();\n"
+            + "\n"
+            + "    @AttributeDefinition(name = \"Ratio\", required = false)\n"
+            + "    double ratio();\n"
+            + "\n"
+            + "    @AttributeDefinition(name = \"Host\", defaultValue = \"localhost\")\n"
+            + "    String host();\n"
+            + "\n"
+            + "    @AttributeDefinition(name = \"Some values\", defaultValue = { \"1\", \"2\" })\n"
+            + "    int[] someValues();\n"
+            + "}\n";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void activate_listeners() throws Exception {
+        final Thread thread = Thread.currentThread();
+        final Thread.UncaughtExceptionHandler handler = thread.getUncaughtExceptionHandler();
+        final List<Throwable> failures = new ArrayList<>();
+        thread.setUncaughtExceptionHandler((t, exc) -> failures.add(exc));
+        try {
+            for (final String snapshot : new String[] { "false", "true" }) {
+                failures.clear();
+                try (URLClassLoader loader = createLoader(snapshot)) {
+                    final Object component = BatchGeneratorTest.newComponent(loader, TYPE);
+                    final List<String> changes = new ArrayList<>();
+                    // the first listener fails, the second is notified anyway
+                    addListener(component, null);
+                    addListener(component, changes);
+
+                    final Map<String, Object> configuration = new HashMap<>();
+                    configuration.put("port", 9090);
+                    configuration.put("ratio", Double.NaN);
+                    configuration.put("host", "localhost");
+                    configuration.put("someValues", new int[] { 1, 2 });
+                    activate(component, configuration);
+                    // equal strings and arrays are unchanged
+                    assertEquals(List.of("port: 8080 -> 9090", "ratio: 0.0 -> NaN"), changes);
+                    assertEquals(2, failures.size());
+
+                    changes.clear();
+                    configuration.put("host", "example.org");
+                    configuration.put("someValues", new int[] { 3 });
+                    activate(component, configuration);
+                    // NaN is equal to itself
+                    assertEquals(List.of("host: localhost -> example.org", "someValues: [1, 2] -> [3]"), changes);
+                    assertEquals(4, failures.size());
+
+                    changes.clear();
+                    activate(component, configuration);
+                    assertEquals(List.of(), changes);
+                }
+            }
+        } finally {
+            thread.setUncaughtExceptionHandler(handler);
+        }
+    }
+
+    @Test
+    void snapshot_arrays() throws Exception {
+        try (URLClassLoader loader = createLoader("true")) {
+            final Object component = BatchGeneratorTest.newComponent(loader, TYPE);
+            activate(component, Map.of("port", 9090, "someValues", new int[] { 1, 2 }));
+            final Object snapshot = invoke(component, "getSnapshot");
+
+            // the snapshot is immutable, its arrays can't be changed through the getters
+            ((int[]) invoke(component, "getSomeValues"))[0] = 9;
+            ((int[]) invoke(snapshot, "getSomeValues"))[1] = 9;
+            assertArrayEquals(new int[] { 1, 2 }, (int[]) invoke(component, "getSomeValues"));
+            assertArrayEquals(new int[] { 1, 2 }, (int[]) invoke(snapshot, "getSomeValues"));
+        }
+    }
+
+    private URLClassLoader createLoader(final String snapshot) throws Exception {
+        final Path root = this.dir.resolve("snapshot-" + snapshot).resolve("src/main/java");
+        final Path pkg = root.resolve("org/elbe/listeners");
+        Files.createDirectories(pkg);
+        Files.writeString(pkg.resolve("Configuration.java"), CONFIGURATION);
+        return BatchGeneratorTest.compile(this.dir.resolve("out"), root, TYPE, BatchGeneratorTest.getClasspath(),
+                List.of("-A" + GeneratorOptions.LISTENERS + "=true",
+                        "-A" + GeneratorOptions.SNAPSHOT + "=" + snapshot));
+    }
+
+    // registers a listener recording the changes as "attribute: old -> new", a listener without changes fails
+    private static void addListener(final Object component, final List<String> changes) throws Exception {
+        final Method add = getMethod(component.getClass(), "addListener");
+        final Class<?> type = add.getParameterTypes()[0];
+        add.invoke(component, Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+                (proxy, method, args) -> {
+                    if (changes == null) {
+                        throw new IllegalStateException(method.getName());
+                    }
+                    final String name = method.getName();
+                    changes.add(name.substring(0, name.length() - "Changed".length()) + ": " + toString(args[0])
+                            + " -> " + toString(args[1]));
+                    return null;
+                }));
+    }
+
+    private static String toString(final Object value) {
+        return value instanceof int[] ? Arrays.toString((int[]) value) : String.valueOf(value);
+    }
+
+    private static Method getMethod(final Class<?> type, final String name) {
+        for (final Method method : type.getMethods()) {
+            if (method.getName().equals(name)) {
+                return method;
+            }
+        }
+        throw new IllegalArgumentException(name);
+    }
+
+    private static Object invoke(final Object target, final String name) throws Exception {
+        final Method method = getMethod(target.getClass(), name);
+        method.setAccessible(true);
+        return method.invoke(target);
+    }
+
+    private static void activate(final Object component, final Map<String, Object> configuration)
+            throws Exception {
+        final Method activate = component.getClass().getDeclaredMethod("activate", Map.class);
+        activate.setAccessible(true);
+        activate.invoke(component, configuration);
+    }
+
+}
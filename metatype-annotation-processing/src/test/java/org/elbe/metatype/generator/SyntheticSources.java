@@ -0,0 +1,106 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Factory for the sources of synthetic configurations, i.e. <code>@ObjectClassDefinition</code> annotated types to
+ * compile with the {@link MetatypeAnnotationProcessor}.<br>
+ * The attributes are a mix of strings, passwords, primitives, arrays and attributes with options, the method names
+ * contain low lines and dollar signs like real configurations do. Every fourth configuration declares a
+ * <code>PREFIX_</code> field, every tenth is a single-element annotation.
+ *
+ * @author lbenno */
+final class SyntheticSources {
+    static final String PACKAGE = "org.elbe.perf";
+
+    private SyntheticSources() {
+        // prevent instantiation
+    }
+
+    /** Creates the sources of the specified number of configurations.
+     *
+     * @param configurations int the number of configurations
+     * @param attributes int the number of attributes of each configuration (but the single-element annotations)
+     * @return Map&lt;String, String> the sources by qualified name */
+    static Map<String, String> create(final int configurations, final int attributes) {
+        final Map<String, String> out = new LinkedHashMap<>();
+        for (int i = 0; i < configurations; i++) {
+            final String className = "Config" + i;
+            out.put(PACKAGE + "." + className, create(className, i, attributes));
+        }
+        return out;
+    }
+
+    private static String create(final String className, final int index, final int attributes) {
+        final StringBuilder out = new StringBuilder(attributes * 200 + 500);
+        out.append("package ").append(PACKAGE).append(";\n\n")
+                .append("import org.osgi.service.metatype.annotations.AttributeDefinition;\n")
+                .append("import org.osgi.service.metatype.annotations.AttributeType;\n")
+                .append("import org.osgi.service.metatype.annotations.ObjectClassDefinition;\n")
+                .append("import org.osgi.service.metatype.annotations.Option;\n\n")
+                .append("@ObjectClassDefinition(name = \"Configuration ").append(index)
+                .append("\", description = \"Synthetic configuration\")\n")
+                .append("public @interface ").append(className).append(" {\n");
+        if (index % 10 == 9) {
+            out.append("    @AttributeDefinition(name = \"Value\", defaultValue = \"single\")\n")
+                    .append("    String value();\n");
+            return out.append("}\n").toString();
+        }
+        if (index % 4 == 1) {
+            out.append("    String PREFIX_ = \"perf").append(index).append(".\";\n\n");
+        }
+        for (int i = 0; i < attributes; i++) {
+            appendAttribute(out, i);
+        }
+        return out.append("}\n").toString();
+    }
+
+    private static void appendAttribute(final StringBuilder out, final int i) {
+        out.append("    @AttributeDefinition(name = \"Attribute ").append(i)
+                .append("\", description = \"The description of attribute ").append(i)
+                .append(" with <markup> & \\\"quotes\\\".\"");
+        switch (i % 7) {
+        case 0:
+            out.append(", defaultValue = \"value").append(i).append("\")\n    String ");
+            break;
+        case 1:
+            out.append(", type = AttributeType.PASSWORD, required = false)\n    String ");
+            break;
+        case 2:
+            out.append(", defaultValue = \"").append(i).append("\", min = \"0\")\n    int ");
+            break;
+        case 3:
+            out.append(", cardinality = 5, defaultValue = { \"1\", \"2\", \"3\" })\n    long[] ");
+            break;
+        case 4:
+            out.append(", cardinality = 10, required = false)\n    String[] ");
+            break;
+        case 5:
+            out.append(", defaultValue = \"en\", options = { @Option(label = \"english\", value = \"en\"),\n")
+                    .append("            @Option(label = \"deutsch\", value = \"de\"), ")
+                    .append("@Option(label = \"fran\\u00e7ais\", value = \"fr\") })\n    String ");
+            break;
+        default:
+            out.append(", defaultValue = \"true\")\n    boolean ");
+            break;
+        }
+        out.append(methodName(i)).append("();\n\n");
+    }
+
+    private static String methodName(final int i) {
+        switch (i % 4) {
+        case 0:
+            return "service_endpoint_" + i;
+        case 1:
+            return "cache__size_" + i;
+        case 2:
+            return "feature$_$flag" + i;
+        default:
+            return "max$$retries_per_host" + i;
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Method;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * @author lbenno
+ *
+ */
+class ValidationManagerTest {
+    private static final String TYPE = "org.elbe.validation.Configuration";
+    private static final String CONFIGURATION = "package org.elbe.validation;\n"
+            + "\n"
+            + "import org.osgi.service.metatype.annotations.AttributeDefinition;\n"
+            + "import org.osgi.service.metatype.annotations.ObjectClassDefinition;\n"
+            + "\n"
+            + "@ObjectClassDefinition(id = \"org.elbe.validation\", name = \"Validation\")\n"
+            + "public @interface Configuration {\n"
+            + "    @AttributeDefinition(name = \"Port\", defaultValue = \"8080\", min = \"1\", max = \"65535\")\n"
+            + "    int port();\n"
+            + "\n"
+            + "    @AttributeDefinition(name = \"User\", min = \"3\")\n"
+            + "    String user();\n"
+            + "\n"
+            + "    @AttributeDefinition(name = \"Ratios\", cardinality = 2, max = \"1.0\", required = false)\n"
+            + "    double[] ratios();\n"
+            + "}\n";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void validate() throws Exception {
+        for (final String snapshot : new String[] { "false", "true" }) {
+            try (URLClassLoader loader = createLoader(snapshot)) {
+                final Object component = BatchGeneratorTest.newComponent(loader, TYPE);
+                assertEquals(List.of(), activate(component, Map.of("user", "admin")));
+                assertEquals(List.of("user:REQUIRED"), activate(component, Map.of()));
+
+                final Map<String, Object> configuration = new HashMap<>();
+                configuration.put("port", 0);
+                configuration.put("user", "me");
+                configuration.put("ratios", new double[] { 0.5, 1.5, 0.1 });
+                assertEquals(List.of("port:MIN", "user:MIN", "ratios:CARDINALITY", "ratios:MAX"),
+                        activate(component, configuration));
+                if (Boolean.parseBoolean(snapshot)) {
+                    // the violations are published with the values they belong to
+                    final Object values = component.getClass().getMethod("getSnapshot").invoke(component);
+                    assertSame(values.getClass().getMethod("getViolations").invoke(values),
+                            component.getClass().getMethod("getViolations").invoke(component));
+                    assertEquals(0, values.getClass().getMethod("getPort").invoke(values));
+                }
+            }
+        }
+    }
+
+    private URLClassLoader createLoader(final String snapshot) throws Exception {
+        final Path root = this.dir.resolve("snapshot-" + snapshot).resolve("src/main/java");
+        final Path pkg = root.resolve("org/elbe/validation");
+        Files.createDirectories(pkg);
+        Files.writeString(pkg.resolve("Configuration.java"), CONFIGURATION);
+        return BatchGeneratorTest.compile(this.dir.resolve("out"), root, TYPE, BatchGeneratorTest.getClasspath(),
+                List.of("-A" + GeneratorOptions.VALIDATION + "=true",
+                        "-A" + GeneratorOptions.SNAPSHOT + "=" + snapshot));
+    }
+
+    // activates the component, returns the violations as "attribute:constraint"
+    private static List<String> activate(final Object component, final Map<String, Object> configuration)
+            throws Exception {
+        final Method activate = component.getClass().getDeclaredMethod("activate", Map.class);
+        activate.setAccessible(true);
+        activate.invoke(component, configuration);
+        final List<String> out = new ArrayList<>();
+        for (final Object violation : (List<?>) component.getClass().getMethod("getViolations").invoke(component)) {
+            final Class<?> type = violation.getClass();
+            out.add(type.getMethod("getAttribute").invoke(violation) + ":"
+                    + type.getMethod("getConstraint").invoke(violation));
+        }
+        return out;
+    }
+
+}
@@ -0,0 +1,117 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * @author lbenno
+ *
+ */
+class ViewManagerTest {
+    private static final String TYPE = "org.elbe.views.Configuration";
+    private static final String CONFIGURATION = "package org.elbe.views;\n"
+            + "\n"
+            + "import org.osgi.service.metatype.annotations.AttributeDefinition;\n"
+            + "import org.osgi.service.metatype.annotations.ObjectClassDefinition;\n"
+            + "\n"
+            + "@ObjectClassDefinition(id = \"org.elbe.views\", name = \"Views\")\n"
+            + "public @interface Configuration {\n"
+            + "    @AttributeDefinition(name = \"Some values\", defaultValue = { \"1\", \"2\", \"3\" })\n"
+            + "    int[] someValues();\n"
+            + "\n"
+            + "    @AttributeDefinition(name = \"Endpoints\", required = false)\n"
+            + "    String[] endpoints();\n"
+            + "}\n";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void get() throws Exception {
+        for (final String snapshot : new String[] { "false", "true" }) {
+            try (URLClassLoader loader = createLoader(snapshot)) {
+                final Object component = BatchGeneratorTest.newComponent(loader, TYPE);
+                assertView(component, 1, 2, 3);
+                assertEquals(List.of(), get(component, "getEndpoints"));
+
+                // the listeners are passed the views, not the internal arrays
+                final List<Object> changes = new ArrayList<>();
+                final Class<?> listener = loader.loadClass(component.getClass().getName() + "$Listener");
+                component.getClass().getMethod("addListener", listener).invoke(component, Proxy.newProxyInstance(
+                        loader, new Class<?>[] { listener }, (proxy, method, args) -> {
+                            changes.add(args[1]);
+                            return null;
+                        }));
+
+                final String[] endpoints = { "http://a", "http://b" };
+                activate(component, Map.of("someValues", new int[] { 4, 5 }, "endpoints", endpoints));
+                final Object values = assertView(component, 4, 5);
+                assertEquals(2, changes.size());
+                assertSame(values, changes.get(0));
+                assertSame(get(component, "getEndpoints"), changes.get(1));
+                // the view is created once per configuration, i.e. the getter doesn't allocate
+                assertSame(values, get(component, "getSomeValues"));
+                ((int[]) values.getClass().getMethod("toArray").invoke(values))[0] = 0;
+                assertView(component, 4, 5);
+
+                @SuppressWarnings("unchecked")
+                final List<String> list = (List<String>) get(component, "getEndpoints");
+                assertEquals(List.of("http://a", "http://b"), list);
+                assertThrows(UnsupportedOperationException.class, () -> list.set(0, "http://c"));
+                assertSame(list, get(component, "getEndpoints"));
+            }
+        }
+    }
+
+    // asserts the values of the int view, returns the view
+    private static Object assertView(final Object component, final int... expected) throws Exception {
+        final Object view = get(component, "getSomeValues");
+        assertEquals("IntView", view.getClass().getSimpleName());
+        assertEquals(expected.length, view.getClass().getMethod("size").invoke(view));
+        final Method getter = view.getClass().getMethod("get", int.class);
+        assertTrue(getter.getReturnType().isPrimitive());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], getter.invoke(view, i));
+        }
+        return view;
+    }
+
+    private URLClassLoader createLoader(final String snapshot) throws Exception {
+        final Path root = this.dir.resolve("snapshot-" + snapshot).resolve("src/main/java");
+        final Path pkg = root.resolve("org/elbe/views");
+        Files.createDirectories(pkg);
+        Files.writeString(pkg.resolve("Configuration.java"), CONFIGURATION);
+        return BatchGeneratorTest.compile(this.dir.resolve("out"), root, TYPE, BatchGeneratorTest.getClasspath(),
+                List.of("-A" + GeneratorOptions.VIEWS + "=true", "-A" + GeneratorOptions.LISTENERS + "=true",
+                        "-A" + GeneratorOptions.SNAPSHOT + "=" + snapshot));
+    }
+
+    private static void activate(final Object component, final Map<String, Object> configuration)
+            throws Exception {
+        final Method activate = component.getClass().getDeclaredMethod("activate", Map.class);
+        activate.setAccessible(true);
+        activate.invoke(component, configuration);
+    }
+
+    private static Object get(final Object component, final String getter) throws Exception {
+        return component.getClass().getMethod(getter).invoke(component);
+    }
+
+}
@@ -0,0 +1,188 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.osgi.framework.BundleContext;
+
+/**
+ * @author lbenno
+ *
+ */
+class WarmStartManagerTest {
+    private static final String TYPE = "org.elbe.warm.Configuration";
+    private static final String CONFIGURATION = "package org.elbe.warm;\n"
+            + "\n"
+            + "import org.osgi.service.metatype.annotations.AttributeDefinition;\n"
+            + "import org.osgi.service.metatype.annotations.AttributeType;\n"
+            + "import org.osgi.service.metatype.annotations.ObjectClassDefinition;\n"
+            + "\n"
+            + "@ObjectClassDefinition(id = \"org.elbe.warm\", name = \"Warm\")\n"
+            + "public @interface Configuration {\n"
+            + "    @AttributeDefinition(name = \"Port\", defaultValue = \"8080\", min = \"1\")\n"
+            + "    int port();\n"
+            + "\n"
+            + "    @AttributeDefinition(name = \"Host\", defaultValue = \"localhost\")\n"
+            + "    String host();\n"
+            + "\n"
+            + "    @AttributeDefinition(name = \"Secret\", type = AttributeType.PASSWORD, required = false)\n"
+            + "    String secret();\n"
+            + "\n"
+            + "    @AttributeDefinition(name = \"Ratios\", required = false)\n"
+            + "    double[] ratios();\n"
+            + "\n"
+            + "    @AttributeDefinition(name = \"Endpoints\", required = false)\n"
+            + "    String[] endpoints();\n"
+            + "}\n";
+    private static final Map<String, Object> PROPERTIES = Map.of("component.name", "org.elbe.warm.AppConfiguration");
+
+    @TempDir
+    Path dir;
+
+    private BundleContext context;
+
+    @BeforeEach
+    void setUp() {
+        // the bundle's persistent storage area
+        final Path data = this.dir.resolve("data");
+        this.context = (BundleContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { BundleContext.class }, (proxy, method, args) -> {
+                    if ("getDataFile".equals(method.getName())) {
+                        return data.resolve((String) args[0]).toFile();
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.clearProperty("metatype.warmstart.dir");
+    }
+
+    @Test
+    void activate() throws Exception {
+        final Path cache = this.dir.resolve("data");
+        for (final String snapshot : new String[] { "false", "true" }) {
+            try (URLClassLoader loader = createLoader(snapshot)) {
+                // no file yet: the defaults
+                Object component = BatchGeneratorTest.newComponent(loader, TYPE);
+                activate(component, PROPERTIES);
+                assertEquals(8080, get(component, "getPort"));
+
+                activate(component, Map.of("service.pid", "org.elbe.warm", "port", 9090, "host", "example.org",
+                        "secret", "s3cret", "ratios", new double[] { 0.5, 1.5 },
+                        "endpoints", new String[] { "http://a", null }));
+                // passwords are never stored
+                final byte[] content = Files.readAllBytes(cache.resolve("org.elbe.warm.bin"));
+                assertFalse(new String(content, StandardCharsets.ISO_8859_1).contains("s3cret"));
+
+                // restart: the last-known-good values are served until ConfigAdmin delivers
+                component = BatchGeneratorTest.newComponent(loader, TYPE);
+                activate(component, PROPERTIES);
+                assertEquals(9090, get(component, "getPort"));
+                assertEquals("example.org", get(component, "getHost"));
+                assertNull(get(component, "getSecret"));
+                assertArrayEquals(new double[] { 0.5, 1.5 }, (double[]) get(component, "getRatios"));
+                assertArrayEquals(new String[] { "http://a", null }, (String[]) get(component, "getEndpoints"));
+
+                activate(component, Map.of("service.pid", "org.elbe.warm", "port", 7070));
+                assertEquals(7070, get(component, "getPort"));
+                assertEquals("localhost", get(component, "getHost"));
+                assertNull(get(component, "getRatios"));
+
+                // the configuration is deleted
+                activate(component, PROPERTIES);
+                assertFalse(Files.exists(cache.resolve("org.elbe.warm.bin")));
+                component = BatchGeneratorTest.newComponent(loader, TYPE);
+                activate(component, PROPERTIES);
+                assertEquals(8080, get(component, "getPort"));
+            }
+        }
+    }
+
+    @Test
+    void activate_invalidFile() throws Exception {
+        // the system property overrides the bundle's storage area
+        final Path cache = Files.createDirectories(this.dir.resolve("cache"));
+        System.setProperty("metatype.warmstart.dir", cache.toString());
+        try (URLClassLoader loader = createLoader("false")) {
+            Files.write(cache.resolve("org.elbe.warm.bin"), new byte[] { 0x4d, 0x54, 0x57, 0x32, 0, 0, 0, 1 });
+            final Object component = BatchGeneratorTest.newComponent(loader, TYPE);
+            activate(component, PROPERTIES);
+            assertEquals(8080, get(component, "getPort"));
+            assertEquals("localhost", get(component, "getHost"));
+        }
+    }
+
+    @Test
+    void activate_invalidConfiguration() throws Exception {
+        final Path cache = this.dir.resolve("data");
+        for (final String snapshot : new String[] { "false", "true" }) {
+            try (URLClassLoader loader = createLoader(snapshot, "-A" + GeneratorOptions.VALIDATION + "=true")) {
+                Object component = BatchGeneratorTest.newComponent(loader, TYPE);
+                activate(component, Map.of("service.pid", "org.elbe.warm", "port", 9090));
+                assertTrue(Files.isRegularFile(cache.resolve("org.elbe.warm.bin")));
+
+                // an invalid configuration is not stored, the last-known-good values are kept
+                activate(component, Map.of("service.pid", "org.elbe.warm", "port", 0));
+                assertEquals(0, get(component, "getPort"));
+                assertTrue(Files.isRegularFile(cache.resolve("org.elbe.warm.bin")));
+
+                component = BatchGeneratorTest.newComponent(loader, TYPE);
+                activate(component, PROPERTIES);
+                assertEquals(9090, get(component, "getPort"));
+                assertEquals(List.of(), get(component, "getViolations"));
+            }
+        }
+    }
+
+    private URLClassLoader createLoader(final String snapshot, final String... options) throws Exception {
+        final Path root = this.dir.resolve("snapshot-" + snapshot).resolve("src/main/java");
+        final Path pkg = root.resolve("org/elbe/warm");
+        Files.createDirectories(pkg);
+        Files.writeString(pkg.resolve("Configuration.java"), CONFIGURATION);
+        final List<String> all = new ArrayList<>(List.of(options));
+        all.add("-A" + GeneratorOptions.WARM_START + "=true");
+        all.add("-A" + GeneratorOptions.SNAPSHOT + "=" + snapshot);
+        return BatchGeneratorTest.compile(this.dir.resolve("out"), root, TYPE, getClasspath(), all);
+    }
+
+    // the generated component needs the framework API
+    private static String getClasspath() throws Exception {
+        return BatchGeneratorTest.getClasspath() + File.pathSeparator
+                + BatchGeneratorTest.getLocation(BundleContext.class);
+    }
+
+    private void activate(final Object component, final Map<String, Object> configuration) throws Exception {
+        final Method activate = component.getClass().getDeclaredMethod("activate", BundleContext.class, Map.class);
+        activate.setAccessible(true);
+        activate.invoke(component, this.context, configuration);
+    }
+
+    private static Object get(final Object component, final String getter) throws Exception {
+        return component.getClass().getMethod(getter).invoke(component);
+    }
+
+}
@@ -0,0 +1,128 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * @author lbenno
+ *
+ */
+class WatchGeneratorTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void poll() throws Exception {
+        final Path root = this.dir.resolve("module/src/main/java");
+        final Path pkg = root.resolve("org/elbe/module");
+        Files.createDirectories(pkg);
+        Files.writeString(pkg.resolve("Configuration.java"),
+                String.format(BatchGeneratorTest.CONFIGURATION, "module", "Configuration"));
+        Files.writeString(pkg.resolve("Other.java"),
+                String.format(BatchGeneratorTest.CONFIGURATION, "module", "Other"));
+
+        final BatchGenerator generator = new BatchGenerator(this.dir.resolve("out"),
+                BatchGeneratorTest.getClasspath(), List.of(), 1);
+        final BatchGenerator.Result initial = generator.generate(List.of(root)).get(0);
+        assertTrue(initial.isSuccess(), () -> String.join("\n", initial.getDiagnostics()));
+        final Path xml = initial.getXmlDir().resolve("configuration.xml");
+        final Path other = initial.getXmlDir().resolve("other.xml");
+        final Path component = initial.getSrcDir().resolve("org/elbe/module/AppOther.java");
+
+        try (WatchGenerator watcher = new WatchGenerator(generator, List.of(root), 50)) {
+            assertTrue(watcher.poll(10, TimeUnit.MILLISECONDS).isEmpty());
+
+            // only the changed configuration is processed, the outputs of the other are kept
+            Files.writeString(pkg.resolve("Configuration.java"),
+                    String.format(BatchGeneratorTest.CONFIGURATION, "changed", "Configuration")
+                            .replace("package org.elbe.changed;", "package org.elbe.module;"));
+            final List<BatchGenerator.Result> changed = pollAll(watcher);
+            assertEquals(1, changed.size());
+            assertTrue(changed.get(0).isSuccess(), () -> String.join("\n", changed.get(0).getDiagnostics()));
+            assertEquals(1, changed.get(0).getSources());
+            assertTrue(Files.readString(xml).contains("id=\"org.elbe.changed\""));
+            assertTrue(Files.isRegularFile(other));
+            assertTrue(Files.isRegularFile(component));
+
+            // the outputs of a deleted configuration are deleted
+            Files.delete(pkg.resolve("Other.java"));
+            assertEquals(0, pollAll(watcher).get(0).getSources());
+            assertFalse(Files.exists(other));
+            assertFalse(Files.exists(component));
+            assertTrue(Files.isRegularFile(xml));
+        }
+    }
+
+    @Test
+    void poll_inPlace() throws Exception {
+        final Path module = this.dir.resolve("module");
+        final Path root = module.resolve("src/main/java");
+        final Path pkg = root.resolve("org/elbe/module");
+        Files.createDirectories(pkg);
+        Files.writeString(pkg.resolve("Configuration.java"),
+                String.format(BatchGeneratorTest.CONFIGURATION, "module", "Configuration"));
+        Files.writeString(pkg.resolve("Other.java"),
+                String.format(BatchGeneratorTest.CONFIGURATION, "module", "Other"));
+
+        final BatchGenerator generator = new BatchGenerator(this.dir.resolve("out"),
+                BatchGeneratorTest.getClasspath(), List.of(), 1, Paths.get("OSGI-INF/metatype"));
+        final BatchGenerator.Result initial = generator.generate(List.of(root)).get(0);
+        assertTrue(initial.isSuccess(), () -> String.join("\n", initial.getDiagnostics()));
+        // the outputs are written to the module, like the ones of a module built with metatype.xml.dir and
+        // metatype.src.dir
+        final Path xml = module.resolve("OSGI-INF/metatype/configuration.xml");
+        final Path other = module.resolve("OSGI-INF/metatype/other.xml");
+        final Path component = pkg.resolve("AppOther.java");
+        assertEquals(xml.getParent(), initial.getXmlDir());
+        assertTrue(Files.isRegularFile(xml));
+        assertTrue(Files.isRegularFile(other));
+        assertTrue(Files.isRegularFile(pkg.resolve("AppConfiguration.java")));
+        assertTrue(Files.isRegularFile(component));
+
+        try (WatchGenerator watcher = new WatchGenerator(generator, List.of(root), 50)) {
+            Files.writeString(pkg.resolve("Configuration.java"),
+                    String.format(BatchGeneratorTest.CONFIGURATION, "changed", "Configuration")
+                            .replace("package org.elbe.changed;", "package org.elbe.module;"));
+            final List<BatchGenerator.Result> changed = pollAll(watcher);
+            // the regenerated component is not processed as source
+            assertEquals(1, changed.size());
+            assertTrue(changed.get(0).isSuccess(), () -> String.join("\n", changed.get(0).getDiagnostics()));
+            assertEquals(1, changed.get(0).getSources());
+            assertTrue(Files.readString(xml).contains("id=\"org.elbe.changed\""));
+            assertTrue(Files.readString(pkg.resolve("AppConfiguration.java")).contains("org.elbe.changed"));
+            assertTrue(Files.isRegularFile(other));
+
+            Files.delete(pkg.resolve("Other.java"));
+            pollAll(watcher);
+            assertFalse(Files.exists(other));
+            assertFalse(Files.exists(component));
+            assertTrue(Files.isRegularFile(xml));
+        }
+    }
+
+    // the file system may report the events of a change in several bursts
+    private static List<BatchGenerator.Result> pollAll(final WatchGenerator watcher) throws InterruptedException {
+        final List<BatchGenerator.Result> out = new ArrayList<>(watcher.poll(10, TimeUnit.SECONDS));
+        List<BatchGenerator.Result> next;
+        while (!(next = watcher.poll(300, TimeUnit.MILLISECONDS)).isEmpty()) {
+            out.addAll(next);
+        }
+        return out;
+    }
+
+}
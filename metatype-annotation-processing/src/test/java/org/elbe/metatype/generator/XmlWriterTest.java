@@ -0,0 +1,83 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * @author lbenno
+ *
+ */
+class XmlWriterTest {
+    private static final String VALUE = "tab\there\nnew <line> & \"quoted\" 'single' ä€ 😀 \u0001";
+
+    @Test
+    void sameAsTransformer() throws Exception {
+        final Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        final Element root = doc.createElementNS(XmlHandler.NS, "metatype:MetaData");
+        doc.appendChild(root);
+        final Element ocd = doc.createElement("OCD");
+        root.appendChild(ocd);
+        ocd.setAttribute("name", VALUE);
+        ocd.setAttribute("description", "");
+        ocd.setAttribute("id", "an.id");
+        final Element ad = doc.createElement("AD");
+        ocd.appendChild(ad);
+        final Element option = doc.createElement("Option");
+        ad.appendChild(option);
+        option.setAttribute("value", "v");
+        option.setAttribute("label", "l");
+        root.appendChild(doc.createElement("Designate"));
+
+        final StringWriter expected = new StringWriter();
+        final Transformer transformer = TransformerFactory.newInstance().newTransformer();
+        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+        transformer.transform(new DOMSource(doc), new StreamResult(expected));
+
+        final StringWriter actual = new StringWriter();
+        final XmlWriter xml = new XmlWriter(actual);
+        xml.startDocument();
+        xml.startElement("metatype:MetaData");
+        xml.attribute("xmlns:metatype", XmlHandler.NS);
+        xml.startElement("OCD");
+        xml.attribute("id", "an.id");
+        xml.attribute("name", VALUE);
+        xml.attribute("description", "");
+        xml.startElement("AD");
+        xml.startElement("Option");
+        xml.attribute("value", "v");
+        xml.attribute("label", "l");
+        xml.endElement();
+        xml.endElement();
+        xml.endElement();
+        xml.startElement("Designate");
+        xml.endDocument();
+
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    @Test
+    void invalidSurrogate() throws Exception {
+        final XmlWriter xml = new XmlWriter(new StringWriter());
+        xml.startElement("AD");
+        xml.attribute("name", "lonely \ud83d surrogate");
+        assertThrows(IOException.class, () -> xml.endElement());
+    }
+
+}
@@ -0,0 +1,32 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/** Runs the benchmarks with allocation profiling enabled. Accepts the same arguments as JMH's main class, e.g.
+ * <code>java -jar target/benchmarks.jar GeneratorBenchmark -p attributes=1000</code>.
+ *
+ * @author lbenno */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+        // prevent instantiation
+    }
+
+    public static void main(final String[] args) throws RunnerException, CommandLineOptionException {
+        final Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+
+}
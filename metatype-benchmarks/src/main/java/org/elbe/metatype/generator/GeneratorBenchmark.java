@@ -0,0 +1,94 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.TransformerException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/** Benchmarks of the generator's emitters for configurations from 10 to 10'000 attributes.
+ *
+ * @author lbenno */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeneratorBenchmark {
+
+    @Param({ "10", "100", "1000", "10000" })
+    private int attributes;
+
+    private AnnotationManager manager;
+    private DocumentBuilder builder;
+
+    @Setup
+    public void setup() throws ParserConfigurationException {
+        this.manager = SyntheticModels.create(this.attributes);
+        this.builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+    }
+
+    @Benchmark
+    public AnnotationManager compileModel() {
+        return SyntheticModels.create(this.attributes);
+    }
+
+    @Benchmark
+    public Document processAttributeDefinitions() {
+        final Document doc = this.builder.newDocument();
+        final Element ocd = doc.createElement("OCD");
+        doc.appendChild(ocd);
+        XmlHandler.processAttributeDefinitions(this.manager.getModel().getAttributes(), doc, ocd);
+        return doc;
+    }
+
+    @Benchmark
+    public Document xmlDomProcess() throws ParserConfigurationException {
+        return new XmlHandler().process(this.manager);
+    }
+
+    @Benchmark
+    public void xmlDomProcessWrite() throws ParserConfigurationException, TransformerException {
+        final XmlHandler xml = new XmlHandler();
+        xml.write(xml.process(this.manager), OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public void xmlStreamWrite() throws IOException {
+        new XmlStreamHandler().write(this.manager, OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public String srcCreate() {
+        return new SrcManager(this.manager).create();
+    }
+
+    @Benchmark
+    public void srcWrite() throws IOException {
+        new SrcManager(this.manager).write(new BufferedWriter(Writer.nullWriter()));
+    }
+
+}
@@ -0,0 +1,105 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Benchmarks of the id conversions in {@link IdUtil}, each invocation converts 100 names.<br>
+ * The <code>String</code> based conversions are memoized, the <code>*Into</code> benchmarks measure the plain
+ * transducers.
+ *
+ * @author lbenno */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdUtilBenchmark {
+    private static final int NAMES = 100;
+
+    private String[] methodNames;
+    private String[] classNames;
+    private List<String> methodList;
+    private StringBuilder target;
+
+    @Setup
+    public void setup() {
+        this.methodNames = SyntheticModels.createNames(NAMES);
+        this.classNames = new String[NAMES];
+        for (int i = 0; i < NAMES; i++) {
+            this.classNames[i] = "MyVPnServiceConfiguration" + i;
+        }
+        this.methodList = Arrays.asList(this.methodNames);
+        this.target = new StringBuilder(64);
+    }
+
+    @Benchmark
+    public void toId(final Blackhole blackhole) {
+        for (final String name : this.methodNames) {
+            blackhole.consume(IdUtil.toId(name));
+        }
+    }
+
+    @Benchmark
+    public void createId(final Blackhole blackhole) {
+        for (final String name : this.classNames) {
+            blackhole.consume(IdUtil.createId(name));
+        }
+    }
+
+    @Benchmark
+    public void toFieldName(final Blackhole blackhole) {
+        for (final String name : this.methodNames) {
+            blackhole.consume(IdUtil.toFieldName(name));
+        }
+    }
+
+    @Benchmark
+    public List<String> toIds() {
+        return IdUtil.toIds(this.methodList);
+    }
+
+    @Benchmark
+    public void toIdInto(final Blackhole blackhole) {
+        for (final String name : this.methodNames) {
+            this.target.setLength(0);
+            IdUtil.toId(name, this.target);
+            blackhole.consume(this.target.length());
+        }
+    }
+
+    @Benchmark
+    public void createIdInto(final Blackhole blackhole) {
+        for (final String name : this.classNames) {
+            this.target.setLength(0);
+            IdUtil.createId(name, this.target);
+            blackhole.consume(this.target.length());
+        }
+    }
+
+    @Benchmark
+    public void toFieldNameInto(final Blackhole blackhole) {
+        for (final String name : this.methodNames) {
+            this.target.setLength(0);
+            IdUtil.toFieldName(name, this.target);
+            blackhole.consume(this.target.length());
+        }
+    }
+
+}
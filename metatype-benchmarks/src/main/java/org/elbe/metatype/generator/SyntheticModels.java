@@ -0,0 +1,217 @@
+/**
+ *
+ */
+package org.elbe.metatype.generator;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.AttributeType;
+import org.osgi.service.metatype.annotations.Icon;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.osgi.service.metatype.annotations.Option;
+
+/** Factory for synthetic configuration models, i.e. models as extracted by the {@link AnnotationManager} without
+ * running a compiler.<br>
+ * The attributes are a mix of strings, passwords, primitives, arrays and attributes with options, the method names
+ * contain low lines and dollar signs like real configurations do.
+ *
+ * @author lbenno */
+public final class SyntheticModels {
+    private static final String[] NO_DEFAULT = new String[0];
+    private static final Option[] NO_OPTIONS = new Option[0];
+
+    private SyntheticModels() {
+        // prevent instantiation
+    }
+
+    /** Creates the model of a configuration with the specified number of attributes.
+     *
+     * @param attributes int
+     * @return {@link AnnotationManager} */
+    public static AnnotationManager create(final int attributes) {
+        final List<AnnotationManager.MethodData> methods = new ArrayList<>(attributes);
+        for (int i = 0; i < attributes; i++) {
+            methods.add(createMethod(i));
+        }
+        return new AnnotationManager("org.elbe.bench", "BenchConfiguration", "org.elbe.bench.",
+                ocd("org.elbe.bench.config", "Benchmark configuration", "Synthetic configuration"), methods);
+    }
+
+    /** Creates the method names of a configuration with the specified number of attributes.
+     *
+     * @param attributes int
+     * @return String[] */
+    public static String[] createNames(final int attributes) {
+        final String[] out = new String[attributes];
+        for (int i = 0; i < attributes; i++) {
+            out[i] = methodName(i);
+        }
+        return out;
+    }
+
+    private static String methodName(final int i) {
+        switch (i % 4) {
+        case 0:
+            return "service_endpoint_" + i;
+        case 1:
+            return "cache__size_" + i;
+        case 2:
+            return "feature$_$flag" + i;
+        default:
+            return "max$$retries_per_host" + i;
+        }
+    }
+
+    private static AnnotationManager.MethodData createMethod(final int i) {
+        final String name = methodName(i);
+        final String label = "Attribute " + i;
+        switch (i % 6) {
+        case 0:
+            return method(name, ad(label, AttributeType.STRING, 0, new String[] { "value" + i }, NO_OPTIONS),
+                    "String", "java.lang.String", true);
+        case 1:
+            return method(name, ad(label, AttributeType.PASSWORD, 0, NO_DEFAULT, NO_OPTIONS),
+                    "String", "java.lang.String", true);
+        case 2:
+            return method(name, ad(label, AttributeType.STRING, 0, new String[] { String.valueOf(i) }, NO_OPTIONS),
+                    "int", "int", false);
+        case 3:
+            return method(name, ad(label, AttributeType.STRING, 5, new String[] { "1", "2", "3" }, NO_OPTIONS),
+                    "long[]", "long", false);
+        case 4:
+            return method(name, ad(label, AttributeType.STRING, 10, NO_DEFAULT, NO_OPTIONS),
+                    "String[]", "java.lang.String", false);
+        default:
+            return method(name, ad(label, AttributeType.STRING, 0, new String[] { "en" },
+                    new Option[] { option("english", "en"), option("deutsch", "de"), option("français", "fr") }),
+                    "String", "java.lang.String", true);
+        }
+    }
+
+    private static AnnotationManager.MethodData method(final String name, final AttributeDefinition ad,
+            final String typeName, final String normalizedType, final boolean isString) {
+        return new AnnotationManager.MethodData(name, ad, typeName, normalizedType, isString);
+    }
+
+    private static ObjectClassDefinition ocd(final String id, final String name, final String description) {
+        return new ObjectClassDefinition() {
+            @Override
+            public Class<? extends Annotation> annotationType() {
+                return ObjectClassDefinition.class;
+            }
+
+            @Override
+            public String id() {
+                return id;
+            }
+
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public String description() {
+                return description;
+            }
+
+            @Override
+            public String localization() {
+                return "";
+            }
+
+            @Override
+            public String[] pid() {
+                return NO_DEFAULT;
+            }
+
+            @Override
+            public String[] factoryPid() {
+                return NO_DEFAULT;
+            }
+
+            @Override
+            public Icon[] icon() {
+                return new Icon[0];
+            }
+        };
+    }
+
+    private static AttributeDefinition ad(final String name, final AttributeType type, final int cardinality,
+            final String[] defaultValue, final Option[] options) {
+        return new AttributeDefinition() {
+            @Override
+            public Class<? extends Annotation> annotationType() {
+                return AttributeDefinition.class;
+            }
+
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public String description() {
+                return "The description of " + name + " with <markup> & \"quotes\".";
+            }
+
+            @Override
+            public AttributeType type() {
+                return type;
+            }
+
+            @Override
+            public int cardinality() {
+                return cardinality;
+            }
+
+            @Override
+            public String min() {
+                return "";
+            }
+
+            @Override
+            public String max() {
+                return "";
+            }
+
+            @Override
+            public String[] defaultValue() {
+                return defaultValue.clone();
+            }
+
+            @Override
+            public boolean required() {
+                return true;
+            }
+
+            @Override
+            public Option[] options() {
+                return options.clone();
+            }
+        };
+    }
+
+    private static Option option(final String label, final String value) {
+        return new Option() {
+            @Override
+            public Class<? extends Annotation> annotationType() {
+                return Option.class;
+            }
+
+            @Override
+            public String label() {
+                return label;
+            }
+
+            @Override
+            public String value() {
+                return value;
+            }
+        };
+    }
+
+}